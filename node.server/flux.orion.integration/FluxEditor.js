@@ -179,6 +179,13 @@ var FluxEditor = (function() {
 				});
 			});
 
+			// broadcasts sent close together can arrive packed into one envelope
+			this.socket.on('messageBatch', function(data) {
+				data.messages.forEach(function(entry) {
+					self.socket.$emit(entry.type, entry.message);
+				});
+			});
+
 			this.socket.on('resourceStored', function(data) {
 				var location = self._rootLocation + data.project + '/' + data.resource;
 				if (self._resourceUrl === location) {
@@ -144,6 +144,13 @@ var FluxFileSystem = (function() {
 				}
 			});
 
+			// broadcasts sent close together can arrive packed into one envelope
+			this.socket.on('messageBatch', function(data) {
+				data.messages.forEach(function(entry) {
+					self.socket.$emit(entry.type, entry.message);
+				});
+			});
+
 			this.socket.on('resourceStored', function(data) {
 				if (data.username === user) {
 					var resource = self._createOrionResource(data);
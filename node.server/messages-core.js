@@ -42,16 +42,25 @@ MessageCore.prototype.initialize = function(socket, sockets) {
 	this.configureBroadcast(socket, 'resourceStored');
 
 	this.configureBroadcast(socket, 'metadataChanged');
+	this.configureBroadcast(socket, 'metadataDelta');
+
+	this.configureBroadcast(socket, 'messageBatch');
 
 	this.configureRequest(socket, 'getProjectRequest');
 	this.configureRequest(socket, 'getProjectsRequest');
 	this.configureRequest(socket, 'getResourceRequest');
+	this.configureRequest(socket, 'getResourcesRequest');
 	this.configureRequest(socket, 'getMetadataRequest');
+	this.configureRequest(socket, 'getProjectTreeRequest');
 
 	this.configureResponse(socket, sockets, 'getProjectsResponse');
 	this.configureResponse(socket, sockets, 'getProjectResponse');
 	this.configureResponse(socket, sockets, 'getResourceResponse');
+	this.configureResponse(socket, sockets, 'getResourcesResponse');
 	this.configureResponse(socket, sockets, 'getMetadataResponse');
+	this.configureResponse(socket, sockets, 'getProjectTreeResponse');
+	this.configureResponse(socket, sockets, 'responseFragment');
+	this.configureResponse(socket, sockets, 'getResourceChunk');
 
 	this.configureRequest(socket, 'getLiveResourcesRequest');
 	this.configureResponse(socket, sockets, 'getLiveResourcesResponse');
@@ -187,6 +196,7 @@ MessageCore.prototype.configureResponse = function(socket, sockets, messageName)
 				console.log("Message rejected: ", err);
 				return;
 			}
+			data.responseSenderID = socket.id;
 			sockets.socket(data.requestSenderID).emit(messageName, data);
 		});
 	});
@@ -41,6 +41,8 @@ var blacklisted = {
 	liveResourceStarted: true,
 	getResourceResponse: true,
 	getResourceRequest: true,
+	getResourcesResponse: true,
+	getResourcesRequest: true,
 	getProjectRequest: true,
 	getProjectResponse: true,
 	getProjectsRequest: true,
@@ -319,16 +321,32 @@ RabbitConnector.prototype.configure = function() {
 	this.configureBroadcast('resourceStored');
 
 	this.configureBroadcast('metadataChanged');
+	this.configureBroadcast('metadataDelta');
+
+	this.configureBroadcast('messageBatch');
+	/* {
+	    username: 'kdvolder',
+	    messages: [ { type: 'resourceChanged', message: {...} }, ... ]
+	}
+	Envelope for broadcast messages of a single user that have been sent within
+	a short time window. Receivers handle the contained messages in order.
+	*/
 
 	this.configureRequest('getProjectRequest');
 	this.configureRequest('getProjectsRequest');
 	this.configureRequest('getResourceRequest');
+	this.configureRequest('getResourcesRequest');
 	this.configureRequest('getMetadataRequest');
+	this.configureRequest('getProjectTreeRequest');
 
 	this.configureResponse('getProjectsResponse');
 	this.configureResponse('getProjectResponse');
 	this.configureResponse('getResourceResponse');
+	this.configureResponse('getResourcesResponse');
 	this.configureResponse('getMetadataResponse');
+	this.configureResponse('getProjectTreeResponse');
+	this.configureResponse('responseFragment');
+	this.configureResponse('getResourceChunk');
 
 	this.configureRequest('getLiveResourcesRequest');
 	this.configureResponse('getLiveResourcesResponse');
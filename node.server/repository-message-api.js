@@ -11,9 +11,13 @@
 *******************************************************************************/
 /*global require console exports*/
 
+var crypto = require('crypto');
+
 var MessagesRepository = function(repository) {
 	this.repository = repository;
 	this.socket = null;
+	// identifies the tree answered by this repository, a project tree walk stays on one participant
+	this.treeSource = crypto.randomBytes(16).toString('hex');
 };
 
 exports.MessagesRepository = MessagesRepository;
@@ -23,7 +27,9 @@ MessagesRepository.prototype.setSocket = function(clientsocket) {
 
 	clientsocket.on('getProjectsRequest', this.getProjects.bind(this));
 	clientsocket.on('getProjectRequest', this.getProject.bind(this));
+	clientsocket.on('getProjectTreeRequest', this.getProjectTree.bind(this));
 	clientsocket.on('getResourceRequest', this.getResource.bind(this));
+	clientsocket.on('getResourcesRequest', this.getResources.bind(this));
 
 	clientsocket.on('getProjectResponse', this.getProjectResponse.bind(this));
 	clientsocket.on('getResourceResponse', this.getResourceResponse.bind(this));
@@ -34,6 +40,12 @@ MessagesRepository.prototype.setSocket = function(clientsocket) {
 	clientsocket.on('resourceChanged', this.resourceChanged.bind(this));
 	clientsocket.on('resourceCreated', this.resourceCreated.bind(this));
 	clientsocket.on('resourceDeleted', this.resourceDeleted.bind(this));
+
+	clientsocket.on('messageBatch', function(data) {
+		data.messages.forEach(function(entry) {
+			clientsocket.$emit(entry.type, entry.message);
+		});
+	});
 };
 
 MessagesRepository.prototype.getProjects = function(data) {
@@ -72,6 +84,98 @@ MessagesRepository.prototype.getProject = function(data) {
     }.bind(this));
 };
 
+/**
+ * Answers the digests of the requested folders, with the children of the folders whose digest
+ * differs from the one the requester sent. The digest of a folder is the SHA-1 of
+ * name + '\n' + hash + '\n' of its children sorted by name (a child folder contributes its digest),
+ * the same as in the Eclipse ConnectedProject. Requests for the tree of another participant
+ * (data.treeSource) are ignored.
+ */
+MessagesRepository.prototype.getProjectTree = function(data) {
+	if (data.treeSource !== undefined && data.treeSource !== this.treeSource) {
+		return;
+	}
+	this.repository.getProject(data.username, data.project, true, function(error, resources, deleted) {
+		if (error === null) {
+			var parentOf = function(path) {
+				var separator = path.lastIndexOf('/');
+				return separator < 0 ? '' : path.substring(0, separator);
+			};
+
+			var folders = {'' : {'children' : []}};
+			var addToParent = function(resource) {
+				var parent = parentOf(resource.path);
+				if (folders[parent] === undefined) {
+					// a folder that is not listed itself
+					folders[parent] = {'children' : []};
+					addToParent({'path' : parent, 'type' : 'folder', 'timestamp' : 0});
+				}
+				folders[parent].children.push(resource);
+			};
+
+			resources.forEach(function(resource) {
+				if (resource.type === 'folder' && resource.path !== '') {
+					folders[resource.path] = {'children' : []};
+				}
+			});
+			resources.forEach(function(resource) {
+				if (resource.path !== '') {
+					addToParent(resource);
+				}
+			});
+
+			var digest = function(path) {
+				var folder = folders[path];
+				if (folder.digest === undefined) {
+					folder.children.sort(function(a, b) {
+						return a.path < b.path ? -1 : (a.path > b.path ? 1 : 0);
+					});
+					var content = folder.children.map(function(child) {
+						var hash = child.type === 'folder' ? digest(child.path) : child.hash;
+						return child.path.substring(child.path.lastIndexOf('/') + 1) + '\n' + (hash !== undefined ? hash : '0') + '\n';
+					}).join('');
+					folder.digest = crypto.createHash('sha1').update(content, 'utf8').digest('hex');
+				}
+				return folder.digest;
+			};
+
+			var response = [];
+			(data.folders || []).forEach(function(requested) {
+				if (folders[requested.path] === undefined) {
+					return;
+				}
+				var folder = {
+					'path' : requested.path,
+					'digest' : digest(requested.path)};
+
+				if (folder.digest !== requested.digest) {
+					folder.children = folders[requested.path].children.map(function(child) {
+						return {
+							'path' : child.path,
+							'type' : child.type,
+							'timestamp' : child.timestamp,
+							'hash' : child.type === 'folder' ? digest(child.path) : child.hash};
+					});
+					if (deleted !== undefined) {
+						folder.deleted = deleted.filter(function(resource) {
+							return parentOf(resource.path) === requested.path;
+						});
+					}
+				}
+				response.push(folder);
+			});
+
+			this.socket.emit('getProjectTreeResponse', {
+				'callback_id' : data.callback_id,
+				'requestSenderID' : data.requestSenderID,
+				'username' : data.username,
+				'project' : data.project,
+				'folders' : response,
+				'treeSource' : this.treeSource});
+		}
+	}.bind(this));
+};
+
 MessagesRepository.prototype.getResource = function(data) {
 	this.repository.getResource(data.username, data.project, data.resource, data.timestamp, data.hash, function(error, content, timestamp, hash) {
 		if (error === null) {
@@ -89,6 +193,63 @@ MessagesRepository.prototype.getResource = function(data) {
 	}.bind(this));
 };
 
+// maximum number of content characters in a single getResourcesResponse
+var RESOURCES_BATCH_SIZE = 256 * 1024;
+
+MessagesRepository.prototype.getResources = function(data) {
+	var resources = data.resources || [];
+	var batch = [];
+	var size = 0;
+
+	// the last batch is marked and sent even if it is empty, so the requester knows the answer is complete
+	var sendBatch = function(last) {
+		var response = {
+			'callback_id' : data.callback_id,
+			'requestSenderID' : data.requestSenderID,
+			'username' : data.username,
+			'project' : data.project,
+			'resources' : batch};
+		if (last) {
+			response.last = true;
+		}
+		this.socket.emit('getResourcesResponse', response);
+		batch = [];
+		size = 0;
+	}.bind(this);
+
+	var next = function(index) {
+		if (index >= resources.length) {
+			sendBatch(true);
+			return;
+		}
+
+		var requested = resources[index];
+		this.repository.getResource(data.username, data.project, requested.resource, requested.timestamp, requested.hash, function(error, content, timestamp, hash) {
+			if (error !== null) {
+				// the requester fetches this one on its own
+				batch.push({
+					'resource' : requested.resource,
+					'error' : String(error)});
+			}
+			else if (typeof content === 'string') {
+				batch.push({
+					'resource' : requested.resource,
+					'timestamp' : timestamp,
+					'type' : 'file',
+					'hash' : hash,
+					'content' : content});
+				size += content.length;
+			}
+			if (size >= RESOURCES_BATCH_SIZE && index < resources.length - 1) {
+				sendBatch(false);
+			}
+			next(index + 1);
+		});
+	}.bind(this);
+
+	next(0);
+};
+
 MessagesRepository.prototype.projectConnected = function(data) {
 	var projectName = data.project;
 	var username = data.username;
@@ -548,6 +548,13 @@ function(require, socket, mTextView, mKeyBinding, mTextStyler, mTextMateStyler,
 		}
 	});
 
+	// broadcasts sent close together can arrive packed into one envelope
+	socket.on('messageBatch', function(data) {
+		data.messages.forEach(function(entry) {
+			socket.$emit(entry.type, entry.message);
+		});
+	});
+
 	socket.on('resourceStored', function(data) {
 		if (data.username === username && data.project === project && data.resource === resource) {
 
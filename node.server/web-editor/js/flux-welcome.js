@@ -170,5 +170,10 @@ define(function (require) {
 	socket.on('resourceDeleted', function (data) {
 		resourceDeleted(data.username, data.project, data.resource);
 	});
+	socket.on('messageBatch', function (data) {
+		data.messages.forEach(function (entry) {
+			socket.$emit(entry.type, entry.message);
+		});
+	});
 
 });
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.SortedMap;
+
+import org.eclipse.core.resources.IProject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class ConnectedProjectTest {
+
+	@Test
+	public void testChangesSinceResumeToken() {
+		ConnectedProject connectedProject = new ConnectedProject(emptyProject());
+		connectedProject.setTimestamp("a.txt", 1);
+		connectedProject.setTimestamp("b.txt", 1);
+		String resumeToken = connectedProject.getResumeToken();
+
+		// an old modification time doesn't hide the change
+		connectedProject.setTimestamp("b.txt", 0);
+		connectedProject.setTimestamp("c.txt", 5);
+		connectedProject.removeResource("a.txt");
+
+		SortedMap<String, Long> changes = connectedProject.getChangesSince(resumeToken);
+		assertEquals(Arrays.asList("a.txt", "b.txt", "c.txt"), Arrays.asList(changes.keySet().toArray()));
+		assertTrue(changes.get("a.txt") > 0);
+		assertEquals(0, (long) changes.get("b.txt"));
+
+		assertTrue(connectedProject.getChangesSince(connectedProject.getResumeToken()).isEmpty());
+	}
+
+	@Test
+	public void testForeignResumeToken() {
+		ConnectedProject connectedProject = new ConnectedProject(emptyProject());
+		String otherToken = new ConnectedProject(emptyProject()).getResumeToken();
+		assertNull(connectedProject.getChangesSince(otherToken));
+		assertNull(connectedProject.getChangesSince("garbage"));
+		assertNull(connectedProject.getChangesSince(null));
+	}
+
+	private static IProject emptyProject() {
+		return (IProject) Proxy.newProxyInstance(ConnectedProjectTest.class.getClassLoader(), new Class<?>[] {IProject.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("refreshLocal") || method.getName().equals("accept")) {
+					return null;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+}
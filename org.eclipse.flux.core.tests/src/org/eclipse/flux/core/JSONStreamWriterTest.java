@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.flux.core.internal.messaging.CompressionCodec;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class JSONStreamWriterTest {
+
+	@Test
+	public void testObjectsAndArrays() throws Exception {
+		JSONStreamWriter writer = new JSONStreamWriter();
+		writer.object()
+			.key("name").value("Test.java")
+			.key("timestamp").value(1400000000000L)
+			.key("folder").value(false)
+			.key("children").array()
+				.object().key("name").value("a").endObject()
+				.object().key("name").value("b").endObject()
+			.endArray()
+			.key("raw").rawValue("{\"x\":1}")
+			.key("none").value((String) null)
+		.endObject();
+
+		JSONObject parsed = (JSONObject) writer.parse();
+		assertEquals("Test.java", parsed.getString("name"));
+		assertEquals(1400000000000L, parsed.getLong("timestamp"));
+		assertFalse(parsed.getBoolean("folder"));
+		JSONArray children = parsed.getJSONArray("children");
+		assertEquals(2, children.length());
+		assertEquals("b", children.getJSONObject(1).getString("name"));
+		assertEquals(1, parsed.getJSONObject("raw").getInt("x"));
+		assertTrue(parsed.isNull("none"));
+	}
+
+	@Test
+	public void testEscapingMatchesJSONObject() throws Exception {
+		String[] values = {"", "plain", "quote \" and backslash \\", "</script>", "tab\tnew\nline\rreturn\bback\fform",
+				"control \u0001 \u001f", "latin \u0085   é", "general punctuation     €", "😀"};
+		for (String value : values) {
+			JSONStreamWriter writer = new JSONStreamWriter();
+			writer.value(value);
+			assertEquals(JSONObject.quote(value), writer.toJSONString());
+		}
+	}
+
+	@Test
+	public void testRoundTripThroughMessage() throws Exception {
+		JSONStreamWriter files = new JSONStreamWriter();
+		files.array();
+		for (int i = 0; i < 100; i++) {
+			files.object().key("path").value("src/File" + i + ".java").key("hash").value(Integer.toHexString(i)).endObject();
+		}
+		files.endArray();
+
+		JSONObject message = new JSONObject();
+		message.put("project", "test");
+		message.put("files", files);
+
+		JSONObject received = new JSONObject(message.toString());
+		JSONArray parsed = received.getJSONArray("files");
+		assertEquals(100, parsed.length());
+		assertEquals("src/File99.java", parsed.getJSONObject(99).getString("path"));
+		assertEquals(files.length(), parsed.toString().length());
+	}
+
+	@Test
+	public void testTextIsReusedUntilMoreIsWritten() throws Exception {
+		JSONStreamWriter writer = new JSONStreamWriter();
+		writer.array().value("a");
+		String text = writer.toJSONString();
+		assertSame(text, writer.toJSONString());
+
+		writer.value("b").endArray();
+		assertEquals("[\"a\",\"b\"]", writer.toJSONString());
+		assertEquals(writer.length(), CompressionCodec.estimateLength(new JSONObject().put("v", writer), Integer.MAX_VALUE) - 7);
+	}
+
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.json.JSONObject;
+
+/**
+ * Messaging connector for tests that records the sent messages and passes messages to its handlers on request.
+ *
+ * @author Martin Lippert
+ */
+public class RecordingMessagingConnector implements IMessagingConnector {
+
+	private final List<String> types = new CopyOnWriteArrayList<String>();
+	private final List<JSONObject> messages = new CopyOnWriteArrayList<JSONObject>();
+	private final List<IMessageHandler> handlers = new CopyOnWriteArrayList<IMessageHandler>();
+
+	public synchronized List<JSONObject> getMessages(String messageType) {
+		List<JSONObject> result = new ArrayList<JSONObject>();
+		for (int i = 0; i < types.size(); i++) {
+			if (types.get(i).equals(messageType)) {
+				result.add(messages.get(i));
+			}
+		}
+		return result;
+	}
+
+	public void receive(String messageType, JSONObject message) {
+		for (IMessageHandler handler : handlers) {
+			if (handler.getMessageType().equals(messageType) && handler.canHandle(messageType, message)) {
+				handler.handleMessage(messageType, message);
+			}
+		}
+	}
+
+	public int getHandlerCount() {
+		return handlers.size();
+	}
+
+	@Override
+	public synchronized void send(String messageType, JSONObject message) {
+		types.add(messageType);
+		messages.add(message);
+	}
+
+	@Override
+	public void addMessageHandler(IMessageHandler messageHandler) {
+		handlers.add(messageHandler);
+	}
+
+	@Override
+	public void removeMessageHandler(IMessageHandler messageHandler) {
+		handlers.remove(messageHandler);
+	}
+
+	@Override
+	public boolean isConnected() {
+		return true;
+	}
+
+	@Override
+	public String getChannel() {
+		return "user";
+	}
+
+	@Override
+	public void disconnect() {
+	}
+
+	@Override
+	public void connect() {
+	}
+
+	@Override
+	public void connectChannel(String channel) {
+	}
+
+	@Override
+	public void addConnectionListener(IConnectionListener connectionListener) {
+	}
+
+	@Override
+	public void removeConnectionListener(IConnectionListener connectionListener) {
+	}
+
+	@Override
+	public void addChannelListener(IChannelListener channelListener) {
+	}
+
+	@Override
+	public void removeChannelListener(IChannelListener channelListener) {
+	}
+
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class ContentDeltaTest {
+
+	private static final String BASE = "package test;\n\npublic class Test {\n\n\tpublic void run() {\n\t}\n\n}\n";
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		String[] contents = {
+				BASE,
+				BASE.replace("run()", "run(int times)"),
+				"// header\n" + BASE,
+				BASE + "// footer\n",
+				BASE.replace("\tpublic void run() {\n\t}\n", ""),
+				BASE.replace("Test", "Tost")
+		};
+		for (String content : contents) {
+			JSONObject delta = ContentDelta.create(BASE, content);
+			assertNotNull(content, delta);
+			JSONObject received = new JSONObject(delta.toString());
+			assertEquals(content, ContentDelta.apply(BASE, received));
+		}
+	}
+
+	@Test
+	public void testKeepsSurrogatePairsTogether() throws Exception {
+		String base = "smile 😀 please, " + BASE;
+		String content = "smile 😁 please, " + BASE;
+		JSONObject delta = ContentDelta.create(base, content);
+		assertNotNull(delta);
+		assertEquals("😁", delta.getString("text"));
+		assertEquals(content, ContentDelta.apply(base, delta));
+	}
+
+	@Test
+	public void testNoDeltaForRewrittenContent() throws Exception {
+		assertNull(ContentDelta.create(BASE, "something completely different"));
+	}
+
+	@Test
+	public void testRejectsDeltaForOtherBase() throws Exception {
+		JSONObject delta = ContentDelta.create(BASE, BASE + "// footer\n");
+		assertNull(ContentDelta.apply("short", delta));
+	}
+
+}
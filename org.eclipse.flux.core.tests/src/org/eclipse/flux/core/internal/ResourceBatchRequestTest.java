@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.flux.core.RecordingMessagingConnector;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class ResourceBatchRequestTest {
+
+	private final RecordingMessagingConnector connector = new RecordingMessagingConnector();
+	private final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+	private final List<String> missing = Collections.synchronizedList(new ArrayList<String>());
+	private final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+	private final CountDownLatch failed = new CountDownLatch(1);
+
+	@Test
+	public void testOnlyFirstResponderIsAccepted() throws Exception {
+		JSONObject request = send(60000, "a", "b");
+
+		connector.receive(ResourceBatches.RESPONSE_TYPE, batch(request, "first", false, content("a")));
+		connector.receive(ResourceBatches.RESPONSE_TYPE, batch(request, "second", true, content("a"), content("b")));
+		connector.receive(ResourceBatches.RESPONSE_TYPE, batch(request, "first", true, content("b")));
+
+		assertEquals(Arrays.asList("a", "b"), received);
+		assertTrue(missing.isEmpty());
+		assertEquals(0, connector.getHandlerCount());
+	}
+
+	@Test
+	public void testUnsentContentsAreMissing() throws Exception {
+		JSONObject request = send(60000, "a", "b", "c");
+
+		JSONObject error = new JSONObject();
+		error.put("resource", "b");
+		error.put("error", "unreadable");
+		connector.receive(ResourceBatches.RESPONSE_TYPE, batch(request, "first", true, content("a"), error));
+
+		assertEquals(Arrays.asList("a"), received);
+		assertEquals(Arrays.asList("b", "c"), missing);
+		assertEquals(0, connector.getHandlerCount());
+	}
+
+	@Test
+	public void testFailsWithoutAnswer() throws Exception {
+		send(100, "a");
+
+		assertTrue(failed.await(5, TimeUnit.SECONDS));
+		assertTrue(failures.get(0) instanceof TimeoutException);
+		assertTrue(received.isEmpty());
+		assertTrue(missing.isEmpty());
+		assertEquals(0, connector.getHandlerCount());
+	}
+
+	private JSONObject send(long timeout, String... paths) throws JSONException {
+		JSONArray resources = new JSONArray();
+		for (String path : paths) {
+			JSONObject resource = new JSONObject();
+			resource.put("resource", path);
+			resources.put(resource);
+		}
+		JSONObject message = new JSONObject();
+		message.put("username", "user");
+		message.put("project", "project");
+
+		new ResourceBatchRequest(connector, message, resources, timeout, new ResourceBatchRequest.Receiver() {
+			@Override
+			public void resourceReceived(JSONObject resource) {
+				received.add(resource.optString("resource"));
+			}
+
+			@Override
+			public void resourceMissing(JSONObject requested, JSONObject answered) {
+				missing.add(requested.optString("resource"));
+			}
+
+			@Override
+			public void requestFailed(Throwable error) {
+				failures.add(error);
+				failed.countDown();
+			}
+		}).send();
+		return connector.getMessages(ResourceBatches.REQUEST_TYPE).get(0);
+	}
+
+	private static JSONObject batch(JSONObject request, String sender, boolean last, JSONObject... resources) throws JSONException {
+		JSONObject response = new JSONObject();
+		response.put("callback_id", request.getInt("callback_id"));
+		response.put("responseSenderID", sender);
+		response.put("resources", new JSONArray(Arrays.asList(resources)));
+		if (last) {
+			response.put(ResourceBatches.LAST_BATCH, true);
+		}
+		return response;
+	}
+
+	private static JSONObject content(String path) throws JSONException {
+		JSONObject resource = new JSONObject();
+		resource.put("resource", path);
+		resource.put("content", "content of " + path);
+		return resource;
+	}
+
+}
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class ResourceContentsTest {
+
+	@Test
+	public void testTextRoundTrip() throws Exception {
+		byte[] bytes = "grüße aus Köln".getBytes("ISO-8859-1");
+		JSONObject message = new JSONObject();
+		String content = ResourceContents.putContent(message, bytes, "ISO-8859-1", true);
+
+		assertEquals("grüße aus Köln", content);
+		assertEquals("ISO-8859-1", message.getString("charset"));
+		assertFalse(message.has("encoding"));
+
+		JSONObject received = new JSONObject(message.toString());
+		assertArrayEquals(bytes, ResourceContents.getBytes(received, "UTF-8"));
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		byte[] bytes = new byte[1024];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		JSONObject message = new JSONObject();
+		assertNull(ResourceContents.putContent(message, bytes, "UTF-8", true));
+		assertEquals(ResourceContents.BASE64, message.getString("encoding"));
+
+		JSONObject received = new JSONObject(message.toString());
+		assertArrayEquals(bytes, ResourceContents.getBytes(received, "UTF-8"));
+	}
+
+	@Test
+	public void testMalformedTextIsBinary() throws Exception {
+		byte[] bytes = {'a', (byte) 0xC3, 'b'};
+		assertNull(ResourceContents.toText(bytes, "UTF-8"));
+		assertEquals("aÃb", ResourceContents.toText(bytes, "ISO-8859-1"));
+	}
+
+	@Test
+	public void testBinaryAsTextForOldRequesters() throws Exception {
+		byte[] bytes = "plain".getBytes("UTF-8");
+		JSONObject message = new JSONObject();
+		assertEquals("plain", ResourceContents.putContent(message, bytes, "UTF-8", false));
+		assertFalse(message.has("charset"));
+		assertArrayEquals(bytes, ResourceContents.getBytes(message, "UTF-8"));
+	}
+
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.flux.core.RecordingMessagingConnector;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class ResourceTransfersTest {
+
+	@Test
+	public void testTextRoundTrip() throws Exception {
+		StringBuilder text = new StringBuilder();
+		while (text.length() < 3 * ResourceTransfers.DEFAULT_CHUNK_SIZE) {
+			text.append("line ").append(text.length()).append(" with ümlauts\n");
+		}
+		// a surrogate pair across the first chunk boundary
+		text.insert(ResourceTransfers.DEFAULT_CHUNK_SIZE - 1, "😀");
+		byte[] bytes = text.toString().getBytes("UTF-8");
+
+		assertArrayEquals(bytes, transfer(bytes, false));
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		byte[] bytes = new byte[2 * ResourceTransfers.DEFAULT_CHUNK_SIZE + 17];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		bytes[0] = 0;
+
+		assertArrayEquals(bytes, transfer(bytes, true));
+	}
+
+	@Test
+	public void testEmptyFile() throws Exception {
+		assertArrayEquals(new byte[0], transfer(new byte[0], false));
+	}
+
+	@Test
+	public void testMissingChunkDiscardsTransfer() throws Exception {
+		List<JSONObject> chunks = new ArrayList<JSONObject>();
+		JSONObject response = send(new byte[3 * ResourceTransfers.DEFAULT_CHUNK_SIZE], false, chunks);
+
+		ResourceTransfers transfers = new ResourceTransfers();
+		for (int i = 0; i < chunks.size(); i++) {
+			if (i != 1) {
+				transfers.addChunk(chunks.get(i));
+			}
+		}
+		assertNull(transfers.getContents(response));
+	}
+
+	@Test
+	public void testCorruptChunkDiscardsTransfer() throws Exception {
+		List<JSONObject> chunks = new ArrayList<JSONObject>();
+		JSONObject response = send("some content".getBytes("UTF-8"), false, chunks);
+		chunks.get(0).put("data", "other content");
+
+		ResourceTransfers transfers = new ResourceTransfers();
+		transfers.addChunk(chunks.get(0));
+		assertNull(transfers.getContents(response));
+	}
+
+	private byte[] transfer(byte[] bytes, boolean acceptBinary) throws Exception {
+		List<JSONObject> chunks = new ArrayList<JSONObject>();
+		JSONObject response = send(bytes, acceptBinary, chunks);
+		assertEquals(chunks.size(), response.getInt("chunks"));
+
+		ResourceTransfers transfers = new ResourceTransfers();
+		for (JSONObject chunk : chunks) {
+			transfers.addChunk(new JSONObject(chunk.toString()));
+		}
+		InputStream contents = transfers.getContents(new JSONObject(response.toString()));
+		assertNotNull(contents);
+		try {
+			return IOUtils.toByteArray(contents);
+		} finally {
+			contents.close();
+		}
+	}
+
+	private JSONObject send(byte[] bytes, boolean acceptBinary, List<JSONObject> chunks) throws Exception {
+		RecordingMessagingConnector connector = new RecordingMessagingConnector();
+		JSONObject response = new JSONObject();
+		response.put("username", "user");
+		response.put("requestSenderID", "requester");
+		response.put("project", "project");
+		response.put("resource", "file");
+		ResourceTransfers.sendChunks(connector, file(bytes, "UTF-8"), response, acceptBinary);
+		chunks.addAll(connector.getMessages(ResourceTransfers.CHUNK_MESSAGE_TYPE));
+		return response;
+	}
+
+	private static IFile file(final byte[] bytes, final String charset) {
+		return (IFile) Proxy.newProxyInstance(ResourceTransfersTest.class.getClassLoader(), new Class<?>[] {IFile.class}, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (method.getName().equals("getContents")) {
+					return new ByteArrayInputStream(bytes);
+				}
+				if (method.getName().equals("getCharset")) {
+					return charset;
+				}
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class ResourceTrieTest {
+
+	private static final String HASH_A = "da39a3ee5e6b4b0d3255bfef95601890afd80709";
+	private static final String HASH_B = "2fd4e1c67a2d28fced849ee1bb76e7391b93eb12";
+
+	private ResourceTrie trie;
+
+	@Before
+	public void setUp() {
+		trie = new ResourceTrie();
+		trie.setTimestamp("", 1);
+		trie.addFolder("src");
+		trie.setTimestamp("src", 2);
+		trie.setTimestamp("src/b.txt", 3);
+		trie.setTimestamp("src/a.txt", 4);
+		trie.setTimestamp("pom.xml", 5);
+	}
+
+	@Test
+	public void testContainment() {
+		assertTrue(trie.contains("src/a.txt"));
+		assertTrue(trie.isFolder("src"));
+		assertFalse(trie.isFolder("src/a.txt"));
+		assertFalse(trie.contains("src/c.txt"));
+		assertEquals(4, trie.getTimestamp("src/a.txt"));
+		assertEquals(0, trie.getTimestamp("src/c.txt"));
+
+		// known as parent, but not contained until its timestamp is set
+		trie.addFile("lib/x.jar");
+		assertFalse(trie.contains("lib"));
+		assertFalse(trie.contains("lib/x.jar"));
+		trie.setTimestamp("lib/x.jar", 6);
+		assertTrue(trie.contains("lib/x.jar"));
+	}
+
+	@Test
+	public void testChildrenAndPathsAreSorted() {
+		assertEquals(Arrays.asList("pom.xml", "src"), trie.getChildren(""));
+		assertEquals(Arrays.asList("src/a.txt", "src/b.txt"), trie.getChildren("src"));
+		assertEquals(Arrays.asList("", "pom.xml", "src", "src/a.txt", "src/b.txt"), trie.getPaths(""));
+		assertEquals(Collections.emptyList(), trie.getChildren("missing"));
+	}
+
+	@Test
+	public void testHashes() {
+		trie.setHash("src/a.txt", HASH_A);
+		trie.setHash("pom.xml", "0");
+		assertEquals(HASH_A, trie.getHash("src/a.txt"));
+		assertEquals("0", trie.getHash("pom.xml"));
+		assertNull(trie.getHash("src/b.txt"));
+		assertEquals(Arrays.asList("src/b.txt"), trie.getUnhashedFiles(""));
+
+		trie.setHash("src/a.txt", "not a sha-1");
+		assertEquals("not a sha-1", trie.getHash("src/a.txt"));
+		trie.setHash("src/a.txt", null);
+		assertNull(trie.getHash("src/a.txt"));
+	}
+
+	@Test
+	public void testChangesClearFolderDigests() {
+		trie.setHash("src", HASH_A);
+		trie.setHash("", HASH_B);
+
+		trie.setHash("src/b.txt", HASH_B);
+		assertNull(trie.getHash("src"));
+		assertNull(trie.getHash(""));
+
+		trie.setHash("src", HASH_A);
+		trie.setHash("", HASH_B);
+		trie.invalidate("src/a.txt");
+		assertNull(trie.getHash("src"));
+		assertNull(trie.getHash(""));
+
+		trie.setHash("src", HASH_A);
+		trie.setHash("", HASH_B);
+		trie.remove("src/b.txt");
+		assertNull(trie.getHash("src"));
+		assertNull(trie.getHash(""));
+	}
+
+	@Test
+	public void testRemoveSubtree() {
+		trie.setHash("src/a.txt", HASH_A);
+		trie.remove("src");
+		assertFalse(trie.contains("src"));
+		assertFalse(trie.contains("src/a.txt"));
+		assertEquals(Arrays.asList("", "pom.xml"), trie.getPaths(""));
+
+		// released nodes are reused without old state
+		trie.setTimestamp("src/a.txt", 7);
+		assertNull(trie.getHash("src/a.txt"));
+		assertFalse(trie.isFolder("src/a.txt"));
+	}
+
+	@Test
+	public void testManyResources() {
+		for (int i = 0; i < 5000; i++) {
+			trie.setTimestamp("gen/folder" + (i % 50) + "/file" + i, i);
+			trie.setHash("gen/folder" + (i % 50) + "/file" + i, i % 2 == 0 ? HASH_A : HASH_B);
+		}
+		assertEquals(50, trie.getChildren("gen").size());
+		assertEquals(4999, trie.getTimestamp("gen/folder49/file4999"));
+		assertEquals(HASH_B, trie.getHash("gen/folder49/file4999"));
+		trie.remove("gen");
+		assertFalse(trie.contains("gen/folder0/file0"));
+	}
+
+}
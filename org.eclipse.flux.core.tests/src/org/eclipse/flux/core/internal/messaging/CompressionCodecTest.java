@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.flux.core.IMessageCodec;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class CompressionCodecTest {
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		for (String name : new String[] {CompressionCodec.DEFLATE, CompressionCodec.DEFLATE_FAST}) {
+			CompressionCodec codec = CompressionCodec.create(name);
+			JSONObject message = response(largeContent());
+
+			JSONObject frame = codec.compress(message, message.toString());
+			assertNotNull(frame);
+			assertEquals(name, frame.getString(IMessageCodec.CODEC_FIELD));
+			assertEquals("requester", frame.getString("requestSenderID"));
+			assertFalse(frame.has("content"));
+			assertTrue(frame.toString().length() < message.toString().length() / 2);
+
+			JSONObject decoded = codec.decode("getResourceResponse", new JSONObject(frame.toString()));
+			assertEquals(message.toString(), decoded.toString());
+		}
+	}
+
+	@Test
+	public void testKeepsFieldsAddedOnTheWay() throws Exception {
+		CompressionCodec codec = CompressionCodec.create(CompressionCodec.DEFLATE_FAST);
+		JSONObject frame = codec.compress(response(largeContent()), response(largeContent()).toString());
+		frame.put("responseSenderID", "responder");
+
+		JSONObject decoded = codec.decode("getResourceResponse", frame);
+		assertEquals("responder", decoded.getString("responseSenderID"));
+	}
+
+	@Test
+	public void testIncompressibleMessageIsNotCompressed() throws Exception {
+		CompressionCodec codec = CompressionCodec.create(CompressionCodec.DEFLATE);
+		JSONObject message = response("x7Qp");
+		assertNull(codec.compress(message, message.toString()));
+	}
+
+	@Test(expected = JSONException.class)
+	public void testTruncatedPayload() throws Exception {
+		CompressionCodec codec = CompressionCodec.create(CompressionCodec.DEFLATE);
+		JSONObject frame = codec.compress(response(largeContent()), response(largeContent()).toString());
+		String payload = frame.getString("payload");
+		frame.put("payload", payload.substring(0, payload.length() / 2));
+		codec.decode("getResourceResponse", frame);
+	}
+
+	@Test
+	public void testEstimateLength() throws Exception {
+		JSONObject message = response(largeContent());
+		message.put("nested", new JSONObject().put("list", new JSONArray().put("abc").put(1)));
+		int length = message.toString().length();
+		int estimate = CompressionCodec.estimateLength(message, Integer.MAX_VALUE);
+		// escaped characters are counted once
+		assertTrue(estimate + " for " + length, Math.abs(estimate - length) < length / 5);
+		assertTrue(CompressionCodec.estimateLength(message, 100) < length);
+	}
+
+	@Test
+	public void testUnknownCompression() {
+		assertNull(CompressionCodec.create("none"));
+	}
+
+	private static JSONObject response(String content) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("username", "user");
+		message.put("requestSenderID", "requester");
+		message.put("callback_id", 42);
+		message.put("project", "project");
+		message.put("resource", "src/Test.java");
+		message.put("content", content);
+		return message;
+	}
+
+	private static String largeContent() {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			content.append("\tpublic void method").append(i).append("() {\n\t\tSystem.out.println(\"method ").append(i).append("\");\n\t}\n");
+		}
+		return content.toString();
+	}
+
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.flux.core.internal.messaging.MessageDispatcher.RejectionPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class MessageDispatcherTest {
+
+	private MessageDispatcher dispatcher;
+
+	@After
+	public void tearDown() {
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testMessagesOfOneKeyRunInOrder() throws Exception {
+		dispatcher = new MessageDispatcher(4, 1000, RejectionPolicy.BLOCK);
+		final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(500);
+		for (int i = 0; i < 500; i++) {
+			final int number = i;
+			dispatcher.dispatch("project/resource", new Runnable() {
+				@Override
+				public void run() {
+					executed.add(number);
+					done.countDown();
+				}
+			});
+		}
+		assertTrue(done.await(10, TimeUnit.SECONDS));
+		for (int i = 0; i < 500; i++) {
+			assertEquals(i, (int) executed.get(i));
+		}
+	}
+
+	@Test
+	public void testDiscardWhenFull() throws Exception {
+		dispatcher = new MessageDispatcher(1, 2, RejectionPolicy.DISCARD);
+		CountDownLatch release = blockWorker();
+		final AtomicInteger executed = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			dispatcher.dispatch("other", counting(executed));
+		}
+		release.countDown();
+		awaitCapacity(2);
+		assertEquals(1, executed.get());
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void testAbortWhenFull() throws Exception {
+		dispatcher = new MessageDispatcher(1, 1, RejectionPolicy.ABORT);
+		blockWorker();
+		dispatcher.dispatch("other", counting(new AtomicInteger()));
+	}
+
+	@Test
+	public void testBlockWaitsUntilThereIsRoom() throws Exception {
+		dispatcher = new MessageDispatcher(1, 1, RejectionPolicy.BLOCK, 50);
+		final CountDownLatch release = blockWorker();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				release.countDown();
+			}
+		}.start();
+		AtomicInteger executed = new AtomicInteger();
+
+		long start = System.nanoTime();
+		dispatcher.dispatch("other", counting(executed));
+		long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+		assertTrue("waited " + waited + "ms", waited >= 250);
+		awaitCapacity(1);
+		assertEquals(1, executed.get());
+	}
+
+	@Test
+	public void testBlockResumesWhenThereIsRoom() throws Exception {
+		dispatcher = new MessageDispatcher(1, 1, RejectionPolicy.BLOCK, 10000);
+		final CountDownLatch release = blockWorker();
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					// ignore
+				}
+				release.countDown();
+			}
+		}.start();
+
+		AtomicInteger executed = new AtomicInteger();
+		dispatcher.dispatch("other", counting(executed));
+		awaitCapacity(1);
+		assertEquals(1, executed.get());
+	}
+
+	@Test
+	public void testHandlerDispatchingIntoFullQueueDoesNotDeadlock() throws Exception {
+		dispatcher = new MessageDispatcher(1, 1, RejectionPolicy.BLOCK, 60000);
+		final AtomicInteger executed = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch("handler", new Runnable() {
+			@Override
+			public void run() {
+				// the queue is full with this message, the handler must not wait for itself
+				for (int i = 0; i < 10; i++) {
+					dispatcher.dispatch("response", counting(executed));
+				}
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		awaitExecuted(executed, 10);
+		awaitCapacity(1);
+	}
+
+	@Test
+	public void testOfferNeverWaits() throws Exception {
+		dispatcher = new MessageDispatcher(1, 1, RejectionPolicy.BLOCK, 60000);
+		CountDownLatch release = blockWorker();
+		AtomicInteger executed = new AtomicInteger();
+		for (int i = 0; i < 10; i++) {
+			dispatcher.offer("local", MessagePriority.NORMAL, counting(executed));
+		}
+		release.countDown();
+		awaitExecuted(executed, 10);
+		awaitCapacity(1);
+	}
+
+	@Test
+	public void testFailingHandlersReleaseCapacity() throws Exception {
+		dispatcher = new MessageDispatcher(2, 10, RejectionPolicy.DISCARD);
+		for (int i = 0; i < 20; i++) {
+			dispatcher.dispatch("key" + (i % 3), new Runnable() {
+				@Override
+				public void run() {
+					throw new IllegalStateException("expected by test");
+				}
+			});
+			awaitCapacity(10);
+		}
+	}
+
+	// occupies the only permit and worker until the returned latch is released
+	private CountDownLatch blockWorker() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		dispatcher.dispatch("blocker", new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return release;
+	}
+
+	private void awaitCapacity(int capacity) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (dispatcher.getRemainingCapacity() != capacity && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(capacity, dispatcher.getRemainingCapacity());
+	}
+
+	private static void awaitExecuted(AtomicInteger executed, int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (executed.get() < count && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(count, executed.get());
+	}
+
+	private static Runnable counting(final AtomicInteger executed) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				executed.incrementAndGet();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class MessageMetricsTest {
+
+	@Test
+	public void testResponseLatencyIsRecordedOnce() throws Exception {
+		MessageMetrics metrics = new MessageMetrics(true, true);
+		metrics.messageSent("testMetricsRequest", message(7));
+		metrics.messageReceived("testMetricsResponse", message(7));
+		metrics.messageReceived("testMetricsResponse", message(7));
+		metrics.messageReceived("testMetricsResponse", message(8));
+
+		MessageTypeMetrics request = metrics.getMetrics("testMetricsRequest");
+		assertEquals(1, request.getMessagesOut());
+		assertEquals(1, request.getResponses());
+		assertTrue(request.getBytesOut() > 0);
+		assertEquals(3, metrics.getMetrics("testMetricsResponse").getMessagesIn());
+	}
+
+	@Test
+	public void testNewerRequestReplacesSlot() throws Exception {
+		MessageMetrics metrics = new MessageMetrics(true, false);
+		metrics.messageSent("testSlotRequest", message(1));
+		metrics.messageSent("testSlotRequest", message(1 + 4096));
+		metrics.messageReceived("testSlotResponse", message(1));
+		assertEquals(0, metrics.getMetrics("testSlotRequest").getResponses());
+
+		metrics.messageReceived("testSlotResponse", message(1 + 4096));
+		assertEquals(1, metrics.getMetrics("testSlotRequest").getResponses());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		MessageMetrics metrics = new MessageMetrics(false, false);
+		metrics.messageSent("testDisabledRequest", message(1));
+		metrics.messageReceived("testDisabledResponse", message(1));
+		assertEquals("Flux message metrics", metrics.getSnapshot());
+	}
+
+	private static JSONObject message(int callbackID) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("callback_id", callbackID);
+		return message;
+	}
+
+}
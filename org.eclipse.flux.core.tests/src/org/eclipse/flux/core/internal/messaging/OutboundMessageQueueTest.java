@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class OutboundMessageQueueTest {
+
+	private final List<String> sent = new ArrayList<String>();
+
+	private final MessageBatcher.IMessageSender sender = new MessageBatcher.IMessageSender() {
+		@Override
+		public void sendNow(String messageType, JSONObject message) {
+			sent.add(messageType + ":" + message.optString("resource"));
+		}
+	};
+
+	@Test
+	public void testFullQueueDropsOldestWithoutBlocking() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue(sender, 2);
+		long start = System.currentTimeMillis();
+		queue.send("liveResourceChanged", message("a"));
+		queue.send("liveResourceChanged", message("b"));
+		queue.send("liveResourceChanged", message("c"));
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals(2, queue.size());
+
+		queue.open("user");
+		assertEquals(Arrays.asList("liveResourceChanged:b", "liveResourceChanged:c"), sent);
+	}
+
+	@Test
+	public void testNotificationsOfAResourceAreCoalesced() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue(sender, 10);
+		queue.send("resourceChanged", message("a"));
+		queue.send("resourceChanged", message("b"));
+		queue.send("resourceChanged", message("a"));
+		assertEquals(2, queue.size());
+
+		queue.open("user");
+		queue.send("resourceChanged", message("c"));
+		assertEquals(Arrays.asList("resourceChanged:b", "resourceChanged:a", "resourceChanged:c"), sent);
+	}
+
+	@Test
+	public void testOtherChannelDiscardsQueue() throws Exception {
+		OutboundMessageQueue queue = new OutboundMessageQueue(sender, 10);
+		queue.open("user");
+		queue.close();
+		queue.send("resourceChanged", message("a"));
+		queue.open("other");
+		assertEquals(0, sent.size());
+	}
+
+	private static JSONObject message(String resource) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("username", "user");
+		message.put("project", "project");
+		message.put("resource", resource);
+		return message;
+	}
+
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Martin Lippert
+ */
+public class PriorityMessageSenderTest {
+
+	private final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+	private final CountDownLatch release = new CountDownLatch(1);
+	private PriorityMessageSender sender;
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		if (sender != null) {
+			sender.dispose();
+		}
+	}
+
+	@Test
+	public void testInteractiveOvertakesBulk() throws Exception {
+		sender = blockedSender();
+		sender.send("getResourceResponse", message("a", "bulk"));
+		sender.send("liveResourceChanged", message("b", "live"));
+		release.countDown();
+		sender.flush(5000);
+		assertEquals(Arrays.asList("blocker", "live", "bulk"), sent);
+	}
+
+	@Test
+	public void testSameResourceKeepsOrderAcrossLanes() throws Exception {
+		sender = blockedSender();
+		sender.send("getResourceResponse", message("a", "bulk"));
+		sender.send("liveResourceChanged", message("a", "live a"));
+		sender.send("liveResourceChanged", message("b", "live b"));
+		release.countDown();
+		sender.flush(5000);
+		assertEquals(Arrays.asList("blocker", "live b", "bulk", "live a"), sent);
+	}
+
+	@Test
+	public void testPausedMessagesAreKept() throws Exception {
+		sender = new PriorityMessageSender(recording(), 1024 * 1024, 16);
+		sender.pause();
+		sender.send("liveResourceChanged", message("a", "first"));
+		sender.send("getResourceResponse", message("b", "second"));
+		sender.flush(200);
+		assertTrue(sent.isEmpty());
+
+		sender.resume(false);
+		sender.flush(5000);
+		assertEquals(Arrays.asList("first", "second"), sent);
+	}
+
+	@Test
+	public void testResumeCanDiscard() throws Exception {
+		sender = new PriorityMessageSender(recording(), 1024 * 1024, 16);
+		sender.pause();
+		sender.send("liveResourceChanged", message("a", "stale"));
+		sender.resume(true);
+		sender.send("liveResourceChanged", message("a", "fresh"));
+		sender.flush(5000);
+		assertEquals(Arrays.asList("fresh"), sent);
+	}
+
+	// a sender whose thread is stuck in sending a first message until release is counted down
+	private PriorityMessageSender blockedSender() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		PriorityMessageSender sender = new PriorityMessageSender(new MessageBatcher.IMessageSender() {
+			@Override
+			public void sendNow(String messageType, JSONObject message) {
+				sent.add(message.optString("label"));
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, 1024 * 1024, 16);
+		sender.send("getMetadataResponse", message("blocker", "blocker"));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		return sender;
+	}
+
+	private MessageBatcher.IMessageSender recording() {
+		return new MessageBatcher.IMessageSender() {
+			@Override
+			public void sendNow(String messageType, JSONObject message) {
+				sent.add(message.optString("label"));
+			}
+		};
+	}
+
+	private static JSONObject message(String resource, String label) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("username", "user");
+		message.put("project", "project");
+		message.put("resource", resource);
+		message.put("label", label);
+		return message;
+	}
+
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Encodes messages into a more compact wire representation.
+ * <p>
+ * An encoded frame keeps the fields the broker uses for routing (like <code>username</code>)
+ * as plain JSON fields and carries the name of the codec in its <code>codec</code> field, so
+ * that a receiving connector can pick the matching codec for decoding. Messages a codec can't
+ * represent without loss are sent as plain JSON.
+ *
+ * @author Martin Lippert
+ */
+public interface IMessageCodec {
+
+	String CODEC_FIELD = "codec";
+
+	String getName();
+
+	boolean canEncode(String messageType, JSONObject message);
+	JSONObject encode(String messageType, JSONObject message) throws JSONException;
+	JSONObject decode(String messageType, JSONObject frame) throws JSONException;
+
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+/**
+ * Reads tuning settings the same way the activator reads its connection settings:
+ * a system property wins over an environment variable, which wins over the default.
+ * <p>
+ * This class, the message metrics, the compression codec and the reconnect backoff are shared with the
+ * service connector, which compiles the <code>shared</code> source folder of this bundle, so they must
+ * not depend on the Eclipse platform. Their warnings go to {@link #log(String)}, the activator forwards them to the
+ * platform log.
+ *
+ * @author Martin Lippert
+ */
+public class Configuration {
+
+	public interface Log {
+		void log(String message);
+	}
+
+	private static volatile Log log = new Log() {
+		@Override
+		public void log(String message) {
+			System.err.println(message);
+		}
+	};
+
+	public static void setLog(Log log) {
+		Configuration.log = log;
+	}
+
+	public static void log(String message) {
+		log.log(message);
+	}
+
+	public static String getString(String property, String environmentVariable, String defaultValue) {
+		String value = System.getProperty(property) == null ? System.getenv(environmentVariable) : System.getProperty(property);
+		return value == null ? defaultValue : value;
+	}
+
+	public static int getInt(String property, String environmentVariable, int defaultValue) {
+		String value = getString(property, environmentVariable, null);
+		if (value != null) {
+			try {
+				return Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				logMalformed(property, value, defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	public static long getLong(String property, String environmentVariable, long defaultValue) {
+		String value = getString(property, environmentVariable, null);
+		if (value != null) {
+			try {
+				return Long.parseLong(value.trim());
+			} catch (NumberFormatException e) {
+				logMalformed(property, value, defaultValue);
+			}
+		}
+		return defaultValue;
+	}
+
+	public static boolean getBoolean(String property, String environmentVariable, boolean defaultValue) {
+		String value = getString(property, environmentVariable, null);
+		return value == null ? defaultValue : Boolean.valueOf(value.trim());
+	}
+
+	/**
+	 * Logs a value that can't be used, the caller falls back to the default.
+	 */
+	public static void logMalformed(String property, String value, Object defaultValue) {
+		log("Flux setting " + property + " has the malformed value '" + value + "', using " + defaultValue);
+	}
+
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.commons.codec.binary.Base64;
+import org.eclipse.flux.core.IMessageCodec;
+import org.eclipse.flux.core.internal.Configuration;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+
+/**
+ * Deflate compression of large messages, like responses carrying file contents. The complete
+ * message is compressed and carried as base64 in the <code>payload</code> field of the frame, next
+ * to the plain fields used for routing and ordering.
+ * <p>
+ * <code>deflate</code> uses the default compression level, <code>deflate-fast</code> the fastest
+ * level (plain LZ77 matching with little search effort), which trades some ratio for a fraction of the CPU time.
+ * <p>
+ * Shared with the service connector (see {@link Configuration}). Requests announce the compressions the
+ * requester accepts in their <code>acceptCompression</code> field, responses to that requester are
+ * compressed if they are larger than <code>flux.compression.threshold</code> characters.
+ *
+ * @author Martin Lippert
+ */
+public class CompressionCodec implements IMessageCodec {
+
+	public static final String DEFLATE = "deflate";
+	public static final String DEFLATE_FAST = "deflate-fast";
+	public static final String SUPPORTED = DEFLATE_FAST + "," + DEFLATE;
+	public static final String ACCEPT_COMPRESSION = "acceptCompression";
+	public static final int DEFAULT_THRESHOLD = 8 * 1024;
+
+	private static final String PAYLOAD_FIELD = "payload";
+	// acceptFragments is MessageFragments.ACCEPT_FRAGMENTS, which isn't shared
+	private static final String[] ROUTING_FIELDS = {"username", "requestSenderID", "callback_id", "project", "resource", "acceptFragments"};
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String name;
+	private final int level;
+
+	public CompressionCodec(String name, int level) {
+		this.name = name;
+		this.level = level;
+	}
+
+	public static CompressionCodec create(String name) {
+		if (DEFLATE.equals(name)) {
+			return new CompressionCodec(DEFLATE, Deflater.DEFAULT_COMPRESSION);
+		}
+		else if (DEFLATE_FAST.equals(name)) {
+			return new CompressionCodec(DEFLATE_FAST, Deflater.BEST_SPEED);
+		}
+		return null;
+	}
+
+	/**
+	 * Creates the compression configured via <code>flux.compression</code> (<code>deflate-fast</code> by default),
+	 * returns <code>null</code> for <code>none</code>.
+	 */
+	public static CompressionCodec createDefault() {
+		String name = Configuration.getString("flux.compression", "FLUX_COMPRESSION", DEFLATE_FAST);
+		CompressionCodec codec = create(name.trim());
+		if (codec == null && !"none".equals(name.trim())) {
+			Configuration.logMalformed("flux.compression", name, "none");
+		}
+		return codec;
+	}
+
+	/**
+	 * Returns the size of messages from which on they are compressed (<code>flux.compression.threshold</code>).
+	 */
+	public static int getDefaultThreshold() {
+		return Configuration.getInt("flux.compression.threshold", "FLUX_COMPRESSION_THRESHOLD", DEFAULT_THRESHOLD);
+	}
+
+	public static boolean isCompressed(JSONObject frame) {
+		return create(frame.optString(CODEC_FIELD, null)) != null;
+	}
+
+	/**
+	 * Estimates the length of the JSON text of the message from the lengths of its keys and strings,
+	 * without building the text. Stops counting once the estimate reaches the given limit.
+	 */
+	public static int estimateLength(JSONObject message, int limit) {
+		int length = 2;
+		Iterator<?> keys = message.keys();
+		while (keys.hasNext() && length < limit) {
+			String key = (String) keys.next();
+			length += key.length() + 4 + estimateLength(message.opt(key), limit - length);
+		}
+		return length;
+	}
+
+	private static int estimateLength(Object value, int limit) {
+		if (value instanceof String) {
+			return ((String) value).length() + 2;
+		}
+		else if (value instanceof JSONString) {
+			// streamed values (like a JSONStreamWriter) keep the text they serialize to
+			return ((JSONString) value).toJSONString().length();
+		}
+		else if (value instanceof JSONObject) {
+			return estimateLength((JSONObject) value, limit);
+		}
+		else if (value instanceof JSONArray) {
+			JSONArray array = (JSONArray) value;
+			int length = 2;
+			for (int i = 0; i < array.length() && length < limit; i++) {
+				length += estimateLength(array.opt(i), limit - length) + 1;
+			}
+			return length;
+		}
+		return 8;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean canEncode(String messageType, JSONObject message) {
+		return true;
+	}
+
+	@Override
+	public JSONObject encode(String messageType, JSONObject message) throws JSONException {
+		JSONObject frame = compress(message, message.toString());
+		return frame != null ? frame : message;
+	}
+
+	/**
+	 * Compresses the message, given as its JSON text, returns <code>null</code> if the
+	 * compressed frame wouldn't be smaller.
+	 */
+	public JSONObject compress(JSONObject message, String json) throws JSONException {
+		byte[] data = json.getBytes(UTF8);
+		Deflater deflater = new Deflater(level);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+		} finally {
+			deflater.end();
+		}
+
+		// base64 grows the payload by a third
+		if ((out.size() + 2) / 3 * 4 >= json.length()) {
+			return null;
+		}
+
+		JSONObject frame = new JSONObject();
+		for (String routingField : ROUTING_FIELDS) {
+			if (message.has(routingField)) {
+				frame.put(routingField, message.get(routingField));
+			}
+		}
+		frame.put(CODEC_FIELD, name);
+		frame.put(PAYLOAD_FIELD, new String(Base64.encodeBase64(out.toByteArray()), UTF8));
+		return frame;
+	}
+
+	@Override
+	public JSONObject decode(String messageType, JSONObject frame) throws JSONException {
+		byte[] data = Base64.decodeBase64(frame.getString(PAYLOAD_FIELD).getBytes(UTF8));
+		Inflater inflater = new Inflater();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 4);
+		try {
+			inflater.setInput(data);
+			byte[] buffer = new byte[8192];
+			while (!inflater.finished()) {
+				int length = inflater.inflate(buffer);
+				if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new JSONException("truncated " + name + " payload of " + messageType);
+				}
+				out.write(buffer, 0, length);
+			}
+		} catch (DataFormatException e) {
+			throw new JSONException(e);
+		} finally {
+			inflater.end();
+		}
+
+		JSONObject message = new JSONObject(new String(out.toByteArray(), UTF8));
+		// fields added on the way, like the responseSenderID
+		Iterator<?> keys = frame.keys();
+		while (keys.hasNext()) {
+			String key = (String) keys.next();
+			if (!CODEC_FIELD.equals(key) && !PAYLOAD_FIELD.equals(key) && !message.has(key)) {
+				message.put(key, frame.get(key));
+			}
+		}
+		return message;
+	}
+
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram in the style of HdrHistogram: values below 32 are counted exactly, larger
+ * values in 32 linear sub-buckets per power of two (about 3% precision). Recording a value is
+ * lock- and allocation-free, reading percentiles walks over the buckets.
+ *
+ * @author Martin Lippert
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS - 1) * SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray counts;
+	private final AtomicLong totalCount;
+	private final AtomicLong totalSum;
+	private final AtomicLong maxValue;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKET_COUNT);
+		this.totalCount = new AtomicLong();
+		this.totalSum = new AtomicLong();
+		this.maxValue = new AtomicLong();
+	}
+
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts.incrementAndGet(indexOf(value));
+		totalCount.incrementAndGet();
+		totalSum.addAndGet(value);
+
+		long max = maxValue.get();
+		while (value > max && !maxValue.compareAndSet(max, value)) {
+			max = maxValue.get();
+		}
+	}
+
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	public long getMax() {
+		return maxValue.get();
+	}
+
+	public double getMean() {
+		long count = totalCount.get();
+		return count == 0 ? 0 : (double) totalSum.get() / count;
+	}
+
+	/**
+	 * Returns the upper bound of the bucket that contains the value at the given percentile (0 - 100).
+	 */
+	public long getValueAtPercentile(double percentile) {
+		long count = totalCount.get();
+		if (count == 0) {
+			return 0;
+		}
+		long threshold = Math.max(1, (long) Math.ceil(count * Math.min(100.0, percentile) / 100.0));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts.get(i);
+			if (seen >= threshold) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		return getMax();
+	}
+
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) - SUB_BUCKET_COUNT);
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long subBucket = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+}
@@ -0,0 +1,229 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.lang.management.ManagementFactory;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.flux.core.internal.Configuration;
+import org.json.JSONObject;
+
+/**
+ * Per message type metrics of the messaging connectors of this JVM: messages and bytes in and out,
+ * handler execution times and request to response latencies (matched via <code>callback_id</code>).
+ * <p>
+ * Each message type is registered as MBean <code>org.eclipse.flux:type=MessageMetrics,messageType=...</code>,
+ * a snapshot of all types is available via {@link #getSnapshot()} and can be logged periodically. Counting
+ * bytes requires serializing the messages and is therefore switched off by default.
+ * <p>
+ * Recording doesn't allocate: the metrics of a message type are created once, outstanding requests
+ * are tracked in a fixed number of preallocated slots indexed by their callback ID.
+ *
+ * @author Martin Lippert
+ */
+public class MessageMetrics {
+
+	public static final String JMX_DOMAIN = "org.eclipse.flux";
+
+	private static final long PENDING_REQUEST_EXPIRY = TimeUnit.MINUTES.toNanos(5);
+	private static final int PENDING_REQUEST_SLOTS = 4096;
+
+	private static MessageMetrics defaultMetrics;
+
+	private final boolean enabled;
+	private final boolean countBytes;
+	private final ConcurrentMap<String, MessageTypeMetrics> metrics;
+	private final PendingRequest[] pendingRequests;
+
+	public MessageMetrics(boolean enabled, boolean countBytes) {
+		this.enabled = enabled;
+		this.countBytes = countBytes;
+		this.metrics = new ConcurrentHashMap<String, MessageTypeMetrics>();
+		this.pendingRequests = new PendingRequest[enabled ? PENDING_REQUEST_SLOTS : 0];
+		for (int i = 0; i < pendingRequests.length; i++) {
+			pendingRequests[i] = new PendingRequest();
+		}
+	}
+
+	/**
+	 * Returns the metrics shared by all connectors, configured via <code>flux.metrics.enabled</code> (default on),
+	 * <code>flux.metrics.bytes</code> (default off) and <code>flux.metrics.logInterval</code> (in seconds, default off).
+	 */
+	public static synchronized MessageMetrics getDefault() {
+		if (defaultMetrics == null) {
+			defaultMetrics = new MessageMetrics(
+					Configuration.getBoolean("flux.metrics.enabled", "FLUX_METRICS_ENABLED", true),
+					Configuration.getBoolean("flux.metrics.bytes", "FLUX_METRICS_BYTES", false));
+
+			long logInterval = Configuration.getLong("flux.metrics.logInterval", "FLUX_METRICS_LOG_INTERVAL", 0);
+			if (defaultMetrics.enabled && logInterval > 0) {
+				defaultMetrics.startLogging(logInterval);
+			}
+		}
+		return defaultMetrics;
+	}
+
+	public void messageReceived(String messageType, JSONObject message) {
+		if (!enabled) {
+			return;
+		}
+		getMetrics(messageType).messageReceived(countBytes ? message.toString().length() : 0);
+
+		if (isResponse(messageType) && message.has("callback_id")) {
+			int callbackID = message.optInt("callback_id");
+			pendingRequests[callbackID & (PENDING_REQUEST_SLOTS - 1)].complete(callbackID, System.nanoTime());
+		}
+	}
+
+	public void messageSent(String messageType, JSONObject message) {
+		if (!enabled) {
+			return;
+		}
+		MessageTypeMetrics typeMetrics = getMetrics(messageType);
+		typeMetrics.messageSent(countBytes ? message.toString().length() : 0);
+
+		if (isRequest(messageType) && message.has("callback_id")) {
+			int callbackID = message.optInt("callback_id");
+			pendingRequests[callbackID & (PENDING_REQUEST_SLOTS - 1)].start(callbackID, typeMetrics, System.nanoTime());
+		}
+	}
+
+	public void handlerExecuted(String messageType, long nanos) {
+		if (!enabled) {
+			return;
+		}
+		getMetrics(messageType).handlerExecuted(nanos / 1000);
+	}
+
+	/**
+	 * Records the compression of an outgoing message from the given number of characters to the given
+	 * number of characters of the compressed payload.
+	 */
+	public void messageCompressed(String messageType, long size, long compressedSize, long nanos) {
+		if (!enabled) {
+			return;
+		}
+		getMetrics(messageType).messageCompressed(size, compressedSize, nanos / 1000);
+	}
+
+	public void messageDecompressed(String messageType, long nanos) {
+		if (!enabled) {
+			return;
+		}
+		getMetrics(messageType).messageDecompressed(nanos / 1000);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public String getSnapshot() {
+		StringBuilder snapshot = new StringBuilder("Flux message metrics");
+		for (MessageTypeMetrics typeMetrics : new TreeMap<String, MessageTypeMetrics>(metrics).values()) {
+			snapshot.append("\n  ").append(typeMetrics);
+		}
+		return snapshot.toString();
+	}
+
+	MessageTypeMetrics getMetrics(String messageType) {
+		MessageTypeMetrics typeMetrics = metrics.get(messageType);
+		if (typeMetrics == null) {
+			typeMetrics = new MessageTypeMetrics(messageType);
+			MessageTypeMetrics existing = metrics.putIfAbsent(messageType, typeMetrics);
+			if (existing != null) {
+				return existing;
+			}
+			register(typeMetrics);
+		}
+		return typeMetrics;
+	}
+
+	private void register(MessageTypeMetrics typeMetrics) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(JMX_DOMAIN + ":type=MessageMetrics,messageType=" + ObjectName.quote(typeMetrics.getMessageType()));
+			if (!server.isRegistered(name)) {
+				server.registerMBean(typeMetrics, name);
+			}
+		} catch (Exception e) {
+			Configuration.log("Flux message metrics of " + typeMetrics.getMessageType() + " are not available via JMX: " + e);
+		}
+	}
+
+	private void startLogging(long interval) {
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Flux message metrics");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				Configuration.log(getSnapshot());
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	private static boolean isRequest(String messageType) {
+		return messageType.endsWith("Request") || messageType.endsWith("request");
+	}
+
+	private static boolean isResponse(String messageType) {
+		return messageType.endsWith("Response") || messageType.endsWith("response");
+	}
+
+	/**
+	 * A slot for an outstanding request, a newer request with a callback ID in the same slot replaces
+	 * an older one. Only the first response of a request is recorded.
+	 */
+	private static class PendingRequest {
+
+		private int callbackID;
+		private MessageTypeMetrics requestMetrics;
+		private long startTime;
+
+		public synchronized void start(int callbackID, MessageTypeMetrics requestMetrics, long startTime) {
+			this.callbackID = callbackID;
+			this.requestMetrics = requestMetrics;
+			this.startTime = startTime;
+		}
+
+		public void complete(int callbackID, long endTime) {
+			MessageTypeMetrics completed;
+			long latency;
+			synchronized (this) {
+				if (requestMetrics == null || this.callbackID != callbackID) {
+					return;
+				}
+				completed = requestMetrics;
+				latency = endTime - startTime;
+				requestMetrics = null;
+			}
+			if (latency <= PENDING_REQUEST_EXPIRY) {
+				completed.responseReceived(latency / 1000);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters and histograms of a single message type. Response latencies are recorded
+ * for the request type, handler times for the type of the handled message.
+ *
+ * @author Martin Lippert
+ */
+public class MessageTypeMetrics implements MessageTypeMetricsMBean {
+
+	private final String messageType;
+
+	private final AtomicLong messagesIn = new AtomicLong();
+	private final AtomicLong messagesOut = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	private final LatencyHistogram handlerTime = new LatencyHistogram();
+	private final LatencyHistogram responseLatency = new LatencyHistogram();
+
+	private final AtomicLong uncompressedSize = new AtomicLong();
+	private final AtomicLong compressedSize = new AtomicLong();
+	private final LatencyHistogram compressionTime = new LatencyHistogram();
+	private final LatencyHistogram decompressionTime = new LatencyHistogram();
+
+	public MessageTypeMetrics(String messageType) {
+		this.messageType = messageType;
+	}
+
+	public void messageReceived(long bytes) {
+		messagesIn.incrementAndGet();
+		if (bytes > 0) {
+			bytesIn.addAndGet(bytes);
+		}
+	}
+
+	public void messageSent(long bytes) {
+		messagesOut.incrementAndGet();
+		if (bytes > 0) {
+			bytesOut.addAndGet(bytes);
+		}
+	}
+
+	public void handlerExecuted(long micros) {
+		handlerTime.record(micros);
+	}
+
+	public void responseReceived(long micros) {
+		responseLatency.record(micros);
+	}
+
+	public void messageCompressed(long size, long compressed, long micros) {
+		uncompressedSize.addAndGet(size);
+		compressedSize.addAndGet(compressed);
+		compressionTime.record(micros);
+	}
+
+	public void messageDecompressed(long micros) {
+		decompressionTime.record(micros);
+	}
+
+	@Override
+	public String getMessageType() {
+		return messageType;
+	}
+
+	@Override
+	public long getMessagesIn() {
+		return messagesIn.get();
+	}
+
+	@Override
+	public long getMessagesOut() {
+		return messagesOut.get();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	@Override
+	public long getHandlerInvocations() {
+		return handlerTime.getCount();
+	}
+
+	@Override
+	public double getHandlerTimeMean() {
+		return handlerTime.getMean();
+	}
+
+	@Override
+	public long getHandlerTime50thPercentile() {
+		return handlerTime.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getHandlerTime99thPercentile() {
+		return handlerTime.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getHandlerTimeMax() {
+		return handlerTime.getMax();
+	}
+
+	@Override
+	public long getResponses() {
+		return responseLatency.getCount();
+	}
+
+	@Override
+	public double getResponseLatencyMean() {
+		return responseLatency.getMean();
+	}
+
+	@Override
+	public long getResponseLatency50thPercentile() {
+		return responseLatency.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getResponseLatency99thPercentile() {
+		return responseLatency.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getResponseLatencyMax() {
+		return responseLatency.getMax();
+	}
+
+	@Override
+	public long getCompressedMessages() {
+		return compressionTime.getCount();
+	}
+
+	/**
+	 * The compressed size in relation to the uncompressed size of the compressed messages.
+	 */
+	@Override
+	public double getCompressionRatio() {
+		long size = uncompressedSize.get();
+		return size == 0 ? 1 : (double) compressedSize.get() / size;
+	}
+
+	@Override
+	public double getCompressionTimeMean() {
+		return compressionTime.getMean();
+	}
+
+	@Override
+	public long getCompressionTime99thPercentile() {
+		return compressionTime.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getDecompressedMessages() {
+		return decompressionTime.getCount();
+	}
+
+	@Override
+	public double getDecompressionTimeMean() {
+		return decompressionTime.getMean();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder(messageType);
+		result.append(": in=").append(getMessagesIn()).append(" out=").append(getMessagesOut());
+		if (getBytesIn() > 0 || getBytesOut() > 0) {
+			result.append(" bytesIn=").append(getBytesIn()).append(" bytesOut=").append(getBytesOut());
+		}
+		if (getHandlerInvocations() > 0) {
+			result.append(" handler[n=").append(getHandlerInvocations())
+				.append(" p50=").append(getHandlerTime50thPercentile())
+				.append(" p99=").append(getHandlerTime99thPercentile())
+				.append(" max=").append(getHandlerTimeMax()).append("us]");
+		}
+		if (getResponses() > 0) {
+			result.append(" latency[n=").append(getResponses())
+				.append(" p50=").append(getResponseLatency50thPercentile())
+				.append(" p99=").append(getResponseLatency99thPercentile())
+				.append(" max=").append(getResponseLatencyMax()).append("us]");
+		}
+		if (getCompressedMessages() > 0) {
+			result.append(" compression[n=").append(getCompressedMessages())
+				.append(" ratio=").append(String.format("%.2f", getCompressionRatio()))
+				.append(" mean=").append(String.format("%.0f", getCompressionTimeMean()))
+				.append(" p99=").append(getCompressionTime99thPercentile()).append("us]");
+		}
+		if (getDecompressedMessages() > 0) {
+			result.append(" decompression[n=").append(getDecompressedMessages())
+				.append(" mean=").append(String.format("%.0f", getDecompressionTimeMean())).append("us]");
+		}
+		return result.toString();
+	}
+
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+/**
+ * JMX view of the metrics of a single message type, times are in microseconds.
+ *
+ * @author Martin Lippert
+ */
+public interface MessageTypeMetricsMBean {
+
+	String getMessageType();
+
+	long getMessagesIn();
+	long getMessagesOut();
+	long getBytesIn();
+	long getBytesOut();
+
+	long getHandlerInvocations();
+	double getHandlerTimeMean();
+	long getHandlerTime50thPercentile();
+	long getHandlerTime99thPercentile();
+	long getHandlerTimeMax();
+
+	long getResponses();
+	double getResponseLatencyMean();
+	long getResponseLatency50thPercentile();
+	long getResponseLatency99thPercentile();
+	long getResponseLatencyMax();
+
+	long getCompressedMessages();
+	double getCompressionRatio();
+	double getCompressionTimeMean();
+	long getCompressionTime99thPercentile();
+	long getDecompressedMessages();
+	double getDecompressionTimeMean();
+
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.Random;
+
+import org.eclipse.flux.core.internal.Configuration;
+
+/**
+ * Exponential reconnect backoff with jitter: the n-th delay is picked randomly between half and
+ * all of <code>min(maxDelay, baseDelay * 2^n)</code>, so that many clients that lost their connection
+ * at the same time (like after a broker restart) don't reconnect in lockstep.
+ *
+ * @author Martin Lippert
+ */
+public class ReconnectBackoff {
+
+	public static final long DEFAULT_BASE_DELAY = 1000;
+	public static final long DEFAULT_MAX_DELAY = 60000;
+
+	private final long baseDelay;
+	private final long maxDelay;
+	private final Random random;
+	private int attempt;
+
+	public ReconnectBackoff(long baseDelay, long maxDelay) {
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.random = new Random();
+	}
+
+	/**
+	 * Creates a backoff with the delays (in milliseconds) from the <code>flux.reconnect.baseDelay</code>
+	 * and <code>flux.reconnect.maxDelay</code> system properties.
+	 */
+	public static ReconnectBackoff createDefault() {
+		long baseDelay = Configuration.getLong("flux.reconnect.baseDelay", "FLUX_RECONNECT_BASE_DELAY", DEFAULT_BASE_DELAY);
+		long maxDelay = Configuration.getLong("flux.reconnect.maxDelay", "FLUX_RECONNECT_MAX_DELAY", DEFAULT_MAX_DELAY);
+		return new ReconnectBackoff(Math.max(1, baseDelay), Math.max(1, Math.max(baseDelay, maxDelay)));
+	}
+
+	public synchronized long nextDelay() {
+		long ceiling = attempt >= 30 ? maxDelay : Math.min(maxDelay, baseDelay << attempt);
+		attempt++;
+		return ceiling / 2 + (long) (random.nextDouble() * (ceiling - ceiling / 2));
+	}
+
+	public synchronized void reset() {
+		attempt = 0;
+	}
+
+}
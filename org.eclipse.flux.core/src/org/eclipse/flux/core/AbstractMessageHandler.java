@@ -18,19 +18,49 @@ import org.json.JSONObject;
 public abstract class AbstractMessageHandler implements IMessageHandler {
 	
 	private String messageType;
+	private String username;
+	private String project;
 
 	public AbstractMessageHandler(String messageType) {
+		this(messageType, null, null);
+	}
+	
+	/**
+	 * Creates a handler for the messages of the given user and project only, <code>null</code> matches
+	 * any user or project. The messaging connectors use these filters to look up the handlers of an
+	 * incoming message without asking every handler of the message type.
+	 */
+	public AbstractMessageHandler(String messageType, String username, String project) {
 		this.messageType = messageType;
+		this.username = username;
+		this.project = project;
 	}
 	
 	@Override
 	public String getMessageType() {
 		return this.messageType;
 	}
+	
+	public String getUsernameFilter() {
+		return this.username;
+	}
+	
+	public String getProjectFilter() {
+		return this.project;
+	}
+	
+	/**
+	 * Returns the callback ID of the responses this handler is waiting for, <code>null</code> for any message.
+	 */
+	public Integer getCallbackID() {
+		return null;
+	}
 
 	@Override
 	public boolean canHandle(String messageType, JSONObject message) {
-		return this.messageType.equals(messageType);
+		return this.messageType.equals(messageType)
+				&& (this.username == null || this.username.equals(message.optString("username", null)))
+				&& (this.project == null || this.project.equals(message.optString("project", null)));
 	}
 
 }
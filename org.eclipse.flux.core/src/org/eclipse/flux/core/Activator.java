@@ -12,6 +12,8 @@ package org.eclipse.flux.core;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.core.resources.IProject;
@@ -23,13 +25,21 @@ import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 import org.eclipse.core.runtime.preferences.InstanceScope;
 import org.eclipse.flux.core.internal.CloudSyncMetadataListener;
 import org.eclipse.flux.core.internal.CloudSyncResourceListener;
+import org.eclipse.flux.core.internal.Configuration;
+import org.eclipse.flux.core.internal.messaging.LoopbackMessagingHub;
 import org.eclipse.flux.core.internal.messaging.SocketIOMessagingConnector;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.FrameworkUtil;
 import org.osgi.service.prefs.BackingStoreException;
 
 /**
@@ -47,9 +57,17 @@ public class Activator implements BundleActivator {
 	private static Activator plugin;
 
 	private SocketIOMessagingConnector messagingConnector;
+	private LoopbackMessagingHub loopbackHub;
+	private IMessagingConnector repositoryConnector;
+	private IMessagingConnector liveEditConnector;
+	private IMessagingConnector servicesConnector;
 	private Repository repository;
 	private LiveEditCoordinator liveEditCoordinator;
 	private boolean lazyStart = false;
+	private IPath stateLocation;
+	
+	// per user channel, survives re-creating the repository after a reconnect
+	private final ConcurrentMap<String, ConcurrentMap<String, String>> resumeTokens = new ConcurrentHashMap<String, ConcurrentMap<String, String>>();
 	
 	private CloudSyncResourceListener resourceListener;
 	private CloudSyncMetadataListener metadataListener;
@@ -79,6 +97,19 @@ public class Activator implements BundleActivator {
 	@Override
 	public void start(BundleContext context) throws Exception {
 		plugin = this;
+		Configuration.setLog(new Configuration.Log() {
+			@Override
+			public void log(String message) {
+				Activator.log(message);
+			}
+		});
+		
+		try {
+			stateLocation = Platform.getStateLocation(context.getBundle());
+		} catch (IllegalStateException e) {
+			// no instance location, nothing is persisted
+			e.printStackTrace();
+		}
 		
 		String login = System.getProperty("flux.user.name") == null ? System.getenv("FLUX_USER_ID") : System.getProperty("flux.user.name");
 		if (login == null) {
@@ -103,6 +134,19 @@ public class Activator implements BundleActivator {
 		this.messagingConnector = new SocketIOMessagingConnector(host, login, token);
 		this.messagingConnector.addChannelListener(SERVICE_STARTER);
 		
+		// in-process participants talk to each other via loopback endpoints, see LoopbackMessagingHub
+		if (Configuration.getBoolean("flux.loopback", "FLUX_LOOPBACK", true)) {
+			this.loopbackHub = new LoopbackMessagingHub(messagingConnector);
+			this.repositoryConnector = loopbackHub.createEndpoint();
+			this.liveEditConnector = loopbackHub.createEndpoint();
+			this.servicesConnector = loopbackHub.createEndpoint();
+		}
+		else {
+			this.repositoryConnector = messagingConnector;
+			this.liveEditConnector = messagingConnector;
+			this.servicesConnector = messagingConnector;
+		}
+		
 		final String userChannel = lazyStart ? Constants.SUPER_USER : channel;
 		messagingConnector.addConnectionListener(new IConnectionListener() {
 		
@@ -123,15 +167,20 @@ public class Activator implements BundleActivator {
 
 	@Override
 	public void stop(BundleContext context) throws Exception {
+		if (loopbackHub != null) {
+			loopbackHub.dispose();
+		}
 		if (messagingConnector != null) {
 			messagingConnector.disconnect();
+			messagingConnector.dispose();
 		}
 		plugin = null;
 	}
 	
 	private void initCoreService(String userChannel) throws CoreException {
-		repository = new Repository(messagingConnector, userChannel);
-		liveEditCoordinator = new LiveEditCoordinator(messagingConnector);
+		resumeTokens.putIfAbsent(userChannel, new ConcurrentHashMap<String, String>());
+		repository = new Repository(repositoryConnector, userChannel, resumeTokens.get(userChannel));
+		liveEditCoordinator = new LiveEditCoordinator(liveEditConnector);
 		
 		IWorkspace workspace = ResourcesPlugin.getWorkspace();
 		
@@ -268,7 +317,14 @@ public class Activator implements BundleActivator {
 	}
 	
 	public IMessagingConnector getMessagingConnector() {
-		return messagingConnector;
+		return servicesConnector;
+	}
+	
+	/**
+	 * Returns the directory for the persisted state of this bundle, <code>null</code> if there is none.
+	 */
+	public IPath getStateLocation() {
+		return stateLocation;
 	}
 	
 	public Repository getRepository() {
@@ -282,6 +338,19 @@ public class Activator implements BundleActivator {
 	public static void log(Throwable ex) {
 		ex.printStackTrace();
 	}
+
+	/**
+	 * Logs a one line warning, to the platform log when running in OSGi.
+	 */
+	public static void log(String message) {
+		Bundle bundle = FrameworkUtil.getBundle(Activator.class);
+		if (bundle != null) {
+			Platform.getLog(bundle).log(new Status(IStatus.WARNING, PLUGIN_ID, message));
+		}
+		else {
+			System.err.println(message);
+		}
+	}
 	
 	public boolean isLazyStart() {
 		return lazyStart;
@@ -24,6 +24,11 @@ public abstract class CallbackIDAwareMessageHandler extends AbstractMessageHandl
 		this.expectedCallbackID = callbackID;
 	}
 	
+	@Override
+	public Integer getCallbackID() {
+		return this.expectedCallbackID;
+	}
+	
 	@Override
 	public boolean canHandle(String messageType, JSONObject message) {
 		return super.canHandle(messageType, message) && message.has("callback_id") && message.optInt("callback_id") == this.expectedCallbackID;
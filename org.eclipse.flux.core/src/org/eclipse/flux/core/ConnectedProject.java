@@ -12,7 +12,14 @@ package org.eclipse.flux.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.codec.digest.DigestUtils;
@@ -23,20 +30,77 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceVisitor;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.flux.core.internal.ContentHasher;
+import org.eclipse.flux.core.internal.ProjectIndex;
+import org.eclipse.flux.core.internal.ResourceTrie;
 
 /**
+ * Keeps the timestamps and hashes of the resources of a connected project.
+ * <p>
+ * The folders form a Merkle tree: the hash of a folder is a digest over the names and hashes of its
+ * children, so two participants that report the same digest for a folder have the same content
+ * below that folder. Folder digests are computed lazily and invalidated up to the project root
+ * whenever a resource below changes.
+ * <p>
+ * Files are hashed lazily, on the first request for their hash or for the digest of a folder above
+ * them. The hash of the current content of a file is cached together with the modification time
+ * and size it was computed for (taken from a single stat of the file), so change detection only
+ * rereads files that actually changed.
+ * <p>
+ * The resources are kept in a {@link ResourceTrie}, which stores each path segment once and the
+ * timestamps and hashes in primitive arrays instead of maps of full paths to boxed values.
+ * <p>
+ * Changes after connecting the project are numbered, so that a participant can resume a sync with
+ * the changes since a resume token (see {@link #getResumeToken()}) instead of relying on timestamps,
+ * which don't change when a file is copied or restored with its old modification time.
+ *
  * @author Martin Lippert
  */
 public class ConnectedProject {
 	
+	public static final String ROOT_FOLDER = "";
+	
+	// rounds of hashing files added while computing a digest, before unreadable files are left out
+	private static final int DIGEST_ROUNDS = 2;
+	
 	private IProject project;
-	private Map<String, String> resourceHash;
-	private Map<String, Long> resourceTimestamp;
+	
+	// changes and the computation of folder digests are guarded by the lock on resources
+	private ResourceTrie resources;
+	
+	private Map<String, ContentHash> contentHashes;
+	
+	// guarded by the lock on resources, the sequence of the latest change per changed path
+	private final String changeEpoch;
+	private long changeSequence;
+	private Map<String, Change> changes;
 	
 	public ConnectedProject(IProject project) {
+		this(project, null);
+	}
+	
+	/**
+	 * Creates the connected project, reusing the hashes of the index for files that didn't change since it was written.
+	 * Other files are hashed when their hash is needed first.
+	 */
+	public ConnectedProject(IProject project, ProjectIndex index) {
+		this(project, index, null);
+	}
+	
+	/**
+	 * Creates the connected project like {@link #ConnectedProject(IProject, ProjectIndex)}. If a monitor is
+	 * given, the files that aren't in the index are hashed right away, in parallel (see {@link ContentHasher}).
+	 *
+	 * @throws OperationCanceledException if the monitor is canceled while hashing
+	 */
+	public ConnectedProject(IProject project, final ProjectIndex index, IProgressMonitor monitor) {
 		this.project = project;
-		this.resourceHash = new ConcurrentHashMap<String, String>();
-		this.resourceTimestamp = new ConcurrentHashMap<String, Long>();
+		this.resources = new ResourceTrie();
+		this.contentHashes = new ConcurrentHashMap<String, ContentHash>();
+		this.changeEpoch = UUID.randomUUID().toString();
+		this.changes = new HashMap<String, Change>();
 		
 		try {
 			project.refreshLocal(IResource.DEPTH_INFINITE, null);
@@ -44,18 +108,25 @@ public class ConnectedProject {
 				@Override
 				public boolean visit(IResource resource) throws CoreException {
 					String path = resource.getProjectRelativePath().toString();
-					ConnectedProject.this.setTimestamp(path, resource.getLocalTimeStamp());
+					synchronized (resources) {
+						resources.setTimestamp(path, resource.getLocalTimeStamp());
+					}
 					
 					if (resource instanceof IFile) {
-						try {
-							IFile file = (IFile) resource;
-							ConnectedProject.this.setHash(path, DigestUtils.shaHex(file.getContents()));
-						} catch (IOException e) {
-							e.printStackTrace();
+						IFile file = (IFile) resource;
+						// stat before checking the index, a change in between fails the check
+						ContentHash contentHash = new ContentHash(file, null);
+						contentHash.hash = index != null ? index.getHash(path, file) : null;
+						if (contentHash.hash != null) {
+							contentHashes.put(path, contentHash);
+							ConnectedProject.this.setHash(path, contentHash.hash);
+						}
+						else {
+							ConnectedProject.this.addFile(path);
 						}
 					}
 					else if (resource instanceof IFolder) {
-						ConnectedProject.this.setHash(path, "0");
+						ConnectedProject.this.addFolder(path);
 					}
 					
 					return true;
@@ -64,7 +135,10 @@ public class ConnectedProject {
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
-
+		
+		if (monitor != null) {
+			hashFiles(ROOT_FOLDER, monitor);
+		}
 	}
 	
 	public IProject getProject() {
@@ -80,23 +154,321 @@ public class ConnectedProject {
 	}
 	
 	public void setTimestamp(String resourcePath, long newTimestamp) {
-		this.resourceTimestamp.put(resourcePath, newTimestamp);
+		synchronized (resources) {
+			this.resources.setTimestamp(resourcePath, newTimestamp);
+			recordChange(resourcePath, 0);
+		}
 	}
 	
+	/**
+	 * Returns the timestamp of the resource, <code>0</code> if it is not contained.
+	 */
 	public long getTimestamp(String resourcePath) {
-		return this.resourceTimestamp.get(resourcePath);
+		return this.resources.getTimestamp(resourcePath);
 	}
 
 	public void setHash(String resourcePath, String hash) {
-		this.resourceHash.put(resourcePath, hash);
+		synchronized (resources) {
+			if (this.resources.isFolder(resourcePath)) {
+				// the hash of a folder is the digest of its content
+				this.resources.invalidate(resourcePath);
+			}
+			else {
+				this.resources.setHash(resourcePath, hash);
+			}
+		}
 	}
 	
+	/**
+	 * Returns the recorded hash of a file (hashing its content if it wasn't hashed yet) or the digest of a folder.
+	 */
 	public String getHash(String resourcePath) {
-		return this.resourceHash.get(resourcePath);
+		for (int round = 0; isFolder(resourcePath); round++) {
+			// files are read outside the lock, files added meanwhile are hashed in another round
+			hashFiles(resourcePath, null);
+			synchronized (resources) {
+				if (!resources.isFolder(resourcePath)) {
+					break;
+				}
+				String digest = getDigest(resourcePath, round >= DIGEST_ROUNDS);
+				if (digest != null) {
+					return digest;
+				}
+			}
+		}
+		
+		String hash = this.resources.getHash(resourcePath);
+		if (hash == null && containsResource(resourcePath) && !isFolder(resourcePath)) {
+			try {
+				hash = recordHashIfAbsent(resourcePath, getContentHash(resourcePath));
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * Returns the recorded hash of a file without hashing it, <code>null</code> if it wasn't hashed yet.
+	 */
+	public String getRecordedHash(String resourcePath) {
+		return isFolder(resourcePath) ? null : this.resources.getHash(resourcePath);
+	}
+	
+	/**
+	 * Returns the recorded hash of a file if it was computed from the content the file had with the given
+	 * modification time and size, <code>null</code> otherwise.
+	 */
+	public String getRecordedHash(String resourcePath, long lastModified, long size) {
+		String hash = getRecordedHash(resourcePath);
+		ContentHash contentHash = contentHashes.get(resourcePath);
+		if (hash == null || contentHash == null || !hash.equals(contentHash.hash)
+				|| contentHash.lastModified != lastModified || contentHash.size != size) {
+			return null;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Returns the hash of the current content of a file. The file is only read if its modification time
+	 * or size changed since it was hashed last, the recorded hash is not changed.
+	 */
+	public String getContentHash(String resourcePath) throws IOException, CoreException {
+		IFile file = project.getFile(resourcePath);
+		ContentHash cached = contentHashes.get(resourcePath);
+		if (cached != null) {
+			if (cached.matches(file)) {
+				return cached.hash;
+			}
+			// stale, also if the file can't be read now
+			contentHashes.remove(resourcePath);
+		}
+		
+		// the stat is taken before reading, a change while reading leads to hashing again next time
+		ContentHash contentHash = new ContentHash(file, null);
+		contentHash.hash = ContentHasher.hash(file);
+		contentHashes.put(resourcePath, contentHash);
+		return contentHash.hash;
+	}
+	
+	/**
+	 * Hashes all files below the given folder that weren't hashed yet, in parallel.
+	 *
+	 * @throws OperationCanceledException if the monitor is canceled while hashing
+	 */
+	public void hashFiles(String folderPath, IProgressMonitor monitor) {
+		Map<String, IFile> unhashedFiles = new HashMap<String, IFile>();
+		Map<String, ContentHash> stamps = new HashMap<String, ContentHash>();
+		for (String path : this.resources.getUnhashedFiles(folderPath)) {
+			if (!path.equals(folderPath)) {
+				IFile file = project.getFile(path);
+				unhashedFiles.put(path, file);
+				stamps.put(path, new ContentHash(file, null));
+			}
+		}
+		if (unhashedFiles.isEmpty()) {
+			return;
+		}
+		
+		for (Map.Entry<String, String> hash : ContentHasher.hash(unhashedFiles, monitor).entrySet()) {
+			ContentHash contentHash = stamps.get(hash.getKey());
+			contentHash.hash = hash.getValue();
+			contentHashes.put(hash.getKey(), contentHash);
+			recordHashIfAbsent(hash.getKey(), hash.getValue());
+		}
+	}
+	
+	private String recordHashIfAbsent(String resourcePath, String hash) {
+		synchronized (resources) {
+			String recorded = this.resources.getHash(resourcePath);
+			if (recorded != null) {
+				return recorded;
+			}
+			setHash(resourcePath, hash);
+			return hash;
+		}
 	}
 
 	public boolean containsResource(String resourcePath) {
-		return this.resourceTimestamp.containsKey(resourcePath);
+		return this.resources.contains(resourcePath);
+	}
+	
+	/**
+	 * Returns the paths of all resources, each folder followed by its children sorted by name.
+	 */
+	public Collection<String> getResourcePaths() {
+		return this.resources.getPaths(ROOT_FOLDER);
+	}
+	
+	/**
+	 * Adds a file that is hashed lazily.
+	 */
+	public void addFile(String filePath) {
+		synchronized (resources) {
+			this.resources.addFile(filePath);
+		}
+	}
+	
+	public void addFolder(String folderPath) {
+		synchronized (resources) {
+			this.resources.addFolder(folderPath);
+		}
+	}
+	
+	public boolean isFolder(String resourcePath) {
+		return this.resources.isFolder(resourcePath);
+	}
+	
+	/**
+	 * Returns the paths of the direct children of the given folder, sorted by name.
+	 */
+	public List<String> getChildren(String folderPath) {
+		return this.resources.getChildren(folderPath);
+	}
+	
+	/**
+	 * Forgets a deleted resource, including everything below it if it is a folder.
+	 */
+	public void removeResource(String resourcePath) {
+		synchronized (resources) {
+			if (this.resources.isFolder(resourcePath)) {
+				String prefix = ROOT_FOLDER.equals(resourcePath) ? ROOT_FOLDER : resourcePath + "/";
+				for (String path : this.contentHashes.keySet()) {
+					if (path.startsWith(prefix)) {
+						this.contentHashes.remove(path);
+					}
+				}
+			}
+			this.resources.remove(resourcePath);
+			this.contentHashes.remove(resourcePath);
+			recordChange(resourcePath, System.currentTimeMillis());
+		}
+	}
+	
+	// called with the resources lock held
+	private void recordChange(String resourcePath, long deletedTimestamp) {
+		changes.put(resourcePath, new Change(++changeSequence, deletedTimestamp));
+	}
+	
+	/**
+	 * Returns the identity of this connected instance of the project, a new one is used whenever the
+	 * project is connected again.
+	 */
+	public String getChangeEpoch() {
+		return changeEpoch;
+	}
+	
+	/**
+	 * Returns a token for the current state of the project, to be passed to {@link #getChangesSince(String)}
+	 * by a participant that later resumes the sync.
+	 */
+	public String getResumeToken() {
+		synchronized (resources) {
+			return changeEpoch + ":" + changeSequence;
+		}
+	}
+	
+	/**
+	 * Returns the paths of the resources changed or deleted since the state of the resume token, sorted
+	 * by path, mapped to the time of their deletion or to <code>0</code> if they weren't deleted. Returns
+	 * <code>null</code> if the token doesn't belong to this connected project, for example because it was
+	 * handed out before the project was connected again.
+	 */
+	public SortedMap<String, Long> getChangesSince(String resumeToken) {
+		if (resumeToken == null || !resumeToken.startsWith(changeEpoch + ":")) {
+			return null;
+		}
+		long since;
+		try {
+			since = Long.parseLong(resumeToken.substring(changeEpoch.length() + 1));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		
+		SortedMap<String, Long> result = new TreeMap<String, Long>();
+		synchronized (resources) {
+			for (Map.Entry<String, Change> change : changes.entrySet()) {
+				if (change.getValue().sequence > since) {
+					result.put(change.getKey(), change.getValue().deletedTimestamp);
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * The digest of a folder is the SHA-1 of <code>name + "\n" + hash + "\n"</code> of all its children,
+	 * sorted by name, where the hash of a child folder is its digest. Files are never read while the lock
+	 * is held: if a file below wasn't hashed yet (because it was added since the files were hashed or
+	 * can't be read), <code>null</code> is returned, or with <code>partial</code> a digest with
+	 * <code>"0"</code> as the hash of that file, which isn't recorded.
+	 */
+	// called with the resources lock held
+	private String getDigest(String folderPath, boolean partial) {
+		String digest = resources.getHash(folderPath);
+		if (digest == null) {
+			StringBuilder content = new StringBuilder();
+			for (String child : resources.getChildren(folderPath)) {
+				String hash = resources.isFolder(child) ? getDigest(child, partial) : resources.getHash(child);
+				if (hash == null) {
+					if (!partial) {
+						return null;
+					}
+					hash = "0";
+				}
+				content.append(child.substring(child.lastIndexOf('/') + 1)).append('\n');
+				content.append(hash).append('\n');
+			}
+			digest = DigestUtils.shaHex(content.toString());
+			if (!partial) {
+				resources.setHash(folderPath, digest);
+			}
+		}
+		return digest;
+	}
+	
+	private static class Change {
+		
+		private final long sequence;
+		private final long deletedTimestamp;
+		
+		public Change(long sequence, long deletedTimestamp) {
+			this.sequence = sequence;
+			this.deletedTimestamp = deletedTimestamp;
+		}
+		
+	}
+	
+	/**
+	 * A content hash together with the modification time and size of the file it was computed for,
+	 * both read from the file system with a single stat. The workspace modification stamp is not used,
+	 * it doesn't change for changes on disk before the workspace is refreshed.
+	 */
+	private static class ContentHash {
+		
+		private static final long UNKNOWN = -1;
+		
+		private long lastModified = UNKNOWN;
+		private long size = UNKNOWN;
+		private String hash;
+		
+		public ContentHash(IFile file, String hash) {
+			BasicFileAttributes attributes = ContentHasher.stat(file);
+			if (attributes != null) {
+				this.lastModified = attributes.lastModifiedTime().toMillis();
+				this.size = attributes.size();
+			}
+			this.hash = hash;
+		}
+		
+		public boolean matches(IFile file) {
+			if (lastModified == UNKNOWN) {
+				return false;
+			}
+			BasicFileAttributes attributes = ContentHasher.stat(file);
+			return attributes != null && attributes.lastModifiedTime().toMillis() == lastModified && attributes.size() == size;
+		}
+		
 	}
 	
 }
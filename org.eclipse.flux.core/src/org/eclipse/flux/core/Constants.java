@@ -13,5 +13,8 @@ package org.eclipse.flux.core;
 public class Constants {
 	
 	public static final String SUPER_USER = "$super$";
+	
+	// timeout (in milliseconds) for requests that wait for a single response
+	public static final long REQUEST_TIMEOUT = 60000;
 
 }
@@ -11,14 +11,20 @@
 package org.eclipse.flux.core;
 
 import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.IOUtils;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.resources.WorkspaceJob;
 import org.eclipse.core.runtime.CoreException;
@@ -26,6 +32,12 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
+import org.eclipse.flux.core.internal.BlobStore;
+import org.eclipse.flux.core.internal.RequestWindow;
+import org.eclipse.flux.core.internal.ResourceBatchRequest;
+import org.eclipse.flux.core.internal.ResourceBatches;
+import org.eclipse.flux.core.internal.ResourceContents;
+import org.eclipse.flux.core.internal.WorkspaceUpdates;
 import org.eclipse.m2e.core.MavenPlugin;
 import org.eclipse.m2e.core.project.ResolverConfiguration;
 import org.json.JSONArray;
@@ -45,17 +57,20 @@ public class DownloadProject {
 	private IMessagingConnector messagingConnector;
 
 	private String projectName;
-	private int callbackID;
 	private CompletionCallback completionCallback;
 
 	private String username;
 	private IProject project;
 
 	private AtomicInteger requestedFileCount = new AtomicInteger(0);
-	private AtomicInteger downloadedFileCount = new AtomicInteger(0);
-
-	private CallbackIDAwareMessageHandler projectResponseHandler;
-	private CallbackIDAwareMessageHandler resourceResponseHandler;
+	// guarded by handledFiles, the files written or left out and the files being written
+	private Set<String> handledFiles = new HashSet<String>();
+	private Set<String> writingFiles = new HashSet<String>();
+	private AtomicBoolean failed = new AtomicBoolean(false);
+
+	private ResponseFuture.Callback projectResponseCallback;
+	private RequestWindow resourceRequests;
+	private WorkspaceUpdates workspaceUpdates;
 	
 	private Set<String> projectFiles = new HashSet<String>();
 
@@ -63,27 +78,23 @@ public class DownloadProject {
 		this.messagingConnector = messagingConnector;
 		this.projectName = projectName;
 		this.username = username;
+		this.resourceRequests = RequestWindow.createDefault(messagingConnector);
+		this.workspaceUpdates = WorkspaceUpdates.createDefault();
 
-		this.callbackID = this.hashCode();
-
-		projectResponseHandler = new CallbackIDAwareMessageHandler("getProjectResponse", this.callbackID) {
+		projectResponseCallback = new ResponseFuture.Callback() {
 			@Override
-			public void handleMessage(String messageType, JSONObject message) {
-				getProjectResponse(message);
+			public void responseReceived(JSONObject response) {
+				getProjectResponse(response);
 			}
-		};
-		resourceResponseHandler = new CallbackIDAwareMessageHandler("getResourceResponse", this.callbackID) {
+
 			@Override
-			public void handleMessage(String messageType, JSONObject message) {
-				getResourceResponse(message);
+			public void requestFailed(Throwable error) {
+				downloadFailed(error);
 			}
 		};
 	}
 
 	public void run(final CompletionCallback completionCallback) {
-		this.messagingConnector.addMessageHandler(projectResponseHandler);
-		this.messagingConnector.addMessageHandler(resourceResponseHandler);
-
 		this.completionCallback = completionCallback;
 
 		IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
@@ -101,21 +112,14 @@ public class DownloadProject {
 					}
 
 					JSONObject message = new JSONObject();
-					message.put("callback_id", callbackID);
 					message.put("username", username);
 					message.put("project", projectName);
 
-					messagingConnector.send("getProjectRequest", message);
+					MessagingRequests.request(messagingConnector, "getProjectRequest", message, Constants.REQUEST_TIMEOUT).addCallback(projectResponseCallback);
 				} catch (CoreException e1) {
-					e1.printStackTrace();
-					messagingConnector.removeMessageHandler(projectResponseHandler);
-					messagingConnector.removeMessageHandler(resourceResponseHandler);
-					completionCallback.downloadFailed();
+					downloadFailed(e1);
 				} catch (JSONException e) {
-					e.printStackTrace();
-					messagingConnector.removeMessageHandler(projectResponseHandler);
-					messagingConnector.removeMessageHandler(resourceResponseHandler);
-					completionCallback.downloadFailed();
+					downloadFailed(e);
 				}
 
 				return Status.OK_STATUS;
@@ -154,6 +158,7 @@ public class DownloadProject {
 					}
 				}
 
+				List<JSONObject> resourceRequests = new ArrayList<JSONObject>();
 				for (int i = 0; i < files.length(); i++) {
 					JSONObject resource = files.getJSONObject(i);
 
@@ -162,22 +167,83 @@ public class DownloadProject {
 
 					if (type.equals("file")) {
 						this.projectFiles.add(resourcePath);
+						if (restoreResource(resourcePath, resource.getLong("timestamp"), resource.optString("hash"))) {
+							continue;
+						}
 						
-						JSONObject message = new JSONObject();
-						message.put("callback_id", callbackID);
-						message.put("username", this.username);
-						message.put("project", responseProject);
-						message.put("resource", resourcePath);
+						JSONObject resourceRequest = new JSONObject();
+						resourceRequest.put("resource", resourcePath);
+						resourceRequests.add(resourceRequest);
+					}
+				}
 
-						messagingConnector.send("getResourceRequest", message);
+				if (resourceRequests.isEmpty()) {
+					// all contents were in the blob store, the last restored file finished the download
+					if (requestedFileCount.get() == 0) {
+						finish();
 					}
+					return;
+				}
+
+				JSONObject message = new JSONObject();
+				message.put("username", this.username);
+				message.put("project", responseProject);
+				message.put(ResourceContents.ACCEPT_BINARY, true);
+				for (JSONArray resources : ResourceBatches.partition(resourceRequests)) {
+					new ResourceBatchRequest(messagingConnector, message, resources, Constants.REQUEST_TIMEOUT, new ResourceBatchRequest.Receiver() {
+						@Override
+						public void resourceReceived(JSONObject resource) {
+							try {
+								resource.put("username", username);
+							} catch (JSONException e) {
+								downloadFailed(e);
+								return;
+							}
+							getResourceResponse(resource);
+						}
+
+						@Override
+						public void resourceMissing(JSONObject requested, JSONObject answered) {
+							requestResource(requested.optString("resource"));
+						}
+
+						@Override
+						public void requestFailed(Throwable error) {
+							downloadFailed(error);
+						}
+					}).send();
 				}
 			}
 		} catch (Exception e) {
-			e.printStackTrace();
-			this.messagingConnector.removeMessageHandler(projectResponseHandler);
-			this.messagingConnector.removeMessageHandler(resourceResponseHandler);
-			this.completionCallback.downloadFailed();
+			downloadFailed(e);
+		}
+	}
+
+	/**
+	 * Requests a file that wasn't sent in a batch (too large or unreadable) on its own, the file is
+	 * left out if this fails as well.
+	 */
+	protected void requestResource(final String resourcePath) {
+		try {
+			JSONObject message = new JSONObject();
+			message.put("username", this.username);
+			message.put("project", this.projectName);
+			message.put("resource", resourcePath);
+			message.put(ResourceContents.ACCEPT_BINARY, true);
+
+			resourceRequests.request("getResourceRequest", message, Constants.REQUEST_TIMEOUT).addCallback(new ResponseFuture.Callback() {
+				@Override
+				public void responseReceived(JSONObject response) {
+					getResourceResponse(response);
+				}
+
+				@Override
+				public void requestFailed(Throwable error) {
+					resourceSkipped(resourcePath, error);
+				}
+			});
+		} catch (JSONException e) {
+			resourceSkipped(resourcePath, e);
 		}
 	}
 
@@ -186,28 +252,107 @@ public class DownloadProject {
 			final String responseUser = response.getString("username");
 			final String resourcePath = response.getString("resource");
 			final long timestamp = response.getLong("timestamp");
-			final String content = response.getString("content");
+			final String hash = response.optString("hash");
+
+			if (this.username.equals(responseUser) && startWriting(resourcePath)) {
+				final IFile file = project.getFile(resourcePath);
+				final byte[] content = ResourceContents.getBytes(response, file.getCharset());
+				workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+					@Override
+					public void run(IProgressMonitor monitor) throws CoreException {
+						try {
+							writeFile(file, new ByteArrayInputStream(content), timestamp, monitor);
+							if (file.getLocation() != null) {
+								BlobStore.getDefault().put(hash, file.getLocation().toFile());
+							}
+							fileHandled(resourcePath);
+						} catch (CoreException e) {
+							downloadFailed(e);
+						}
+					}
+				});
+			}
+		} catch (Exception e) {
+			downloadFailed(e);
+		}
+	}
+	
+	protected void resourceSkipped(String resourcePath, Throwable error) {
+		if (startWriting(resourcePath)) {
+			Activator.log("Flux couldn't download " + resourcePath + " of " + projectName + ", leaving it out: " + error.getMessage());
+			fileHandled(resourcePath);
+		}
+	}
 
-			if (this.username.equals(responseUser)) {
-				IFile file = project.getFile(resourcePath);
-				if (!file.exists()) {
-					file.create(new ByteArrayInputStream(content.getBytes()), true, null);
-				} else {
-					file.setContents(new ByteArrayInputStream(content.getBytes()), true, false, null);
-				}
-				file.setLocalTimeStamp(timestamp);
+	/**
+	 * Returns <code>false</code> if the file is already written, left out or being written.
+	 */
+	private boolean startWriting(String resourcePath) {
+		synchronized (handledFiles) {
+			return !handledFiles.contains(resourcePath) && writingFiles.add(resourcePath);
+		}
+	}
 
-				int downloaded = this.downloadedFileCount.incrementAndGet();
-				if (downloaded == this.requestedFileCount.get()) {
-					this.messagingConnector.removeMessageHandler(projectResponseHandler);
-					this.messagingConnector.removeMessageHandler(resourceResponseHandler);
-					finish();
+	/**
+	 * Counts each file once, finishes the download when all files are written or left out.
+	 */
+	private void fileHandled(String resourcePath) {
+		boolean complete;
+		synchronized (handledFiles) {
+			writingFiles.remove(resourcePath);
+			complete = handledFiles.add(resourcePath) && handledFiles.size() == this.requestedFileCount.get();
+		}
+		if (complete && !this.failed.get()) {
+			finish();
+		}
+	}
+	
+	/**
+	 * Queues writing the file if its content is in the blob store, returns <code>false</code> if it has to be downloaded.
+	 * The blob is opened when the file is written, if it was evicted from the store in the meantime the file is downloaded.
+	 */
+	protected boolean restoreResource(final String resourcePath, final long timestamp, final String hash) {
+		if (!BlobStore.getDefault().contains(hash) || !startWriting(resourcePath)) {
+			return false;
+		}
+		final IFile file = project.getFile(resourcePath);
+		workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+			@Override
+			public void run(IProgressMonitor monitor) throws CoreException {
+				InputStream blob = BlobStore.getDefault().get(hash);
+				if (blob == null) {
+					synchronized (handledFiles) {
+						writingFiles.remove(resourcePath);
+					}
+					requestResource(resourcePath);
+					return;
+				}
+				try {
+					writeFile(file, blob, timestamp, monitor);
+					fileHandled(resourcePath);
+				} catch (CoreException e) {
+					downloadFailed(e);
+				} finally {
+					IOUtils.closeQuietly(blob);
 				}
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			this.messagingConnector.removeMessageHandler(projectResponseHandler);
-			this.messagingConnector.removeMessageHandler(resourceResponseHandler);
+		});
+		return true;
+	}
+
+	private static void writeFile(IFile file, InputStream content, long timestamp, IProgressMonitor monitor) throws CoreException {
+		if (!file.exists()) {
+			file.create(content, true, monitor);
+		} else {
+			file.setContents(content, true, false, monitor);
+		}
+		file.setLocalTimeStamp(timestamp);
+	}
+
+	protected void downloadFailed(Throwable error) {
+		error.printStackTrace();
+		if (this.failed.compareAndSet(false, true)) {
+			this.workspaceUpdates.dispose();
 			this.completionCallback.downloadFailed();
 		}
 	}
@@ -0,0 +1,199 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import org.json.JSONException;
+import org.json.JSONString;
+import org.json.JSONTokener;
+
+/**
+ * Writes JSON text directly into a buffer, for large message values (like the files of a project or the
+ * markers of a resource) that would otherwise be built as a tree of <code>JSONObject</code>s just to be
+ * serialized once.
+ * <p>
+ * The writer is put into a message as the value of a field. It is a {@link JSONString}, so serializing the
+ * message appends the written text as it is. Participants in the same process receive the value parsed
+ * into a <code>JSONObject</code> or <code>JSONArray</code>, just like remote participants do.
+ * <p>
+ * The writer doesn't check the structure of what is written, keys and values have to be written in a valid
+ * order.
+ *
+ * @author Martin Lippert
+ */
+public class JSONStreamWriter implements JSONString {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final StringBuilder buffer;
+	private boolean needsSeparator;
+	// the text of the buffer as it was serialized last, the buffer only grows
+	private String text;
+
+	public JSONStreamWriter() {
+		this(256);
+	}
+
+	public JSONStreamWriter(int capacity) {
+		this.buffer = new StringBuilder(capacity);
+	}
+
+	public JSONStreamWriter object() {
+		separate();
+		buffer.append('{');
+		needsSeparator = false;
+		return this;
+	}
+
+	public JSONStreamWriter endObject() {
+		buffer.append('}');
+		needsSeparator = true;
+		return this;
+	}
+
+	public JSONStreamWriter array() {
+		separate();
+		buffer.append('[');
+		needsSeparator = false;
+		return this;
+	}
+
+	public JSONStreamWriter endArray() {
+		buffer.append(']');
+		needsSeparator = true;
+		return this;
+	}
+
+	public JSONStreamWriter key(String key) {
+		separate();
+		quote(key);
+		buffer.append(':');
+		needsSeparator = false;
+		return this;
+	}
+
+	public JSONStreamWriter value(String value) {
+		separate();
+		if (value == null) {
+			buffer.append("null");
+		}
+		else {
+			quote(value);
+		}
+		needsSeparator = true;
+		return this;
+	}
+
+	public JSONStreamWriter value(long value) {
+		separate();
+		buffer.append(value);
+		needsSeparator = true;
+		return this;
+	}
+
+	public JSONStreamWriter value(boolean value) {
+		separate();
+		buffer.append(value);
+		needsSeparator = true;
+		return this;
+	}
+
+	/**
+	 * Writes a value that is already JSON text, like the <code>toString()</code> of a <code>JSONObject</code>.
+	 */
+	public JSONStreamWriter rawValue(String json) {
+		separate();
+		buffer.append(json);
+		needsSeparator = true;
+		return this;
+	}
+
+	public int length() {
+		return buffer.length();
+	}
+
+	/**
+	 * Returns the written text parsed into a <code>JSONObject</code>, <code>JSONArray</code> or simple value.
+	 */
+	public Object parse() throws JSONException {
+		return new JSONTokener(toJSONString()).nextValue();
+	}
+
+	/**
+	 * Returns the written text, the same string is returned until more is written, so estimating,
+	 * compressing, fragmenting and sending a message copy the written text only once.
+	 */
+	@Override
+	public String toJSONString() {
+		if (text == null || text.length() != buffer.length()) {
+			text = buffer.toString();
+		}
+		return text;
+	}
+
+	@Override
+	public String toString() {
+		return toJSONString();
+	}
+
+	private void separate() {
+		if (needsSeparator) {
+			buffer.append(',');
+		}
+	}
+
+	// escapes like JSONObject.quote(), without creating an intermediate string
+	private void quote(String string) {
+		buffer.append('"');
+		char previous = 0;
+		int length = string.length();
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			switch (c) {
+			case '\\':
+			case '"':
+				buffer.append('\\').append(c);
+				break;
+			case '/':
+				if (previous == '<') {
+					buffer.append('\\');
+				}
+				buffer.append(c);
+				break;
+			case '\b':
+				buffer.append("\\b");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\f':
+				buffer.append("\\f");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			default:
+				if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+					buffer.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf])
+							.append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+				}
+				else {
+					buffer.append(c);
+				}
+			}
+			previous = c;
+		}
+		buffer.append('"');
+	}
+
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.flux.core.internal.messaging.MessageFragments;
+import org.eclipse.flux.core.internal.messaging.TimerWheel;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sends requests over any {@link IMessagingConnector} and correlates their responses, see {@link ResponseFuture}.
+ * <p>
+ * Callback IDs are allocated from one counter, so they are unique within this process. Handlers that
+ * answer to a fixed callback ID (like the response handlers of a whole sync) allocate it with
+ * {@link #nextCallbackID()} as well, instead of deriving it from a string.
+ *
+ * @author Martin Lippert
+ */
+public class MessagingRequests {
+
+	private static final AtomicInteger CALLBACK_IDS = new AtomicInteger(0);
+
+	public static int nextCallbackID() {
+		return CALLBACK_IDS.incrementAndGet();
+	}
+
+	public static ResponseFuture request(IMessagingConnector connector, String messageType, JSONObject message, long timeout) {
+		return request(connector, messageType, getResponseType(messageType), message, timeout);
+	}
+
+	public static ResponseFuture request(IMessagingConnector connector, String messageType, String responseType, JSONObject message, long timeout) {
+		ResponseFuture future = new ResponseFuture(nextCallbackID());
+		request(connector, messageType, responseType, message, timeout, future);
+		return future;
+	}
+
+	/**
+	 * Sends the request with the callback ID of the given future and completes the future with the first
+	 * response of the given type that carries this ID. The response handler is removed as soon as the future
+	 * is done (response, timeout or cancel). A timeout of zero or less waits forever, the timeout starts now.
+	 * <p>
+	 * Requests announce that large responses may be sent in fragments, they are reassembled before
+	 * the response is handled.
+	 */
+	public static void request(final IMessagingConnector messagingConnector, final String messageType, String responseType, JSONObject message,
+			final long timeout, final ResponseFuture future) {
+		final IMessageHandler responseHandler = new CallbackIDAwareMessageHandler(responseType, future.getCallbackID()) {
+			@Override
+			public void handleMessage(String messageType, JSONObject response) {
+				future.complete(response);
+			}
+		};
+		messagingConnector.addMessageHandler(responseHandler);
+
+		final TimerWheel.Timeout requestTimeout = timeout > 0 ? TimerWheel.getRequestTimeouts().schedule(new Runnable() {
+			@Override
+			public void run() {
+				future.fail(new TimeoutException(messageType + " timed out after " + timeout + "ms"));
+			}
+		}, timeout) : null;
+
+		future.addCallback(new ResponseFuture.Callback() {
+			@Override
+			public void responseReceived(JSONObject response) {
+				cleanup();
+			}
+
+			@Override
+			public void requestFailed(Throwable error) {
+				cleanup();
+			}
+
+			private void cleanup() {
+				messagingConnector.removeMessageHandler(responseHandler);
+				if (requestTimeout != null) {
+					requestTimeout.cancel();
+				}
+			}
+		});
+
+		try {
+			message.put("callback_id", future.getCallbackID());
+			message.put(MessageFragments.ACCEPT_FRAGMENTS, true);
+			messagingConnector.send(messageType, message);
+		} catch (JSONException e) {
+			future.fail(e);
+		}
+	}
+
+	/**
+	 * Derives the response type from the request type, like <code>getProjectRequest</code> to
+	 * <code>getProjectResponse</code> or <code>contentassistrequest</code> to <code>contentassistresponse</code>.
+	 */
+	public static String getResponseType(String requestType) {
+		if (requestType.endsWith("Request")) {
+			return requestType.substring(0, requestType.length() - "Request".length()) + "Response";
+		}
+		else if (requestType.endsWith("request")) {
+			return requestType.substring(0, requestType.length() - "request".length()) + "response";
+		}
+		return requestType + "Response";
+	}
+
+}
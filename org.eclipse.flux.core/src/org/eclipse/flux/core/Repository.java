@@ -11,10 +11,14 @@
 package org.eclipse.flux.core;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
@@ -31,7 +35,26 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.flux.core.internal.BlobStore;
+import org.eclipse.flux.core.internal.ChangeJournal;
+import org.eclipse.flux.core.internal.ContentCache;
+import org.eclipse.flux.core.internal.ContentDelta;
+import org.eclipse.flux.core.internal.MarkerCache;
+import org.eclipse.flux.core.internal.ProjectIndex;
+import org.eclipse.flux.core.internal.RequestWindow;
+import org.eclipse.flux.core.internal.ResourceBatchRequest;
+import org.eclipse.flux.core.internal.ResourceBatches;
+import org.eclipse.flux.core.internal.ResourceContents;
+import org.eclipse.flux.core.internal.ResourceTransfers;
+import org.eclipse.flux.core.internal.WorkspaceUpdates;
 import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IType;
@@ -53,22 +76,62 @@ public class Repository {
 	private ConcurrentMap<String, ConnectedProject> syncedProjects;
 	private Collection<IRepositoryListener> repositoryListeners;
 	
-	private static int GET_PROJECT_CALLBACK = "Repository - getProjectCallback".hashCode();
-	private static int GET_RESOURCE_CALLBACK = "Repository - getResourceCallback".hashCode();
+	// sync requests are answered by every participant that has the project, so they don't use single response futures
+	private static final int GET_PROJECT_CALLBACK = MessagingRequests.nextCallbackID();
+	
+	private final ResponseFuture.Callback getResourceResponseCallback = new ResponseFuture.Callback() {
+		@Override
+		public void responseReceived(JSONObject response) {
+			getResourceResponse(response);
+		}
+
+		@Override
+		public void requestFailed(Throwable error) {
+			error.printStackTrace();
+		}
+	};
+	
+	private static final long TREE_SYNC_TIMEOUT = 10 * 1000;
 	
 	private AtomicBoolean connected;
+	private ConcurrentMap<String, String> resumeTokens;
+	private ResourceTransfers resourceTransfers;
+	private ContentCache contentCache;
+	private ChangeJournal changeJournal;
+	private WorkspaceUpdates workspaceUpdates;
+	private BlobStore blobStore;
+	private MarkerCache markerCache;
+	private RequestWindow resourceRequests;
 
 	public Repository(IMessagingConnector messagingConnector, String user) {
+		this(messagingConnector, user, new ConcurrentHashMap<String, String>());
+	}
+
+	/**
+	 * Creates a repository that resumes the sync of its projects from the given resume tokens (handed out with
+	 * the latest project listing per project, see {@link ConnectedProject#getResumeToken()}), so that a repository
+	 * re-created after a reconnect asks only for the changes since then instead of the complete projects.
+	 * The repository keeps the tokens up to date.
+	 */
+	public Repository(IMessagingConnector messagingConnector, String user, ConcurrentMap<String, String> resumeTokens) {
 		this.username = user;
 		this.connected = new AtomicBoolean(true);
 		this.messagingConnector = messagingConnector;
+		this.resumeTokens = resumeTokens;
 
 		this.syncedProjects = new ConcurrentHashMap<String, ConnectedProject>();
 		this.repositoryListeners = new ConcurrentLinkedDeque<>();
+		this.resourceTransfers = new ResourceTransfers();
+		this.contentCache = ContentCache.createDefault();
+		this.changeJournal = ChangeJournal.createDefault(this);
+		this.workspaceUpdates = WorkspaceUpdates.createDefault();
+		this.blobStore = BlobStore.getDefault();
+		this.markerCache = new MarkerCache();
+		this.resourceRequests = RequestWindow.createDefault(messagingConnector);
 		
-		this.messageHandlers = new ArrayList<IMessageHandler>(9);
+		this.messageHandlers = new ArrayList<IMessageHandler>(12);
 		
-		IMessageHandler resourceChangedHandler = new AbstractMessageHandler("resourceChanged") {
+		IMessageHandler resourceChangedHandler = new AbstractMessageHandler("resourceChanged", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				updateResource(message);
@@ -77,7 +140,7 @@ public class Repository {
 		this.messagingConnector.addMessageHandler(resourceChangedHandler);
 		messageHandlers.add(resourceChangedHandler);
 		
-		IMessageHandler resourceCreatedHandler = new AbstractMessageHandler("resourceCreated") {
+		IMessageHandler resourceCreatedHandler = new AbstractMessageHandler("resourceCreated", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				createResource(message);
@@ -86,7 +149,7 @@ public class Repository {
 		this.messagingConnector.addMessageHandler(resourceCreatedHandler);
 		this.messageHandlers.add(resourceCreatedHandler);
 		
-		IMessageHandler resourceDeletedHandler = new AbstractMessageHandler("resourceDeleted") {
+		IMessageHandler resourceDeletedHandler = new AbstractMessageHandler("resourceDeleted", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				deleteResource(message);
@@ -95,7 +158,7 @@ public class Repository {
 		this.messagingConnector.addMessageHandler(resourceDeletedHandler);
 		this.messageHandlers.add(resourceDeletedHandler);
 
-		IMessageHandler getProjectsRequestHandler = new AbstractMessageHandler("getProjectsRequest") {
+		IMessageHandler getProjectsRequestHandler = new AbstractMessageHandler("getProjectsRequest", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				getProjects(message);
@@ -104,7 +167,7 @@ public class Repository {
 		this.messagingConnector.addMessageHandler(getProjectsRequestHandler);
 		this.messageHandlers.add(getProjectsRequestHandler);
 		
-		IMessageHandler getProjectRequestHandler = new AbstractMessageHandler("getProjectRequest") {
+		IMessageHandler getProjectRequestHandler = new AbstractMessageHandler("getProjectRequest", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				getProject(message);
@@ -122,7 +185,16 @@ public class Repository {
 		this.messagingConnector.addMessageHandler(getProjectResponseHandler);
 		this.messageHandlers.add(getProjectResponseHandler);
 		
-		IMessageHandler getResourceRequestHandler = new AbstractMessageHandler("getResourceRequest") {
+		IMessageHandler getProjectTreeRequestHandler = new AbstractMessageHandler("getProjectTreeRequest", user, null) {
+			@Override
+			public void handleMessage(String messageType, JSONObject message) {
+				getProjectTree(message);
+			}
+		};
+		this.messagingConnector.addMessageHandler(getProjectTreeRequestHandler);
+		this.messageHandlers.add(getProjectTreeRequestHandler);
+		
+		IMessageHandler getResourceRequestHandler = new AbstractMessageHandler("getResourceRequest", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				try {
@@ -142,16 +214,25 @@ public class Repository {
 		this.messagingConnector.addMessageHandler(getResourceRequestHandler);
 		this.messageHandlers.add(getResourceRequestHandler);
 		
-		IMessageHandler getResourceResponseHandler = new CallbackIDAwareMessageHandler("getResourceResponse", Repository.GET_RESOURCE_CALLBACK) {
+		IMessageHandler getResourcesRequestHandler = new AbstractMessageHandler(ResourceBatches.REQUEST_TYPE, user, null) {
+			@Override
+			public void handleMessage(String messageType, JSONObject message) {
+				getResources(message);
+			}
+		};
+		this.messagingConnector.addMessageHandler(getResourcesRequestHandler);
+		this.messageHandlers.add(getResourcesRequestHandler);
+		
+		IMessageHandler getResourceChunkHandler = new AbstractMessageHandler(ResourceTransfers.CHUNK_MESSAGE_TYPE, user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
-				getResourceResponse(message);
+				resourceTransfers.addChunk(message);
 			}
 		};
-		this.messagingConnector.addMessageHandler(getResourceResponseHandler);
-		this.messageHandlers.add(getResourceResponseHandler);
+		this.messagingConnector.addMessageHandler(getResourceChunkHandler);
+		this.messageHandlers.add(getResourceChunkHandler);
 		
-		IMessageHandler getMetadataRequestHandler = new AbstractMessageHandler("getMetadataRequest") {
+		IMessageHandler getMetadataRequestHandler = new AbstractMessageHandler("getMetadataRequest", user, null) {
 			@Override
 			public void handleMessage(String messageType, JSONObject message) {
 				getMetadata(message);
@@ -189,9 +270,23 @@ public class Repository {
 	}
 
 	public void addProject(IProject project) {
+		addProject(project, null);
+	}
+
+	/**
+	 * Connects the project. If a monitor is given, the files are hashed right away with progress reported
+	 * to the monitor, otherwise they are hashed lazily.
+	 *
+	 * @throws org.eclipse.core.runtime.OperationCanceledException if the monitor is canceled while hashing,
+	 * the project is not connected then
+	 */
+	public void addProject(IProject project, IProgressMonitor monitor) {
 		String projectName = project.getName();
 		if (!this.syncedProjects.containsKey(projectName)) {
-			this.syncedProjects.put(projectName, new ConnectedProject(project));
+			File indexFile = ProjectIndex.getIndexFile(projectName);
+			ConnectedProject connectedProject = new ConnectedProject(project, ProjectIndex.read(indexFile), monitor);
+			ProjectIndex.write(indexFile, connectedProject);
+			this.syncedProjects.put(projectName, connectedProject);
 			notifyProjectConnected(project);
 			sendProjectConnectedMessage(projectName);
 			syncConnectedProject(projectName);
@@ -201,7 +296,15 @@ public class Repository {
 	public void removeProject(IProject project) {
 		String projectName = project.getName();
 		if (this.syncedProjects.containsKey(projectName)) {
-			this.syncedProjects.remove(projectName);
+			ConnectedProject connectedProject = this.syncedProjects.remove(projectName);
+			markerCache.removeProject(projectName);
+			File indexFile = ProjectIndex.getIndexFile(projectName);
+			if (connectedProject != null && project.exists()) {
+				ProjectIndex.write(indexFile, connectedProject);
+			}
+			else if (indexFile != null) {
+				indexFile.delete();
+			}
 			notifyProjectDisonnected(project);
 			try {
 				JSONObject message = new JSONObject();
@@ -214,19 +317,102 @@ public class Repository {
 		}
 	}
 
-	protected void syncConnectedProject(String projectName) {
+	/**
+	 * Syncs the project by walking down the folder digests (see {@link ConnectedProject}): only the
+	 * children of folders whose digests differ are exchanged, so an unchanged project costs a single
+	 * round trip. The levels below the root are only answered by the participant that answered for the
+	 * root (the <code>treeSource</code> of its response), so that the digests of all levels come from
+	 * the same tree. Falls back to the complete project listing if nobody answers, or if the walk can't
+	 * be kept on a single participant.
+	 * <p>
+	 * The digests need the hashes of all files, the files that weren't hashed yet are hashed
+	 * in a background job first, which can be canceled via the progress view.
+	 */
+	protected void syncConnectedProject(final String projectName) {
+		final ConnectedProject connectedProject = this.syncedProjects.get(projectName);
+		if (connectedProject == null) {
+			return;
+		}
+		Job job = new Job("Sync project " + projectName) {
+			@Override
+			protected IStatus run(IProgressMonitor monitor) {
+				try {
+					connectedProject.hashFiles(ConnectedProject.ROOT_FOLDER, monitor);
+					if (connectedProject != syncedProjects.get(projectName)) {
+						return Status.OK_STATUS;
+					}
+					JSONObject root = new JSONObject();
+					root.put("path", ConnectedProject.ROOT_FOLDER);
+					root.put("digest", connectedProject.getHash(ConnectedProject.ROOT_FOLDER));
+					syncProjectTree(projectName, new JSONArray().put(root), null);
+				} catch (OperationCanceledException e) {
+					return Status.CANCEL_STATUS;
+				} catch (JSONException e) {
+					e.printStackTrace();
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(false);
+		job.schedule();
+	}
+	
+	/**
+	 * Requests the given folders, from the participant with the given tree source or, for the root, from
+	 * whoever answers first.
+	 */
+	protected void syncProjectTree(final String projectName, JSONArray folders, final String treeSource) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("username", this.username);
+		message.put("project", projectName);
+		message.put("folders", folders);
+		if (treeSource != null) {
+			message.put("treeSource", treeSource);
+		}
+		
+		MessagingRequests.request(messagingConnector, "getProjectTreeRequest", message, TREE_SYNC_TIMEOUT).addCallback(new ResponseFuture.Callback() {
+			@Override
+			public void responseReceived(JSONObject response) {
+				if (treeSource != null && !treeSource.equals(response.optString("treeSource", null))) {
+					// answered from a different tree, its digests can't be compared with the level above
+					if (syncedProjects.containsKey(projectName)) {
+						syncProjectListing(projectName);
+					}
+					return;
+				}
+				getProjectTreeResponse(response);
+			}
+
+			@Override
+			public void requestFailed(Throwable error) {
+				// no participant that knows about folder digests, fall back to the complete listing
+				if (syncedProjects.containsKey(projectName)) {
+					syncProjectListing(projectName);
+				}
+			}
+		});
+	}
+	
+	protected void syncProjectListing(String projectName) {
 		try {
 			JSONObject message = new JSONObject();
 			message.put("username", this.username);
 			message.put("project", projectName);
 			message.put("includeDeleted", true);
 			message.put("callback_id", GET_PROJECT_CALLBACK);
+			message.put("acceptFragments", true);
+			
+			String resumeToken = this.resumeTokens.get(projectName);
+			if (resumeToken != null) {
+				message.put("resumeFrom", resumeToken);
+			}
+			
 			messagingConnector.send("getProjectRequest", message);
 		} catch (JSONException e) {
 			e.printStackTrace();
 		}
 	}
-
+	
 	protected void sendProjectConnectedMessage(String projectName) {
 		try {
 			JSONObject message = new JSONObject();
@@ -276,41 +462,54 @@ public class Repository {
 			final String sender = request.getString("requestSenderID");
 			final String projectName = request.getString("project");
 			final String username = request.getString("username");
+			final String resumeFrom = request.optString("resumeFrom", null);
 
 			final ConnectedProject connectedProject = this.syncedProjects.get(projectName);
 			if (this.username.equals(username) && connectedProject != null) {
 
-				final JSONArray files = new JSONArray();
-
-				IProject project = connectedProject.getProject();
+				// taken before listing, so that changes while listing are listed again on the next resume
+				String resumeToken = connectedProject.getResumeToken();
+				SortedMap<String, Long> changes = connectedProject.getChangesSince(resumeFrom);
 
-				try {
-					project.accept(new IResourceVisitor() {
-						@Override
-						public boolean visit(IResource resource) throws CoreException {
-							JSONObject projectResource = new JSONObject();
-							String path = resource.getProjectRelativePath().toString();
-							try {
-								projectResource.put("path", path);
-								projectResource.put("timestamp", connectedProject.getTimestamp(path));
-								projectResource.put("hash", connectedProject.getHash(path));
-
-								if (resource instanceof IFile) {
-									projectResource.put("type", "file");
-								} else if (resource instanceof IFolder) {
-									projectResource.put("type", "folder");
-								}
+				// written directly as JSON text, a project can have far too many files for a JSONObject per file
+				final JSONStreamWriter files = new JSONStreamWriter(64 * 1024);
+				files.array();
+				JSONArray deleted = null;
 
-								files.put(projectResource);
-							} catch (JSONException e) {
-								e.printStackTrace();
-							}
-							return true;
+				IProject project = connectedProject.getProject();
+				connectedProject.hashFiles(ConnectedProject.ROOT_FOLDER, null);
+
+				if (changes != null) {
+					// resuming a sync, only resources changed or deleted since the resume token
+					deleted = new JSONArray();
+					for (Map.Entry<String, Long> change : changes.entrySet()) {
+						String path = change.getKey();
+						if (change.getValue() != 0) {
+							JSONObject deletedResource = new JSONObject();
+							deletedResource.put("path", path);
+							deletedResource.put("timestamp", change.getValue());
+							deleted.put(deletedResource);
 						}
-					}, IResource.DEPTH_INFINITE, IContainer.EXCLUDE_DERIVED);
-				} catch (Exception e) {
-					e.printStackTrace();
+						else if (connectedProject.containsResource(path)) {
+							writeResource(files, connectedProject, path, connectedProject.isFolder(path) ? "folder" : "file");
+						}
+					}
+				}
+				else {
+					try {
+						project.accept(new IResourceVisitor() {
+							@Override
+							public boolean visit(IResource resource) throws CoreException {
+								String type = resource instanceof IFile ? "file" : resource instanceof IFolder ? "folder" : null;
+								writeResource(files, connectedProject, resource.getProjectRelativePath().toString(), type);
+								return true;
+							}
+						}, IResource.DEPTH_INFINITE, IContainer.EXCLUDE_DERIVED);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
 				}
+				files.endArray();
 				
 				JSONObject message = new JSONObject();
 				message.put("callback_id", callbackID);
@@ -319,6 +518,14 @@ public class Repository {
 				message.put("project", projectName);
 				message.put("username", this.username);
 				message.put("files", files);
+				if (deleted != null) {
+					message.put("deleted", deleted);
+					message.put("resumedFrom", resumeFrom);
+				}
+				message.put("resumeToken", resumeToken);
+				if (request.optBoolean("acceptFragments")) {
+					message.put("acceptFragments", true);
+				}
 
 				messagingConnector.send("getProjectResponse", message);
 			}
@@ -327,6 +534,17 @@ public class Repository {
 		}
 	}
 
+	private static void writeResource(JSONStreamWriter files, ConnectedProject connectedProject, String path, String type) {
+		files.object();
+		files.key("path").value(path);
+		files.key("timestamp").value(connectedProject.getTimestamp(path));
+		files.key("hash").value(connectedProject.getHash(path));
+		if (type != null) {
+			files.key("type").value(type);
+		}
+		files.endObject();
+	}
+
 	public void getProjectResponse(JSONObject response) {
 		try {
 			final String username = response.getString("username");
@@ -337,76 +555,386 @@ public class Repository {
 			ConnectedProject connectedProject = this.syncedProjects.get(projectName);
 			if (this.username.equals(username) && connectedProject != null) {
 
+				List<JSONObject> resourceRequests = new ArrayList<JSONObject>();
 				for (int i = 0; i < files.length(); i++) {
-					JSONObject resource = files.getJSONObject(i);
+					syncResource(connectedProject, files.getJSONObject(i), resourceRequests);
+				}
+				requestResources(projectName, resourceRequests);
+				
+				if (deleted != null) {
+					for (int i = 0; i < deleted.length(); i++) {
+						syncDeletedResource(connectedProject, deleted.getJSONObject(i));
+					}
+				}
+				
+				String resumeToken = response.optString("resumeToken", null);
+				if (resumeToken != null) {
+					this.resumeTokens.put(projectName, resumeToken);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
 
-					String resourcePath = resource.getString("path");
-					long timestamp = resource.getLong("timestamp");
+	/**
+	 * Answers the digests of the requested folders. Folders whose digest differs from the one the
+	 * requester has (or that the requester doesn't have yet) are answered with their children.
+	 */
+	public void getProjectTree(JSONObject request) {
+		try {
+			final int callbackID = request.getInt("callback_id");
+			final String sender = request.getString("requestSenderID");
+			final String projectName = request.getString("project");
+			final String username = request.getString("username");
+			final JSONArray requestedFolders = request.getJSONArray("folders");
+			final String treeSource = request.optString("treeSource", null);
 
-					String type = resource.optString("type");
-					String hash = resource.optString("hash");
-					
-					boolean newFile = type != null && type.equals("file") && !connectedProject.containsResource(resourcePath);
-					boolean updatedFileTimestamp =  type != null && type.equals("file") && connectedProject.containsResource(resourcePath)
-							&& connectedProject.getHash(resourcePath).equals(hash) && connectedProject.getTimestamp(resourcePath) < timestamp;
-					boolean updatedFile = type != null && type.equals("file") && connectedProject.containsResource(resourcePath)
-							&& !connectedProject.getHash(resourcePath).equals(hash) && connectedProject.getTimestamp(resourcePath) < timestamp;
+			ConnectedProject connectedProject = this.syncedProjects.get(projectName);
+			if (this.username.equals(username) && connectedProject != null
+					&& (treeSource == null || treeSource.equals(connectedProject.getChangeEpoch()))) {
+				JSONArray folders = new JSONArray();
+				for (int i = 0; i < requestedFolders.length(); i++) {
+					JSONObject requestedFolder = requestedFolders.getJSONObject(i);
+					String path = requestedFolder.getString("path");
+					if (!connectedProject.isFolder(path)) {
+						continue;
+					}
 
-					if (newFile || updatedFile) {
-						JSONObject message = new JSONObject();
-						message.put("callback_id", GET_RESOURCE_CALLBACK);
-						message.put("project", projectName);
-						message.put("username", this.username);
-						message.put("resource", resourcePath);
-						message.put("timestamp", timestamp);
-						message.put("hash", hash);
+					JSONObject folder = new JSONObject();
+					folder.put("path", path);
+					String digest = connectedProject.getHash(path);
+					folder.put("digest", digest);
 
-						messagingConnector.send("getResourceRequest", message);
+					if (!digest.equals(requestedFolder.optString("digest", null))) {
+						JSONArray children = new JSONArray();
+						for (String childPath : connectedProject.getChildren(path)) {
+							if (!connectedProject.containsResource(childPath)) {
+								continue;
+							}
+							JSONObject child = new JSONObject();
+							child.put("path", childPath);
+							child.put("type", connectedProject.isFolder(childPath) ? "folder" : "file");
+							child.put("timestamp", connectedProject.getTimestamp(childPath));
+							child.put("hash", connectedProject.getHash(childPath));
+							children.put(child);
+						}
+						folder.put("children", children);
 					}
-					
-					if (updatedFileTimestamp) {
-						connectedProject.setTimestamp(resourcePath, timestamp);
-						IResource file  = connectedProject.getProject().findMember(resourcePath);
-						file.setLocalTimeStamp(timestamp);
+					folders.put(folder);
+				}
+
+				JSONObject message = new JSONObject();
+				message.put("callback_id", callbackID);
+				message.put("requestSenderID", sender);
+				message.put("username", this.username);
+				message.put("project", projectName);
+				message.put("folders", folders);
+				message.put("treeSource", connectedProject.getChangeEpoch());
+				if (request.optBoolean("acceptFragments")) {
+					message.put("acceptFragments", true);
+				}
+
+				messagingConnector.send("getProjectTreeResponse", message);
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Syncs the children of the folders that differ and asks for the next level below the child
+	 * folders whose digests still differ, from the same participant. Falls back to the complete project
+	 * listing if the participant can't be addressed.
+	 */
+	public void getProjectTreeResponse(JSONObject response) {
+		try {
+			final String username = response.getString("username");
+			final String projectName = response.getString("project");
+			final JSONArray folders = response.getJSONArray("folders");
+
+			ConnectedProject connectedProject = this.syncedProjects.get(projectName);
+			if (this.username.equals(username) && connectedProject != null) {
+				JSONArray nextLevel = new JSONArray();
+				List<JSONObject> resourceRequests = new ArrayList<JSONObject>();
+
+				for (int i = 0; i < folders.length(); i++) {
+					JSONObject folder = folders.getJSONObject(i);
+					JSONArray children = folder.optJSONArray("children");
+					if (children == null) {
+						// same digest, nothing changed below this folder
+						continue;
 					}
-					
-					boolean newFolder = type != null && type.equals("folder") && !connectedProject.containsResource(resourcePath);
-					boolean updatedFolder = type != null && type.equals("folder") && connectedProject.containsResource(resourcePath)
-							&& !(connectedProject.getHash(resourcePath) == null || connectedProject.getHash(resourcePath).equals(hash)) && connectedProject.getTimestamp(resourcePath) < timestamp;
 
-					if (newFolder) {
-						IProject project = connectedProject.getProject();
-						IFolder folder = project.getFolder(resourcePath);
+					for (int j = 0; j < children.length(); j++) {
+						JSONObject child = children.getJSONObject(j);
+						try {
+							syncResource(connectedProject, child, resourceRequests);
+						} catch (Exception e) {
+							e.printStackTrace();
+						}
+
+						String childPath = child.getString("path");
+						if ("folder".equals(child.optString("type")) && connectedProject.isFolder(childPath)) {
+							String localDigest = connectedProject.getHash(childPath);
+							if (!localDigest.equals(child.optString("hash"))) {
+								JSONObject nextFolder = new JSONObject();
+								nextFolder.put("path", childPath);
+								nextFolder.put("digest", localDigest);
+								nextLevel.put(nextFolder);
+							}
+						}
+					}
 
-						connectedProject.setHash(resourcePath, hash);
-						connectedProject.setTimestamp(resourcePath, timestamp);
+					JSONArray deleted = folder.optJSONArray("deleted");
+					if (deleted != null) {
+						for (int j = 0; j < deleted.length(); j++) {
+							try {
+								syncDeletedResource(connectedProject, deleted.getJSONObject(j));
+							} catch (Exception e) {
+								e.printStackTrace();
+							}
+						}
+					}
+				}
 
-						folder.create(true, true, null);
-						folder.setLocalTimeStamp(timestamp);
+				requestResources(projectName, resourceRequests);
+				if (nextLevel.length() > 0) {
+					String treeSource = response.optString("treeSource", null);
+					if (treeSource != null) {
+						syncProjectTree(projectName, nextLevel, treeSource);
 					}
-					else if (updatedFolder) {
+					else {
+						syncProjectListing(projectName);
 					}
 				}
-				
-				if (deleted != null) {
-					for (int i = 0; i < deleted.length(); i++) {
-						JSONObject deletedResource = deleted.getJSONObject(i);
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Compares a resource reported by another participant with the local one, collects the new and updated
+	 * files to fetch (see {@link #requestResources(String, List)}) and creates new folders.
+	 */
+	protected void syncResource(ConnectedProject connectedProject, JSONObject resource, List<JSONObject> resourceRequests) throws Exception {
+		final String resourcePath = resource.getString("path");
+		final long timestamp = resource.getLong("timestamp");
+
+		String type = resource.optString("type");
+		String hash = resource.optString("hash");
+		
+		boolean newFile = type != null && type.equals("file") && !connectedProject.containsResource(resourcePath);
+		boolean updatedFileTimestamp =  type != null && type.equals("file") && connectedProject.containsResource(resourcePath)
+				&& connectedProject.getHash(resourcePath).equals(hash) && connectedProject.getTimestamp(resourcePath) < timestamp;
+		boolean updatedFile = type != null && type.equals("file") && connectedProject.containsResource(resourcePath)
+				&& !connectedProject.getHash(resourcePath).equals(hash) && connectedProject.getTimestamp(resourcePath) < timestamp;
+
+		if ((newFile || updatedFile) && !restoreResource(connectedProject, resourcePath, timestamp, hash)) {
+			JSONObject resourceRequest = new JSONObject();
+			resourceRequest.put("resource", resourcePath);
+			resourceRequest.put("timestamp", timestamp);
+			resourceRequest.put("hash", hash);
+			if (updatedFile) {
+				resourceRequest.put("baseHash", connectedProject.getRecordedHash(resourcePath));
+			}
+			resourceRequests.add(resourceRequest);
+		}
+		
+		if (updatedFileTimestamp) {
+			final IProject project = connectedProject.getProject();
+			connectedProject.setTimestamp(resourcePath, timestamp);
+
+			workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+				@Override
+				public void run(IProgressMonitor monitor) throws CoreException {
+					IResource file = project.findMember(resourcePath);
+					if (file != null && file.exists()) {
+						file.setLocalTimeStamp(timestamp);
+					}
+				}
+			});
+		}
+		
+		boolean newFolder = type != null && type.equals("folder") && !connectedProject.containsResource(resourcePath);
 
-						String resourcePath = deletedResource.getString("path");
-						long deletedTimestamp = deletedResource.getLong("timestamp");
+		if (newFolder) {
+			IProject project = connectedProject.getProject();
+			final IFolder folder = project.getFolder(resourcePath);
 
-						IProject project = connectedProject.getProject();
-						IResource resource = project.findMember(resourcePath);
+			connectedProject.addFolder(resourcePath);
+			connectedProject.setTimestamp(resourcePath, timestamp);
 
-						if (resource != null && resource.exists() && (resource instanceof IFile || resource instanceof IFolder)) {
-							long localTimestamp = connectedProject.getTimestamp(resourcePath);
+			workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+				@Override
+				public void run(IProgressMonitor monitor) throws CoreException {
+					if (!folder.exists()) {
+						folder.create(true, true, monitor);
+					}
+					folder.setLocalTimeStamp(timestamp);
+				}
+			});
+		}
+	}
 
-							if (localTimestamp < deletedTimestamp) {
-								resource.delete(true, null);
-							}
+	protected void syncDeletedResource(ConnectedProject connectedProject, JSONObject deletedResource) throws Exception {
+		String resourcePath = deletedResource.getString("path");
+		long deletedTimestamp = deletedResource.getLong("timestamp");
+
+		IProject project = connectedProject.getProject();
+		final IResource resource = project.findMember(resourcePath);
+
+		if (resource != null && resource.exists() && (resource instanceof IFile || resource instanceof IFolder)) {
+			long localTimestamp = connectedProject.getTimestamp(resourcePath);
+
+			if (localTimestamp < deletedTimestamp) {
+				workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+					@Override
+					public void run(IProgressMonitor monitor) throws CoreException {
+						if (resource.exists()) {
+							resource.delete(true, monitor);
 						}
 					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Requests the content of a file in the given version, unless the content is in the blob store. If a base hash
+	 * is given, the content may be sent as delta against the content with this hash (see {@link ContentDelta}),
+	 * large contents may be sent in chunks.
+	 */
+	protected void requestResource(String projectName, String resourcePath, long timestamp, String hash, String baseHash) throws JSONException {
+		requestResource(projectName, resourcePath, timestamp, hash, baseHash, true);
+	}
+
+	/**
+	 * Requests the content of a file like {@link #requestResource(String, String, long, String, String)}, a
+	 * content that failed to arrive in chunks is requested again without accepting chunks.
+	 */
+	protected void requestResource(String projectName, String resourcePath, long timestamp, String hash, String baseHash, boolean acceptChunks) throws JSONException {
+		ConnectedProject connectedProject = this.syncedProjects.get(projectName);
+		if (connectedProject != null && restoreResource(connectedProject, resourcePath, timestamp, hash)) {
+			return;
+		}
+
+		JSONObject message = new JSONObject();
+		message.put("username", this.username);
+		message.put("project", projectName);
+		message.put("resource", resourcePath);
+		message.put("timestamp", timestamp);
+		message.put("hash", hash);
+		if (acceptChunks) {
+			message.put(ResourceTransfers.ACCEPT_CHUNKS, true);
+		}
+		message.put(ResourceContents.ACCEPT_BINARY, true);
+		if (baseHash != null) {
+			message.put("baseHash", baseHash);
+		}
+
+		resourceRequests.request("getResourceRequest", message, Constants.REQUEST_TIMEOUT).addCallback(getResourceResponseCallback);
+	}
+
+	/**
+	 * Requests the contents of many files with few messages, see {@link ResourceBatches}. Files whose content
+	 * isn't in the batches are requested one by one.
+	 */
+	protected void requestResources(final String projectName, List<JSONObject> resourceRequests) throws JSONException {
+		JSONObject message = new JSONObject();
+		message.put("username", this.username);
+		message.put("project", projectName);
+		message.put(ResourceContents.ACCEPT_BINARY, true);
+
+		for (JSONArray resources : ResourceBatches.partition(resourceRequests)) {
+			new ResourceBatchRequest(messagingConnector, message, resources, Constants.REQUEST_TIMEOUT, new ResourceBatchRequest.Receiver() {
+				@Override
+				public void resourceReceived(JSONObject resource) {
+					try {
+						resource.put("username", username);
+						resource.put("project", projectName);
+						getResourceResponse(resource);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
 				}
+
+				@Override
+				public void resourceMissing(JSONObject requested, JSONObject answered) {
+					try {
+						ConnectedProject connectedProject = syncedProjects.get(projectName);
+						if (connectedProject != null) {
+							String resourcePath = requested.getString("resource");
+							requestResource(projectName, resourcePath, requested.getLong("timestamp"), requested.getString("hash"), connectedProject.getRecordedHash(resourcePath));
+						}
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+
+				@Override
+				public void requestFailed(Throwable error) {
+					Activator.log("Flux couldn't fetch the resources of " + projectName + ": " + error.getMessage());
+				}
+			}).send();
+		}
+	}
+
+	public void getResources(JSONObject request) {
+		try {
+			final String username = request.getString("username");
+			final int callbackID = request.getInt("callback_id");
+			final String sender = request.getString("requestSenderID");
+			final String projectName = request.getString("project");
+			final JSONArray resources = request.getJSONArray("resources");
+
+			ConnectedProject connectedProject = this.syncedProjects.get(projectName);
+			if (this.username.equals(username) && connectedProject != null) {
+				IProject project = connectedProject.getProject();
+
+				List<JSONObject> entries = new ArrayList<JSONObject>(resources.length());
+				List<IFile> files = new ArrayList<IFile>(resources.length());
+				for (int i = 0; i < resources.length(); i++) {
+					JSONObject requested = resources.getJSONObject(i);
+					String resourcePath = requested.getString("resource");
+					if (!connectedProject.containsResource(resourcePath)
+							|| (requested.has("timestamp") && requested.getLong("timestamp") != connectedProject.getTimestamp(resourcePath))) {
+						continue;
+					}
+
+					IResource resource = project.findMember(resourcePath);
+					if (!(resource instanceof IFile)
+							|| (requested.has("hash") && !requested.getString("hash").equals(connectedProject.getHash(resourcePath)))) {
+						continue;
+					}
+					IFile file = (IFile) resource;
+					if (!file.isSynchronized(IResource.DEPTH_ZERO)) {
+						file.refreshLocal(IResource.DEPTH_ZERO, null);
+					}
+
+					JSONObject entry = new JSONObject();
+					entry.put("resource", resourcePath);
+					entry.put("timestamp", connectedProject.getTimestamp(resourcePath));
+					entry.put("hash", connectedProject.getHash(resourcePath));
+					entry.put("type", "file");
+					if (requested.has("baseHash")) {
+						entry.put("baseHash", requested.getString("baseHash"));
+					}
+					if (ResourceTransfers.isLarge(file)) {
+						entry.put("tooLarge", true);
+						file = null;
+					}
+					entries.add(entry);
+					files.add(file);
+				}
+
+				JSONObject response = new JSONObject();
+				response.put("callback_id", callbackID);
+				response.put("requestSenderID", sender);
+				response.put("username", this.username);
+				response.put("project", projectName);
+				ResourceBatches.send(messagingConnector, response, entries, files, request.optBoolean(ResourceContents.ACCEPT_BINARY), contentCache);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -447,20 +975,41 @@ public class Repository {
 
 					IFile file = (IFile) resource;
 
-					ByteArrayOutputStream array = new ByteArrayOutputStream();
 					if (!file.isSynchronized(IResource.DEPTH_ZERO)) {
 						file.refreshLocal(IResource.DEPTH_ZERO, null);
 					}
 					
-					IOUtils.copy(file.getContents(), array);
+					boolean acceptBinary = request.optBoolean(ResourceContents.ACCEPT_BINARY);
+					String baseContent = contentCache.get(request.optString("baseHash", null));
+					boolean sendDelta = baseContent != null && contentCache.isCacheable(file.getLocation() != null ? file.getLocation().toFile().length() : 0);
 
-					String content = new String(array.toByteArray(), file.getCharset());
-
-					message.put("content", content);
+					if (!sendDelta && ResourceTransfers.isChunked(request, file)) {
+						ResourceTransfers.sendChunks(messagingConnector, file, message, acceptBinary);
+					}
+					else {
+						byte[] bytes = ResourceContents.read(file);
+						String content = ResourceContents.putContent(message, bytes, file.getCharset(), acceptBinary);
+						// binary contents are neither cached nor sent as delta
+						if (content != null) {
+							// cached under the hash of what was read, the file might have changed since it was hashed
+							contentCache.put(DigestUtils.shaHex(bytes), content);
+
+							JSONObject delta = sendDelta ? ContentDelta.create(baseContent, content) : null;
+							if (delta != null) {
+								message.remove("content");
+								message.put("baseHash", request.getString("baseHash"));
+								message.put("delta", delta);
+								message.put("charset", file.getCharset());
+							}
+						}
+					}
 					message.put("type", "file");
 				} else if (resource instanceof IFolder) {
 					message.put("type", "folder");
 				}
+				if (request.optBoolean("acceptFragments")) {
+					message.put("acceptFragments", true);
+				}
 
 				messagingConnector.send("getResourceResponse", message);
 			}
@@ -503,6 +1052,9 @@ public class Repository {
 
 						message.put("content", content);
 						message.put("type", "file");
+						if (request.optBoolean("acceptFragments")) {
+							message.put("acceptFragments", true);
+						}
 
 						messagingConnector.send("getResourceResponse", message);
 					}
@@ -533,15 +1085,7 @@ public class Repository {
 					long localTimestamp = connectedProject.getTimestamp(resourcePath);
 
 					if (localHash != null && !localHash.equals(updateHash) && localTimestamp < updateTimestamp) {
-						JSONObject message = new JSONObject();
-						message.put("callback_id", GET_RESOURCE_CALLBACK);
-						message.put("username", this.username);
-						message.put("project", projectName);
-						message.put("resource", resourcePath);
-						message.put("timestamp", updateTimestamp);
-						message.put("hash", updateHash);
-
-						messagingConnector.send("getResourceRequest", message);
+						requestResource(projectName, resourcePath, updateTimestamp, updateHash, localHash);
 						notifyResourceChanged(resource);
 					}
 				}
@@ -568,15 +1112,12 @@ public class Repository {
 				
 				if (resource == null) {
 					if ("folder".equals(type)) {
-						IFolder newFolder = project.getFolder(resourcePath);
+						final IFolder newFolder = project.getFolder(resourcePath);
 						
-						connectedProject.setHash(resourcePath, updateHash);
+						connectedProject.addFolder(resourcePath);
 						connectedProject.setTimestamp(resourcePath, updateTimestamp);
 
-						newFolder.create(true, true, null);
-						newFolder.setLocalTimeStamp(updateTimestamp);
-						
-						JSONObject message = new JSONObject();
+						final JSONObject message = new JSONObject();
 						message.put("username", this.username);
 						message.put("project", projectName);
 						message.put("resource", resourcePath);
@@ -584,19 +1125,19 @@ public class Repository {
 						message.put("hash", updateHash);
 						message.put("type", type);
 						
-						messagingConnector.send("resourceStored", message);
+						workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+							@Override
+							public void run(IProgressMonitor monitor) throws CoreException {
+								if (!newFolder.exists()) {
+									newFolder.create(true, true, monitor);
+								}
+								newFolder.setLocalTimeStamp(updateTimestamp);
+								messagingConnector.send("resourceStored", message);
+							}
+						});
 					}
 					else if ("file".equals(type)) {
-						JSONObject message = new JSONObject();
-						message.put("callback_id", GET_RESOURCE_CALLBACK);
-						message.put("username", this.username);
-						message.put("project", projectName);
-						message.put("resource", resourcePath);
-						message.put("timestamp", updateTimestamp);
-						message.put("hash", updateHash);
-						message.put("type", type);				
-
-						messagingConnector.send("getResourceRequest", message);
+						requestResource(projectName, resourcePath, updateTimestamp, updateHash, null);
 					}
 				}
 				else {
@@ -619,13 +1160,20 @@ public class Repository {
 			ConnectedProject connectedProject = this.syncedProjects.get(projectName);
 			if (this.username.equals(username) && connectedProject != null) {
 				IProject project = connectedProject.getProject();
-				IResource resource = project.findMember(resourcePath);
+				final IResource resource = project.findMember(resourcePath);
 
 				if (resource != null && resource.exists() && (resource instanceof IFile || resource instanceof IFolder)) {
 					long localTimestamp = connectedProject.getTimestamp(resourcePath);
 
 					if (localTimestamp < deletedTimestamp) {
-						resource.delete(true, null);
+						workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+							@Override
+							public void run(IProgressMonitor monitor) throws CoreException {
+								if (resource.exists()) {
+									resource.delete(true, monitor);
+								}
+							}
+						});
 					}
 				}
 			}
@@ -645,55 +1193,150 @@ public class Repository {
 
 			ConnectedProject connectedProject = this.syncedProjects.get(projectName);
 			if (this.username.equals(username) && connectedProject != null) {
-				boolean stored = false;
-				
 				IProject project = connectedProject.getProject();
 				IResource resource = project.findMember(resourcePath);
 				
-				if (resource != null) {
-					if (resource instanceof IFile) {
-						String localHash = connectedProject.getHash(resourcePath);
-						long localTimestamp = connectedProject.getTimestamp(resourcePath);
-
-						if (localHash != null && !localHash.equals(updateHash) && localTimestamp < updateTimestamp) {
-							IFile file = (IFile) resource;
-							String newResourceContent = response.getString("content");
-
-							connectedProject.setTimestamp(resourcePath, updateTimestamp);
-							connectedProject.setHash(resourcePath, updateHash);
-
-							file.setContents(new ByteArrayInputStream(newResourceContent.getBytes()), true, true, null);
-							file.setLocalTimeStamp(updateTimestamp);
-							stored = true;
+				// a file created by a queued workspace update doesn't exist yet, but is known to the connected project
+				boolean newFile = resource == null && !connectedProject.containsResource(resourcePath);
+				if (newFile || resource == null || resource instanceof IFile) {
+					String localHash = connectedProject.getHash(resourcePath);
+					long localTimestamp = connectedProject.getTimestamp(resourcePath);
+				
+					if (newFile || (localHash != null && !localHash.equals(updateHash) && localTimestamp < updateTimestamp)) {
+						InputStream newResourceContent = getResourceContents(connectedProject, response);
+						if (newResourceContent == null) {
+							return;
 						}
+						storeResource(connectedProject, resourcePath, updateTimestamp, updateHash, newResourceContent);
 					}
 				}
-				else {
-					IFile newFile = project.getFile(resourcePath);
-					String newResourceContent = response.getString("content");
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (response.has("transferID")) {
+				resourceTransfers.discard(response.optString("transferID"));
+			}
+		}
+	}
 
-					connectedProject.setHash(resourcePath, updateHash);
-					connectedProject.setTimestamp(resourcePath, updateTimestamp);
+	/**
+	 * Writes the file if its content is in the blob store, returns <code>false</code> if it has to be requested.
+	 */
+	protected boolean restoreResource(ConnectedProject connectedProject, String resourcePath, long updateTimestamp, String updateHash) throws JSONException {
+		if (!blobStore.contains(updateHash)) {
+			return false;
+		}
+		storeResource(connectedProject, resourcePath, updateTimestamp, updateHash, null);
+		return true;
+	}
 
-					newFile.create(new ByteArrayInputStream(newResourceContent.getBytes()), true, null);
-					newFile.setLocalTimeStamp(updateTimestamp);
-					stored = true;
+	/**
+	 * Records the new version of the file and queues writing its content into the workspace, the content
+	 * is added to the blob store once it is written. Without a content the content is read from the blob
+	 * store when the file is written, if it was evicted in the meantime it is requested.
+	 */
+	protected void storeResource(final ConnectedProject connectedProject, final String resourcePath, final long updateTimestamp, final String updateHash,
+			final InputStream newResourceContent) throws JSONException {
+		IProject project = connectedProject.getProject();
+		final IFile file = project.getFile(resourcePath);
+
+		connectedProject.setTimestamp(resourcePath, updateTimestamp);
+		connectedProject.setHash(resourcePath, updateHash);
+
+		final JSONObject message = new JSONObject();
+		message.put("username", this.username);
+		message.put("project", connectedProject.getName());
+		message.put("resource", resourcePath);
+		message.put("timestamp", updateTimestamp);
+		message.put("hash", updateHash);
+		message.put("type", "file");
+
+		workspaceUpdates.apply(project, new IWorkspaceRunnable() {
+			@Override
+			public void run(IProgressMonitor monitor) throws CoreException {
+				InputStream content = newResourceContent != null ? newResourceContent : blobStore.get(updateHash);
+				if (content == null) {
+					try {
+						// the recorded hash is the new one already, the delta base is the content on disk
+						requestResource(connectedProject.getName(), resourcePath, updateTimestamp, updateHash, connectedProject.getContentHash(resourcePath));
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					return;
 				}
-				
-				if (stored) {
-					JSONObject message = new JSONObject();
-					message.put("username", this.username);
-					message.put("project", connectedProject.getName());
-					message.put("resource", resourcePath);
-					message.put("timestamp", updateTimestamp);
-					message.put("hash", updateHash);
-					message.put("type", "file");
-					messagingConnector.send("resourceStored", message);
-					notifyResourceChanged(resource);
+				try {
+					if (file.exists()) {
+						file.setContents(content, true, true, monitor);
+					}
+					else {
+						file.create(content, true, monitor);
+					}
+				} finally {
+					IOUtils.closeQuietly(content);
+				}
+				file.setLocalTimeStamp(updateTimestamp);
+				if (file.getLocation() != null) {
+					blobStore.put(updateHash, file.getLocation().toFile());
 				}
+				messagingConnector.send("resourceStored", message);
+				notifyResourceChanged(file);
 			}
-		} catch (Exception e) {
-			e.printStackTrace();
+		});
+	}
+
+	/**
+	 * Returns the content of a <code>getResourceResponse</code>, streamed from the received chunks if the
+	 * content was sent in chunks (see {@link ResourceTransfers}). If the chunks are incomplete or corrupt, the
+	 * content is requested again without chunks and <code>null</code> is returned. A delta is applied to the local
+	 * content, if it doesn't result in the content with the expected hash the full content is requested again and
+	 * <code>null</code> is returned.
+	 */
+	protected InputStream getResourceContents(ConnectedProject connectedProject, JSONObject response) throws Exception {
+		if (response.has("transferID")) {
+			InputStream contents = resourceTransfers.getContents(response);
+			if (contents == null) {
+				requestResource(connectedProject.getName(), response.getString("resource"), response.getLong("timestamp"), response.getString("hash"), null, false);
+			}
+			return contents;
+		}
+		else if (response.has("delta")) {
+			String resourcePath = response.getString("resource");
+			String baseHash = response.getString("baseHash");
+			String hash = response.getString("hash");
+			IFile file = connectedProject.getProject().getFile(resourcePath);
+			
+			String base = contentCache.get(baseHash);
+			if (base == null && file.exists() && baseHash.equals(connectedProject.getContentHash(resourcePath))) {
+				base = getContent(file);
+			}
+			String content = base != null ? ContentDelta.apply(base, response.getJSONObject("delta")) : null;
+			if (content != null) {
+				byte[] bytes = content.getBytes(response.optString("charset", file.getCharset()));
+				if (hash.equals(DigestUtils.shaHex(bytes))) {
+					contentCache.put(hash, content);
+					return new ByteArrayInputStream(bytes);
+				}
+			}
+			
+			Activator.log("Flux delta for " + resourcePath + " doesn't apply, requesting the full content");
+			requestResource(connectedProject.getName(), resourcePath, response.getLong("timestamp"), hash, null);
+			return null;
+		}
+		
+		IFile file = connectedProject.getProject().getFile(response.getString("resource"));
+		if (!ResourceContents.BASE64.equals(response.optString("encoding"))) {
+			contentCache.put(response.optString("hash", null), response.getString("content"));
+		}
+		return new ByteArrayInputStream(ResourceContents.getBytes(response, file.getCharset()));
+	}
+
+	protected static String getContent(IFile file) throws IOException, CoreException {
+		InputStream contents = file.getContents();
+		try {
+			return IOUtils.toString(contents, file.getCharset());
+		} finally {
+			IOUtils.closeQuietly(contents);
 		}
 	}
 
@@ -719,9 +1362,7 @@ public class Repository {
 				message.put("type", "marker");
 
 				IMarker[] markers = resource.findMarkers(null, true, IResource.DEPTH_INFINITE);
-				String markerJSON = toJSON(markers);
-				JSONArray content = new JSONArray(markerJSON);
-				message.put("metadata", content);
+				message.put("metadata", MarkerCache.toJSON(markers));
 
 				messagingConnector.send("getMetadataResponse", message);
 			}
@@ -734,27 +1375,63 @@ public class Repository {
 		IProject project = delta.getResource().getProject();
 		if (project != null) {
 			if (isConnected(project)) {
-				reactToResourceChange(delta);
+				changeJournal.record(delta);
 			}
 		}
 	}
 
 	public void metadataChanged(IResourceDelta delta) {
-		IProject project = delta.getResource().getProject();
-		IMarkerDelta[] markerDeltas = delta.getMarkerDeltas();
+		metadataChanged(delta.getResource(), delta.getMarkerDeltas());
+	}
+
+	/**
+	 * Publishes the differences of the markers of the resource as <code>metadataDelta</code>, see {@link MarkerCache}.
+	 * <code>metadataChanged</code> keeps carrying the complete <code>metadata</code> of a resource, like the
+	 * repositories of the node server send it.
+	 */
+	public void metadataChanged(IResource resource, IMarkerDelta[] markerDeltas) {
+		IProject project = resource.getProject();
 		if (project != null && isConnected(project) && markerDeltas != null && markerDeltas.length > 0) {
-			sendMetadataUpdate(delta.getResource());
+			try {
+				JSONObject differences = markerCache.update(resource, markerDeltas);
+				if (differences == null) {
+					return;
+				}
+
+				JSONObject message = new JSONObject();
+				message.put("username", this.username);
+				message.put("project", project.getName());
+				message.put("resource", resource.getProjectRelativePath().toString());
+				message.put("type", "marker");
+				message.put("added", differences.get("added"));
+				message.put("changed", differences.get("changed"));
+				message.put("removed", differences.get("removed"));
+
+				messagingConnector.send("metadataDelta", message);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
 		}
 	}
 
 	public void reactToResourceChange(IResourceDelta delta) {
-		IResource resource = delta.getResource();
+		reactToResourceChange(delta.getResource(), delta.getKind());
+	}
 
-		if (resource != null && resource.isDerived(IResource.CHECK_ANCESTORS)) {
+	/**
+	 * Publishes a change of the given kind (see {@link IResourceDelta#getKind()}), called by the
+	 * {@link ChangeJournal} once the changes of a time window are merged.
+	 */
+	public void reactToResourceChange(IResource resource, int kind) {
+		if (resource == null || resource.isDerived(IResource.CHECK_ANCESTORS)) {
+			return;
+		}
+		// the project might have been disconnected while the change was journaled
+		if (resource.getProject() == null || !isConnected(resource.getProject())) {
 			return;
 		}
 
-		switch (delta.getKind()) {
+		switch (kind) {
 		case IResourceDelta.ADDED:
 			reactOnResourceAdded(resource);
 			break;
@@ -780,8 +1457,7 @@ public class Repository {
 
 			if (resource instanceof IFile) {
 				try {
-					IFile file = (IFile) resource;
-					hash = DigestUtils.shaHex(file.getContents());
+					hash = connectedProject.getContentHash(resourcePath);
 					type = "file";
 				} catch (IOException e) {
 					e.printStackTrace();
@@ -790,7 +1466,13 @@ public class Repository {
 				type = "folder";
 			}
 
-			connectedProject.setHash(resourcePath, hash);
+			if ("folder".equals(type)) {
+				connectedProject.addFolder(resourcePath);
+				hash = connectedProject.getHash(resourcePath);
+			}
+			else {
+				connectedProject.setHash(resourcePath, hash);
+			}
 
 			JSONObject createdMessage = new JSONObject();
 			createdMessage.put("username", this.username);
@@ -823,6 +1505,7 @@ public class Repository {
 			ConnectedProject connectedProject = this.syncedProjects.get(resource.getProject().getName());
 			String resourcePath = resource.getProjectRelativePath().toString();
 			long deletedTimestamp = System.currentTimeMillis();
+			connectedProject.removeResource(resourcePath);
 			
 			try {
 				JSONObject message = new JSONObject();
@@ -850,8 +1533,8 @@ public class Repository {
 
 				long changeTimestamp = file.getLocalTimeStamp();
 				if (changeTimestamp > connectedProject.getTimestamp(resourcePath)) {
-					String changeHash = DigestUtils.shaHex(file.getContents());
-					if (!changeHash.equals(connectedProject.getHash(resourcePath))) {
+					String changeHash = connectedProject.getContentHash(resourcePath);
+					if (!changeHash.equals(connectedProject.getRecordedHash(resourcePath))) {
 
 						connectedProject.setTimestamp(resourcePath, changeTimestamp);
 						connectedProject.setHash(resourcePath, changeHash);
@@ -872,6 +1555,12 @@ public class Repository {
 						storedMessage.put("hash", changeHash);
 						messagingConnector.send("resourceStored", storedMessage);
 
+						// the base for sending the next change of this file as delta
+						IPath location = file.getLocation();
+						if (location != null && contentCache.isCacheable(location.toFile().length())) {
+							byte[] bytes = ResourceContents.read(file);
+							contentCache.put(DigestUtils.shaHex(bytes), ResourceContents.toText(bytes, file.getCharset()));
+						}
 					}
 				}
 			} catch (Exception e) {
@@ -880,52 +1569,6 @@ public class Repository {
 		}
 	}
 
-	public void sendMetadataUpdate(IResource resource) {
-		try {
-			String project = resource.getProject().getName();
-			String resourcePath = resource.getProjectRelativePath().toString();
-
-			JSONObject message = new JSONObject();
-			message.put("username", this.username);
-			message.put("project", project);
-			message.put("resource", resourcePath);
-			message.put("type", "marker");
-
-			IMarker[] markers = resource.findMarkers(null, true, IResource.DEPTH_INFINITE);
-			String markerJSON = toJSON(markers);
-			JSONArray content = new JSONArray(markerJSON);
-			message.put("metadata", content);
-
-			messagingConnector.send("metadataChanged", message);
-		} catch (Exception e) {
-
-		}
-	}
-
-	public String toJSON(IMarker[] markers) {
-		StringBuilder result = new StringBuilder();
-		boolean flag = false;
-		result.append("[");
-		for (IMarker m : markers) {
-			if (flag) {
-				result.append(",");
-			}
-
-			result.append("{");
-			result.append("\"description\":" + JSONObject.quote(m.getAttribute("message", "")));
-			result.append(",\"line\":" + m.getAttribute("lineNumber", 0));
-			result.append(",\"severity\":\"" + (m.getAttribute("severity", IMarker.SEVERITY_WARNING) == IMarker.SEVERITY_ERROR ? "error" : "warning")
-					+ "\"");
-			result.append(",\"start\":" + m.getAttribute("charStart", 0));
-			result.append(",\"end\":" + m.getAttribute("charEnd", 0));
-			result.append("}");
-
-			flag = true;
-		}
-		result.append("]");
-		return result.toString();
-	}
-	
 	public void addRepositoryListener(IRepositoryListener listener) {
 		this.repositoryListeners.add(listener);
 	}
@@ -953,11 +1596,20 @@ public class Repository {
 	}
 	
 	public void dispose() {
+		changeJournal.dispose();
 		connected.set(false);
 		for (IMessageHandler messageHandler : messageHandlers) {
 			messagingConnector.removeMessageHandler(messageHandler);
 		}
+		// the index is written after the last remote change was applied
+		workspaceUpdates.dispose();
+		for (ConnectedProject connectedProject : syncedProjects.values()) {
+			ProjectIndex.write(ProjectIndex.getIndexFile(connectedProject.getName()), connectedProject);
+		}
 		syncedProjects.clear();
+		resourceTransfers.dispose();
+		contentCache.clear();
+		markerCache.clear();
 	}
 
 }
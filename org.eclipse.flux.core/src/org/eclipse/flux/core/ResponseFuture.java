@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.json.JSONObject;
+
+/**
+ * The pending response of a request sent via {@link MessagingRequests#request(IMessagingConnector, String, JSONObject, long)}.
+ * <p>
+ * The future completes with the first response that carries the callback ID of the request, or
+ * fails with a {@link TimeoutException} if no response arrives in time. Callbacks are invoked on
+ * the thread that completes the future (the message dispatcher or the timeout timer), or right
+ * away if the future is already done.
+ *
+ * @author Martin Lippert
+ */
+public class ResponseFuture implements Future<JSONObject> {
+
+	public interface Callback {
+		public void responseReceived(JSONObject response);
+		public void requestFailed(Throwable error);
+	}
+
+	private final int callbackID;
+	private final CountDownLatch done;
+	private final List<Callback> callbacks;
+
+	private volatile JSONObject response;
+	private volatile Throwable error;
+	private volatile boolean cancelled;
+
+	public ResponseFuture(int callbackID) {
+		this.callbackID = callbackID;
+		this.done = new CountDownLatch(1);
+		this.callbacks = new ArrayList<Callback>(2);
+	}
+
+	public int getCallbackID() {
+		return callbackID;
+	}
+
+	public boolean complete(JSONObject response) {
+		List<Callback> toNotify;
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+			this.response = response;
+			toNotify = new ArrayList<Callback>(callbacks);
+			callbacks.clear();
+			done.countDown();
+		}
+		for (Callback callback : toNotify) {
+			notifyCallback(callback);
+		}
+		return true;
+	}
+
+	public boolean fail(Throwable error) {
+		List<Callback> toNotify;
+		synchronized (this) {
+			if (isDone()) {
+				return false;
+			}
+			this.error = error;
+			this.cancelled = error instanceof CancellationException;
+			toNotify = new ArrayList<Callback>(callbacks);
+			callbacks.clear();
+			done.countDown();
+		}
+		for (Callback callback : toNotify) {
+			notifyCallback(callback);
+		}
+		return true;
+	}
+
+	public void addCallback(Callback callback) {
+		synchronized (this) {
+			if (!isDone()) {
+				callbacks.add(callback);
+				return;
+			}
+		}
+		notifyCallback(callback);
+	}
+
+	private void notifyCallback(Callback callback) {
+		try {
+			if (error == null) {
+				callback.responseReceived(response);
+			}
+			else {
+				callback.requestFailed(error);
+			}
+		}
+		catch (Throwable t) {
+			t.printStackTrace();
+		}
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return fail(new CancellationException());
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	@Override
+	public boolean isDone() {
+		return done.getCount() == 0;
+	}
+
+	@Override
+	public JSONObject get() throws InterruptedException, ExecutionException {
+		done.await();
+		return getResult();
+	}
+
+	@Override
+	public JSONObject get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		if (!done.await(timeout, unit)) {
+			throw new TimeoutException();
+		}
+		return getResult();
+	}
+
+	private JSONObject getResult() throws ExecutionException {
+		if (cancelled) {
+			throw (CancellationException) error;
+		}
+		if (error != null) {
+			throw new ExecutionException(error);
+		}
+		return response;
+	}
+
+}
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.flux.core.Activator;
+
+/**
+ * Local store of received file contents by their SHA-1 hash (the hash {@link org.eclipse.flux.core.ConnectedProject}
+ * computes), so that contents that exist at several paths or in several projects are transferred only once. A file
+ * whose content is in the store is written from the store instead of being requested from other participants.
+ * <p>
+ * The contents are kept in files in the state location of the bundle. The least recently used ones are deleted
+ * once the store holds more than <code>flux.blobStore.size</code> bytes, contents larger than an eighth of that
+ * aren't stored. The store can be switched off via <code>flux.blobStore.enabled</code>.
+ *
+ * @author Martin Lippert
+ */
+public class BlobStore {
+
+	public static final long DEFAULT_STORE_SIZE = 256 * 1024 * 1024;
+
+	private static final Pattern HASH = Pattern.compile("[0-9a-f]{40}");
+
+	private static BlobStore defaultStore;
+
+	private final File directory;
+	private final long storeSize;
+
+	private LinkedHashMap<String, Long> blobs;
+	private long size;
+
+	/**
+	 * Creates a store in the given directory, a store without directory doesn't store anything.
+	 */
+	public BlobStore(File directory, long storeSize) {
+		this.directory = directory;
+		this.storeSize = storeSize;
+	}
+
+	/**
+	 * Returns the store in the state location of the bundle.
+	 */
+	public static synchronized BlobStore getDefault() {
+		if (defaultStore == null) {
+			File directory = null;
+			Activator activator = Activator.getDefault();
+			if (activator != null && activator.getStateLocation() != null
+					&& Configuration.getBoolean("flux.blobStore.enabled", "FLUX_BLOB_STORE_ENABLED", true)) {
+				IPath location = activator.getStateLocation().append("blobs");
+				directory = location.toFile();
+			}
+			long storeSize = Configuration.getLong("flux.blobStore.size", "FLUX_BLOB_STORE_SIZE", DEFAULT_STORE_SIZE);
+			defaultStore = new BlobStore(directory, Math.max(0, storeSize));
+		}
+		return defaultStore;
+	}
+
+	/**
+	 * Returns whether the content with the given hash is in the store.
+	 */
+	public synchronized boolean contains(String hash) {
+		return isValid(hash) && getBlobs().containsKey(hash);
+	}
+
+	/**
+	 * Returns the content with the given hash, <code>null</code> if it is not in the store.
+	 */
+	public synchronized InputStream get(String hash) {
+		if (!isValid(hash) || getBlobs().get(hash) == null) {
+			return null;
+		}
+		File blob = getBlobFile(hash);
+		try {
+			blob.setLastModified(System.currentTimeMillis());
+			return new FileInputStream(blob);
+		} catch (IOException e) {
+			remove(hash);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a copy of the given file as the content with the given hash, nothing is stored if the
+	 * hash doesn't match the content.
+	 */
+	public void put(String hash, File source) {
+		if (!isValid(hash) || source == null || !source.isFile() || source.length() > storeSize / 8) {
+			return;
+		}
+		synchronized (this) {
+			if (getBlobs().get(hash) != null) {
+				return;
+			}
+		}
+
+		File blob = getBlobFile(hash);
+		File temp = new File(directory, hash + ".tmp" + Thread.currentThread().getId());
+		InputStream input = null;
+		OutputStream output = null;
+		try {
+			blob.getParentFile().mkdirs();
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			input = new DigestInputStream(new FileInputStream(source), digest);
+			output = new FileOutputStream(temp);
+			IOUtils.copy(input, output);
+			output.close();
+			if (!hash.equals(Hex.encodeHexString(digest.digest()))) {
+				return;
+			}
+			synchronized (this) {
+				if (!temp.renameTo(blob)) {
+					return;
+				}
+				add(hash, blob.length());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (NoSuchAlgorithmException e) {
+			e.printStackTrace();
+		} finally {
+			IOUtils.closeQuietly(input);
+			IOUtils.closeQuietly(output);
+			temp.delete();
+		}
+	}
+
+	private boolean isValid(String hash) {
+		return directory != null && hash != null && HASH.matcher(hash).matches();
+	}
+
+	private File getBlobFile(String hash) {
+		return new File(new File(directory, hash.substring(0, 2)), hash);
+	}
+
+	// called with the lock held
+	private void add(String hash, long length) {
+		Long previous = blobs.put(hash, length);
+		if (previous != null) {
+			size -= previous;
+		}
+		size += length;
+
+		Iterator<Map.Entry<String, Long>> eldest = blobs.entrySet().iterator();
+		while (size > storeSize && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			getBlobFile(entry.getKey()).delete();
+			size -= entry.getValue();
+			eldest.remove();
+		}
+	}
+
+	// called with the lock held
+	private void remove(String hash) {
+		Long length = blobs.remove(hash);
+		if (length != null) {
+			size -= length;
+		}
+		getBlobFile(hash).delete();
+	}
+
+	// called with the lock held, reads the stored contents in the order they were used last
+	private Map<String, Long> getBlobs() {
+		if (blobs == null) {
+			blobs = new LinkedHashMap<String, Long>(16, 0.75f, true);
+			size = 0;
+
+			File[] stored = directory.listFiles();
+			if (stored != null) {
+				List<File> files = new ArrayList<File>();
+				for (File folder : stored) {
+					File[] children = folder.isDirectory() ? folder.listFiles() : null;
+					if (children != null) {
+						files.addAll(Arrays.asList(children));
+					}
+					else if (folder.getName().contains(".tmp")) {
+						// left over by an interrupted copy
+						folder.delete();
+					}
+				}
+				Collections.sort(files, new Comparator<File>() {
+					@Override
+					public int compare(File file1, File file2) {
+						long modified1 = file1.lastModified();
+						long modified2 = file2.lastModified();
+						return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+					}
+				});
+				for (File file : files) {
+					if (HASH.matcher(file.getName()).matches()) {
+						add(file.getName(), file.length());
+					}
+				}
+			}
+		}
+		return blobs;
+	}
+
+}
@@ -0,0 +1,210 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.flux.core.Repository;
+
+/**
+ * Collects workspace changes for a short time window and publishes them together, from a background
+ * thread, so that hashing and messaging are not done on the thread that changed the workspace.
+ * <p>
+ * Changes to the same resource within the window are merged: repeated changes are published once,
+ * a creation followed by changes is published as creation, and a resource that is created and deleted
+ * again is not published at all. The window ends <code>flux.changes.delay</code> milliseconds after the
+ * latest change, but no later than <code>flux.changes.maxDelay</code> milliseconds after the first one,
+ * so a continuous stream of changes is still published regularly. A delay of zero publishes every change
+ * right away, on the thread that reports it.
+ *
+ * @author Martin Lippert
+ */
+public class ChangeJournal {
+
+	public static final long DEFAULT_DELAY = 100;
+	public static final long DEFAULT_MAX_DELAY = 1000;
+
+	private final Repository repository;
+	private final long delay;
+	private final long maxDelay;
+	private final ScheduledExecutorService publisher;
+
+	private final Object publishLock = new Object();
+
+	private Map<IPath, Change> pendingChanges;
+	private long firstChange;
+	private long lastChange;
+	private boolean publishScheduled;
+
+	public ChangeJournal(Repository repository, long delay, long maxDelay) {
+		this.repository = repository;
+		this.delay = delay;
+		this.maxDelay = Math.max(delay, maxDelay);
+		this.pendingChanges = new LinkedHashMap<IPath, Change>();
+		this.publisher = delay > 0 ? Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Flux change journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}) : null;
+	}
+
+	/**
+	 * Creates a journal with the time window from the <code>flux.changes.delay</code> and
+	 * <code>flux.changes.maxDelay</code> system properties.
+	 */
+	public static ChangeJournal createDefault(Repository repository) {
+		long delay = Configuration.getLong("flux.changes.delay", "FLUX_CHANGES_DELAY", DEFAULT_DELAY);
+		long maxDelay = Configuration.getLong("flux.changes.maxDelay", "FLUX_CHANGES_MAX_DELAY", DEFAULT_MAX_DELAY);
+		return new ChangeJournal(repository, Math.max(0, delay), maxDelay);
+	}
+
+	public void record(IResourceDelta delta) {
+		IResource resource = delta.getResource();
+		int kind = delta.getKind();
+
+		if (kind == IResourceDelta.CHANGED && (!(resource instanceof IFile) || delta.getFlags() == IResourceDelta.MARKERS)) {
+			// only the contents of files are published as changes
+			return;
+		}
+		if (kind != IResourceDelta.REMOVED && resource.isDerived(IResource.CHECK_ANCESTORS)) {
+			return;
+		}
+
+		if (publisher == null) {
+			repository.reactToResourceChange(resource, kind);
+			return;
+		}
+
+		synchronized (this) {
+			long now = System.currentTimeMillis();
+			if (pendingChanges.isEmpty()) {
+				firstChange = now;
+			}
+			lastChange = now;
+
+			IPath path = resource.getFullPath();
+			Change pending = pendingChanges.get(path);
+			if (pending == null) {
+				pendingChanges.put(path, new Change(resource, kind));
+			}
+			else if (!pending.merge(resource, kind)) {
+				pendingChanges.remove(path);
+			}
+
+			if (!publishScheduled && !pendingChanges.isEmpty()) {
+				publishScheduled = true;
+				schedulePublish(delay);
+			}
+		}
+	}
+
+	private void schedulePublish(long wait) {
+		publisher.schedule(new Runnable() {
+			@Override
+			public void run() {
+				long remaining;
+				synchronized (ChangeJournal.this) {
+					long now = System.currentTimeMillis();
+					remaining = Math.min(lastChange + delay, firstChange + maxDelay) - now;
+					if (remaining > 0 && !pendingChanges.isEmpty()) {
+						schedulePublish(remaining);
+						return;
+					}
+					publishScheduled = false;
+				}
+				publish();
+			}
+		}, wait, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Publishes the pending changes in the order in which the resources were changed first.
+	 */
+	public void publish() {
+		synchronized (publishLock) {
+			Map<IPath, Change> changes;
+			synchronized (this) {
+				if (pendingChanges.isEmpty()) {
+					return;
+				}
+				changes = pendingChanges;
+				pendingChanges = new LinkedHashMap<IPath, Change>();
+			}
+
+			Iterator<Change> iterator = changes.values().iterator();
+			while (iterator.hasNext()) {
+				Change change = iterator.next();
+				try {
+					repository.reactToResourceChange(change.resource, change.kind);
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Publishes the pending changes and stops the background thread.
+	 */
+	public void dispose() {
+		if (publisher != null) {
+			publisher.shutdown();
+		}
+		publish();
+	}
+
+	private static class Change {
+
+		private IResource resource;
+		private int kind;
+
+		public Change(IResource resource, int kind) {
+			this.resource = resource;
+			this.kind = kind;
+		}
+
+		/**
+		 * Merges a later change into this one, returns <code>false</code> if nothing remains to be published.
+		 */
+		public boolean merge(IResource resource, int kind) {
+			this.resource = resource;
+			switch (this.kind) {
+			case IResourceDelta.ADDED:
+				return kind != IResourceDelta.REMOVED;
+			case IResourceDelta.REMOVED:
+				if (kind == IResourceDelta.ADDED) {
+					// replaced by a new resource, files might have new contents, folders are still there
+					this.kind = IResourceDelta.CHANGED;
+					return resource instanceof IFile;
+				}
+				return true;
+			default:
+				this.kind = kind;
+				return true;
+			}
+		}
+
+	}
+
+}
@@ -10,14 +10,20 @@
 *******************************************************************************/
 package org.eclipse.flux.core.internal;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceChangeEvent;
 import org.eclipse.core.resources.IResourceChangeListener;
-import org.eclipse.core.resources.IResourceDelta;
-import org.eclipse.core.resources.IResourceDeltaVisitor;
-import org.eclipse.core.runtime.CoreException;
 import org.eclipse.flux.core.Repository;
 
 /**
+ * Publishes the marker changes of a build, grouped by the resource they belong to.
+ *
  * @author Martin Lippert
  */
 public class CloudSyncMetadataListener implements IResourceChangeListener{
@@ -30,16 +36,23 @@ public class CloudSyncMetadataListener implements IResourceChangeListener{
 
 	@Override
 	public void resourceChanged(IResourceChangeEvent event) {
-		try {
-			event.getDelta().accept(new IResourceDeltaVisitor() {
-				@Override
-				public boolean visit(IResourceDelta delta) throws CoreException {
-					repository.metadataChanged(delta);
-					return true;
-				}
-			});
-		} catch (CoreException e) {
-			e.printStackTrace();
+		IMarkerDelta[] markerDeltas = event.findMarkerDeltas(null, true);
+		if (markerDeltas.length == 0) {
+			return;
+		}
+
+		Map<IResource, List<IMarkerDelta>> resourceMarkerDeltas = new LinkedHashMap<IResource, List<IMarkerDelta>>();
+		for (IMarkerDelta markerDelta : markerDeltas) {
+			List<IMarkerDelta> deltas = resourceMarkerDeltas.get(markerDelta.getResource());
+			if (deltas == null) {
+				deltas = new ArrayList<IMarkerDelta>();
+				resourceMarkerDeltas.put(markerDelta.getResource(), deltas);
+			}
+			deltas.add(markerDelta);
+		}
+
+		for (Map.Entry<IResource, List<IMarkerDelta>> entry : resourceMarkerDeltas.entrySet()) {
+			repository.metadataChanged(entry.getKey(), entry.getValue().toArray(new IMarkerDelta[entry.getValue().size()]));
 		}
 	}
 
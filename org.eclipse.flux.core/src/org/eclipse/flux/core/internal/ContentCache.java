@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Recently sent and received file contents by content hash, the bases for delta-encoded updates
+ * (see {@link ContentDelta}). The least recently used contents are evicted once the cache holds more
+ * than <code>flux.contentCache.size</code> characters, contents larger than a quarter of that aren't cached.
+ *
+ * @author Martin Lippert
+ */
+public class ContentCache {
+
+	public static final long DEFAULT_CACHE_SIZE = 8 * 1024 * 1024;
+
+	private final long cacheSize;
+	private final LinkedHashMap<String, String> contents;
+	private long size;
+
+	public ContentCache(long cacheSize) {
+		this.cacheSize = cacheSize;
+		this.contents = new LinkedHashMap<String, String>(16, 0.75f, true);
+	}
+
+	public static ContentCache createDefault() {
+		return new ContentCache(Math.max(0, Configuration.getLong("flux.contentCache.size", "FLUX_CONTENT_CACHE_SIZE", DEFAULT_CACHE_SIZE)));
+	}
+
+	public boolean isCacheable(long length) {
+		return length <= cacheSize / 4;
+	}
+
+	public synchronized void put(String hash, String content) {
+		if (hash == null || content == null || !isCacheable(content.length())) {
+			return;
+		}
+		String previous = contents.put(hash, content);
+		if (previous != null) {
+			size -= previous.length();
+		}
+		size += content.length();
+
+		Iterator<String> eldest = contents.values().iterator();
+		while (size > cacheSize && eldest.hasNext()) {
+			size -= eldest.next().length();
+			eldest.remove();
+		}
+	}
+
+	public synchronized String get(String hash) {
+		return hash != null ? contents.get(hash) : null;
+	}
+
+	public synchronized void clear() {
+		contents.clear();
+		size = 0;
+	}
+
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Delta encoding of a new file content against a base content both sides have: the range
+ * <code>start</code> to <code>end</code> of the base is replaced with <code>text</code>, the common
+ * prefix and suffix are not sent. A single edited region, the common case for a changed resource,
+ * costs the size of the edit only.
+ *
+ * @author Martin Lippert
+ */
+public class ContentDelta {
+
+	/**
+	 * Returns the delta from the base to the content, or <code>null</code> if it is not
+	 * considerably smaller than the content itself.
+	 */
+	public static JSONObject create(String base, String content) throws JSONException {
+		int limit = Math.min(base.length(), content.length());
+		int prefix = 0;
+		while (prefix < limit && base.charAt(prefix) == content.charAt(prefix)) {
+			prefix++;
+		}
+		if (prefix > 0 && Character.isHighSurrogate(content.charAt(prefix - 1))) {
+			prefix--;
+		}
+
+		int suffix = 0;
+		while (suffix < limit - prefix && base.charAt(base.length() - suffix - 1) == content.charAt(content.length() - suffix - 1)) {
+			suffix++;
+		}
+		if (suffix > 0 && Character.isLowSurrogate(content.charAt(content.length() - suffix))) {
+			suffix--;
+		}
+
+		String text = content.substring(prefix, content.length() - suffix);
+		if (text.length() > content.length() / 2) {
+			return null;
+		}
+
+		JSONObject delta = new JSONObject();
+		delta.put("start", prefix);
+		delta.put("end", base.length() - suffix);
+		delta.put("text", text);
+		return delta;
+	}
+
+	/**
+	 * Applies the delta to the base, returns <code>null</code> if it doesn't fit the base.
+	 */
+	public static String apply(String base, JSONObject delta) throws JSONException {
+		int start = delta.getInt("start");
+		int end = delta.getInt("end");
+		if (start < 0 || start > end || end > base.length()) {
+			return null;
+		}
+		StringBuilder content = new StringBuilder(base.length() - (end - start) + delta.getString("text").length());
+		content.append(base, 0, start);
+		content.append(delta.getString("text"));
+		content.append(base, end, base.length());
+		return content.toString();
+	}
+
+}
@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+/**
+ * Computes the SHA-1 content hashes of files (the same hex strings as <code>DigestUtils.shaHex</code>).
+ * <p>
+ * Many files are hashed in parallel on a shared fork/join pool (<code>flux.hash.threads</code> workers,
+ * one per core by default). Files in the local file system are read through a direct buffer per worker
+ * thread, everything else is read from {@link IFile#getContents()}. Files are not memory-mapped, a
+ * mapping keeps the file locked on Windows until the buffer is garbage collected.
+ *
+ * @author Martin Lippert
+ */
+public class ContentHasher {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int FILES_PER_TASK = 8;
+	private static final long PROGRESS_INTERVAL = 100;
+
+	private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	};
+
+	private static ForkJoinPool pool;
+
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			int threads = Configuration.getInt("flux.hash.threads", "FLUX_HASH_THREADS", Runtime.getRuntime().availableProcessors());
+			pool = new ForkJoinPool(Math.max(1, threads), new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger(0);
+
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+					thread.setName("Flux content hasher " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			}, null, false);
+		}
+		return pool;
+	}
+
+	/**
+	 * Hashes the given files (by project relative path) in parallel and returns the hashes by path.
+	 * Files that can't be read are left out. Reports one unit of work per file to the monitor.
+	 *
+	 * @throws OperationCanceledException if the monitor is canceled before all files are hashed
+	 */
+	public static Map<String, String> hash(Map<String, IFile> files, IProgressMonitor monitor) {
+		if (monitor == null) {
+			monitor = new NullProgressMonitor();
+		}
+		List<Map.Entry<String, IFile>> entries = new ArrayList<Map.Entry<String, IFile>>(files.entrySet());
+		Map<String, String> hashes = new ConcurrentHashMap<String, String>();
+		AtomicBoolean canceled = new AtomicBoolean(false);
+		AtomicInteger hashed = new AtomicInteger(0);
+
+		monitor.beginTask("Hashing " + entries.size() + " files", entries.size());
+		try {
+			HashTask task = new HashTask(entries, 0, entries.size(), hashes, canceled, hashed);
+			getPool().execute(task);
+
+			int reported = 0;
+			while (!task.isDone()) {
+				try {
+					task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// report progress and check for cancellation
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					canceled.set(true);
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+				}
+
+				int current = hashed.get();
+				monitor.worked(current - reported);
+				reported = current;
+				if (monitor.isCanceled()) {
+					canceled.set(true);
+				}
+			}
+
+			if (canceled.get()) {
+				throw new OperationCanceledException();
+			}
+			return hashes;
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Hashes the content of a single file.
+	 */
+	public static String hash(IFile file) throws IOException, CoreException {
+		MessageDigest digest = createDigest();
+		IPath location = file.getLocation();
+		if (location != null && location.toFile().isFile()) {
+			FileInputStream in = new FileInputStream(location.toFile());
+			try {
+				update(digest, in.getChannel());
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		else {
+			InputStream in = file.getContents();
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			} finally {
+				IOUtils.closeQuietly(in);
+			}
+		}
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	/**
+	 * Returns the modification time and size of the file in the local file system with a single stat,
+	 * <code>null</code> if the file is not in the local file system or can't be accessed.
+	 */
+	public static BasicFileAttributes stat(IFile file) {
+		IPath location = file.getLocation();
+		if (location == null) {
+			return null;
+		}
+		try {
+			return Files.readAttributes(location.toFile().toPath(), BasicFileAttributes.class);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, FileChannel channel) throws IOException {
+		ByteBuffer buffer = BUFFERS.get();
+		buffer.clear();
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			digest.update(buffer);
+			buffer.clear();
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class HashTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Map.Entry<String, IFile>> files;
+		private final int from;
+		private final int to;
+		private final Map<String, String> hashes;
+		private final AtomicBoolean canceled;
+		private final AtomicInteger hashed;
+
+		public HashTask(List<Map.Entry<String, IFile>> files, int from, int to, Map<String, String> hashes, AtomicBoolean canceled, AtomicInteger hashed) {
+			this.files = files;
+			this.from = from;
+			this.to = to;
+			this.hashes = hashes;
+			this.canceled = canceled;
+			this.hashed = hashed;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > FILES_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new HashTask(files, from, middle, hashes, canceled, hashed),
+						new HashTask(files, middle, to, hashes, canceled, hashed));
+				return;
+			}
+
+			for (int i = from; i < to && !canceled.get(); i++) {
+				Map.Entry<String, IFile> file = files.get(i);
+				try {
+					hashes.put(file.getKey(), hash(file.getValue()));
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				hashed.incrementAndGet();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IMarkerDelta;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.flux.core.JSONStreamWriter;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The markers of resources as they were published last, used to publish only the differences of
+ * marker changes: the markers that were <code>added</code> and <code>changed</code> (complete, with
+ * their <code>id</code>) and the ids of the <code>removed</code> ones. A change of marker attributes
+ * that are not published (like the marker creation time) is not published either. Receivers that
+ * don't know a changed marker treat it as added, the complete list of markers is only sent on request.
+ *
+ * @author Martin Lippert
+ */
+public class MarkerCache {
+
+	private final Map<String, Map<Long, JSONObject>> markers;
+
+	public MarkerCache() {
+		this.markers = new HashMap<String, Map<Long, JSONObject>>();
+	}
+
+	public static JSONObject toJSON(IMarker marker) throws JSONException {
+		JSONObject json = new JSONObject();
+		json.put("id", marker.getId());
+		json.put("description", marker.getAttribute("message", ""));
+		json.put("line", marker.getAttribute("lineNumber", 0));
+		json.put("severity", marker.getAttribute("severity", IMarker.SEVERITY_WARNING) == IMarker.SEVERITY_ERROR ? "error" : "warning");
+		json.put("start", marker.getAttribute("charStart", 0));
+		json.put("end", marker.getAttribute("charEnd", 0));
+		return json;
+	}
+
+	/**
+	 * Writes the markers as JSON array, in the same form as {@link #toJSON(IMarker)}.
+	 */
+	public static JSONStreamWriter toJSON(IMarker[] markers) {
+		JSONStreamWriter json = new JSONStreamWriter(markers.length * 128 + 2);
+		json.array();
+		for (IMarker marker : markers) {
+			json.object();
+			json.key("id").value(marker.getId());
+			json.key("description").value(marker.getAttribute("message", ""));
+			json.key("line").value(marker.getAttribute("lineNumber", 0));
+			json.key("severity").value(marker.getAttribute("severity", IMarker.SEVERITY_WARNING) == IMarker.SEVERITY_ERROR ? "error" : "warning");
+			json.key("start").value(marker.getAttribute("charStart", 0));
+			json.key("end").value(marker.getAttribute("charEnd", 0));
+			json.endObject();
+		}
+		json.endArray();
+		return json;
+	}
+
+	/**
+	 * Records the marker changes of the resource and returns the differences to publish, <code>null</code> if
+	 * there are none.
+	 */
+	public synchronized JSONObject update(IResource resource, IMarkerDelta[] markerDeltas) throws JSONException {
+		String key = resource.getFullPath().toString();
+		Map<Long, JSONObject> published = markers.get(key);
+		if (published == null) {
+			published = new HashMap<Long, JSONObject>();
+		}
+
+		JSONArray added = new JSONArray();
+		JSONArray changed = new JSONArray();
+		JSONArray removed = new JSONArray();
+
+		for (IMarkerDelta markerDelta : markerDeltas) {
+			long id = markerDelta.getId();
+			IMarker marker = markerDelta.getMarker();
+			JSONObject current = markerDelta.getKind() != IResourceDelta.REMOVED && marker.exists() ? toJSON(marker) : null;
+			JSONObject previous = current != null ? published.put(id, current) : published.remove(id);
+
+			if (current == null) {
+				// markers that are removed before they were published are skipped
+				if (previous != null || markerDelta.getKind() != IResourceDelta.ADDED) {
+					removed.put(id);
+				}
+			}
+			else if (previous == null) {
+				(markerDelta.getKind() == IResourceDelta.ADDED ? added : changed).put(current);
+			}
+			else if (!previous.toString().equals(current.toString())) {
+				changed.put(current);
+			}
+		}
+
+		if (published.isEmpty()) {
+			markers.remove(key);
+		}
+		else {
+			markers.put(key, published);
+		}
+
+		if (added.length() == 0 && changed.length() == 0 && removed.length() == 0) {
+			return null;
+		}
+		JSONObject differences = new JSONObject();
+		differences.put("added", added);
+		differences.put("changed", changed);
+		differences.put("removed", removed);
+		return differences;
+	}
+
+	/**
+	 * Forgets the markers of the resources of the given project.
+	 */
+	public synchronized void removeProject(String projectName) {
+		String prefix = "/" + projectName + "/";
+		Iterator<String> keys = markers.keySet().iterator();
+		while (keys.hasNext()) {
+			String key = keys.next();
+			if (key.startsWith(prefix) || key.equals("/" + projectName)) {
+				keys.remove();
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		markers.clear();
+	}
+
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.flux.core.Activator;
+import org.eclipse.flux.core.ConnectedProject;
+
+/**
+ * The content hashes of the files of a connected project, persisted in a compact binary file under
+ * the state location of the bundle, so that connecting the project again (like after a restart)
+ * only hashes the files that changed in the meantime.
+ * <p>
+ * A stored hash is reused if the modification time and the size of the file on disk are the same
+ * as the ones the hash was computed for, entries of changed files are dropped. Each entry is the project relative path, the modification time,
+ * the size and the 20 bytes of the SHA-1.
+ *
+ * @author Martin Lippert
+ */
+public class ProjectIndex {
+
+	private static final int MAGIC = 0x464c5849; // "FLXI"
+	private static final int VERSION = 1;
+
+	private final Map<String, Entry> entries;
+
+	public ProjectIndex() {
+		this.entries = new HashMap<String, Entry>();
+	}
+
+	/**
+	 * Returns the index file of the given project, <code>null</code> if the index is switched off via
+	 * <code>flux.index.enabled</code> or the bundle is not running.
+	 */
+	public static File getIndexFile(String projectName) {
+		Activator activator = Activator.getDefault();
+		if (activator == null || !Configuration.getBoolean("flux.index.enabled", "FLUX_INDEX_ENABLED", true)) {
+			return null;
+		}
+		IPath stateLocation = activator.getStateLocation();
+		if (stateLocation == null) {
+			return null;
+		}
+		return stateLocation.append("projects").append(projectName + ".index").toFile();
+	}
+
+	/**
+	 * Reads the index of the given project, returns an empty index if there is none or it can't be read.
+	 */
+	public static ProjectIndex read(File indexFile) {
+		ProjectIndex index = new ProjectIndex();
+		if (indexFile == null || !indexFile.isFile()) {
+			return index;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return index;
+			}
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String path = in.readUTF();
+				long modified = in.readLong();
+				long size = in.readLong();
+				byte[] hash = new byte[20];
+				in.readFully(hash);
+				index.entries.put(path, new Entry(modified, size, hash));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			index.entries.clear();
+		} finally {
+			IOUtils.closeQuietly(in);
+		}
+		return index;
+	}
+
+	/**
+	 * Writes the hashes of the files of the project that were computed from the current content of the
+	 * file, with the modification time and size of a single stat of the file. The hashes of other files
+	 * might not match their current content.
+	 */
+	public static void write(File indexFile, ConnectedProject connectedProject) {
+		if (indexFile == null) {
+			return;
+		}
+
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		for (String path : connectedProject.getResourcePaths()) {
+			if (connectedProject.isFolder(path)) {
+				continue;
+			}
+			BasicFileAttributes attributes = ContentHasher.stat(connectedProject.getProject().getFile(path));
+			if (attributes == null) {
+				continue;
+			}
+			long modified = attributes.lastModifiedTime().toMillis();
+			long size = attributes.size();
+			if (modified == 0 || modified != connectedProject.getTimestamp(path)) {
+				continue;
+			}
+			String hash = connectedProject.getRecordedHash(path, modified, size);
+			if (hash == null || hash.length() != 40 || !connectedProject.containsResource(path)) {
+				continue;
+			}
+			try {
+				entries.put(path, new Entry(modified, size, Hex.decodeHex(hash.toCharArray())));
+			} catch (DecoderException e) {
+				// not a SHA-1, like the placeholder of a file that couldn't be read
+			}
+		}
+
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			indexFile.getParentFile().mkdirs();
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeLong(entry.getValue().modified);
+				out.writeLong(entry.getValue().size);
+				out.write(entry.getValue().hash);
+			}
+			out.close();
+			out = null;
+
+			if (!tempFile.renameTo(indexFile)) {
+				indexFile.delete();
+				if (!tempFile.renameTo(indexFile)) {
+					throw new FileNotFoundException("Could not replace " + indexFile);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			tempFile.delete();
+		} finally {
+			IOUtils.closeQuietly(out);
+		}
+	}
+
+	/**
+	 * Returns the stored hash of the file if the file is unchanged since the index was written, <code>null</code>
+	 * otherwise. The entry of a changed file is dropped.
+	 */
+	public String getHash(String path, IFile file) {
+		Entry entry = entries.get(path);
+		if (entry == null) {
+			return null;
+		}
+		BasicFileAttributes attributes = ContentHasher.stat(file);
+		if (attributes == null || attributes.lastModifiedTime().toMillis() != entry.modified || attributes.size() != entry.size) {
+			entries.remove(path);
+			return null;
+		}
+		return Hex.encodeHexString(entry.hash);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	private static class Entry {
+
+		private final long modified;
+		private final long size;
+		private final byte[] hash;
+
+		public Entry(long modified, long size, byte[] hash) {
+			this.modified = modified;
+			this.size = size;
+			this.hash = hash;
+		}
+
+	}
+
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import org.eclipse.flux.core.IMessagingConnector;
+import org.eclipse.flux.core.MessagingRequests;
+import org.eclipse.flux.core.ResponseFuture;
+import org.json.JSONObject;
+
+/**
+ * Limits the number of requests that are in flight at the same time, like the resource requests of
+ * a large sync. Requests beyond the limit wait in order and are sent as earlier requests complete,
+ * their timeout starts when they are actually sent.
+ *
+ * @author Martin Lippert
+ */
+public class RequestWindow {
+
+	public static final int DEFAULT_LIMIT = 16;
+
+	private final IMessagingConnector messagingConnector;
+	private final int limit;
+	private final Queue<PendingRequest> waiting;
+	private int inFlight;
+
+	public RequestWindow(IMessagingConnector messagingConnector, int limit) {
+		this.messagingConnector = messagingConnector;
+		this.limit = Math.max(1, limit);
+		this.waiting = new ArrayDeque<PendingRequest>();
+	}
+
+	/**
+	 * Creates a window limited by the <code>flux.requests.inFlight</code> system property (or the
+	 * corresponding environment variable).
+	 */
+	public static RequestWindow createDefault(IMessagingConnector messagingConnector) {
+		return new RequestWindow(messagingConnector, Configuration.getInt("flux.requests.inFlight", "FLUX_REQUESTS_IN_FLIGHT", DEFAULT_LIMIT));
+	}
+
+	public ResponseFuture request(String messageType, JSONObject message, long timeout) {
+		PendingRequest request = new PendingRequest(messageType, message, timeout);
+		request.future.addCallback(request);
+
+		boolean sendNow;
+		synchronized (this) {
+			sendNow = inFlight < limit;
+			if (sendNow) {
+				request.sent = true;
+				inFlight++;
+			}
+			else {
+				waiting.add(request);
+			}
+		}
+		if (sendNow) {
+			request.send();
+		}
+		return request.future;
+	}
+
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	private void completed(PendingRequest request) {
+		PendingRequest next;
+		synchronized (this) {
+			if (!request.sent) {
+				// cancelled while waiting
+				waiting.remove(request);
+				return;
+			}
+			inFlight--;
+			next = waiting.poll();
+			if (next != null) {
+				next.sent = true;
+				inFlight++;
+			}
+		}
+		if (next != null) {
+			next.send();
+		}
+	}
+
+	private class PendingRequest implements ResponseFuture.Callback {
+
+		private final String messageType;
+		private final JSONObject message;
+		private final long timeout;
+		private final ResponseFuture future;
+		private boolean sent;
+
+		public PendingRequest(String messageType, JSONObject message, long timeout) {
+			this.messageType = messageType;
+			this.message = message;
+			this.timeout = timeout;
+			this.future = new ResponseFuture(MessagingRequests.nextCallbackID());
+		}
+
+		public void send() {
+			MessagingRequests.request(messagingConnector, messageType, MessagingRequests.getResponseType(messageType), message, timeout, future);
+		}
+
+		@Override
+		public void responseReceived(JSONObject response) {
+			completed(this);
+		}
+
+		@Override
+		public void requestFailed(Throwable error) {
+			completed(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.flux.core.CallbackIDAwareMessageHandler;
+import org.eclipse.flux.core.IMessageHandler;
+import org.eclipse.flux.core.IMessagingConnector;
+import org.eclipse.flux.core.MessagingRequests;
+import org.eclipse.flux.core.internal.messaging.MessageFragments;
+import org.eclipse.flux.core.internal.messaging.TimerWheel;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One <code>getResourcesRequest</code> (see {@link ResourceBatches}) and the batches answering it.
+ * <p>
+ * Every participant that has the project answers, only the batches of the participant whose batch
+ * arrived first are accepted (by the <code>responseSenderID</code> the broker adds to responses). Each
+ * requested resource is handed to the receiver once, either with its content or as missing if the
+ * responder didn't send its content (too large, unreadable or left out), so that the receiver can
+ * fetch it on its own. The request fails if nobody answers within the timeout, which starts again
+ * with every accepted batch.
+ *
+ * @author Martin Lippert
+ */
+public class ResourceBatchRequest {
+
+	public interface Receiver {
+		/**
+		 * An entry with the content (or a delta) of a requested resource.
+		 */
+		void resourceReceived(JSONObject resource);
+
+		/**
+		 * A requested resource whose content wasn't sent, the answered entry is <code>null</code> if it wasn't answered at all.
+		 */
+		void resourceMissing(JSONObject requested, JSONObject answered);
+
+		void requestFailed(Throwable error);
+	}
+
+	private final IMessagingConnector messagingConnector;
+	private final JSONObject request;
+	private final long timeout;
+	private final Receiver receiver;
+	private final IMessageHandler responseHandler;
+
+	// guarded by this, the requested resources that weren't answered yet by path
+	private final Map<String, JSONObject> pending;
+	private String responder;
+	private TimerWheel.Timeout idleTimeout;
+	private boolean done;
+
+	/**
+	 * Creates the request for the given resources, the request carries the username, the project and
+	 * the other fields of the given message.
+	 */
+	public ResourceBatchRequest(IMessagingConnector messagingConnector, JSONObject message, JSONArray resources, long timeout, Receiver receiver) throws JSONException {
+		this.messagingConnector = messagingConnector;
+		this.request = new JSONObject(message, JSONObject.getNames(message));
+		this.timeout = timeout;
+		this.receiver = receiver;
+		this.pending = new LinkedHashMap<String, JSONObject>();
+		for (int i = 0; i < resources.length(); i++) {
+			JSONObject resource = resources.getJSONObject(i);
+			this.pending.put(resource.getString("resource"), resource);
+		}
+
+		this.request.put("callback_id", MessagingRequests.nextCallbackID());
+		this.request.put("resources", resources);
+		this.request.put(MessageFragments.ACCEPT_FRAGMENTS, true);
+		this.responseHandler = new CallbackIDAwareMessageHandler(ResourceBatches.RESPONSE_TYPE, request.getInt("callback_id")) {
+			@Override
+			public void handleMessage(String messageType, JSONObject response) {
+				batchReceived(response);
+			}
+		};
+	}
+
+	public void send() {
+		messagingConnector.addMessageHandler(responseHandler);
+		synchronized (this) {
+			restartTimeout();
+		}
+		messagingConnector.send(ResourceBatches.REQUEST_TYPE, request);
+	}
+
+	protected void batchReceived(JSONObject response) {
+		List<JSONObject> received = new ArrayList<JSONObject>();
+		Map<JSONObject, JSONObject> missing = new LinkedHashMap<JSONObject, JSONObject>();
+
+		synchronized (this) {
+			String sender = response.optString("responseSenderID", "");
+			if (done || (responder != null && !responder.equals(sender))) {
+				return;
+			}
+			responder = sender;
+
+			JSONArray resources = response.optJSONArray("resources");
+			for (int i = 0; resources != null && i < resources.length(); i++) {
+				JSONObject resource = resources.optJSONObject(i);
+				JSONObject requested = resource != null ? pending.remove(resource.optString("resource")) : null;
+				if (requested == null) {
+					continue;
+				}
+				if (resource.has("content") || resource.has("delta")) {
+					received.add(resource);
+				}
+				else {
+					missing.put(requested, resource);
+				}
+			}
+
+			if (response.optBoolean(ResourceBatches.LAST_BATCH) || pending.isEmpty()) {
+				collectUnanswered(missing);
+				finish();
+			}
+			else {
+				restartTimeout();
+			}
+		}
+
+		for (JSONObject resource : received) {
+			receiver.resourceReceived(resource);
+		}
+		notifyMissing(missing);
+	}
+
+	// called with the lock held
+	private void restartTimeout() {
+		if (idleTimeout != null) {
+			idleTimeout.cancel();
+		}
+		idleTimeout = TimerWheel.getRequestTimeouts().schedule(new Runnable() {
+			@Override
+			public void run() {
+				timedOut();
+			}
+		}, timeout);
+	}
+
+	private void timedOut() {
+		Map<JSONObject, JSONObject> missing = new LinkedHashMap<JSONObject, JSONObject>();
+		boolean answered;
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			answered = responder != null;
+			collectUnanswered(missing);
+			finish();
+		}
+
+		if (answered) {
+			// the responder stopped answering, the rest is fetched file by file
+			notifyMissing(missing);
+		}
+		else {
+			receiver.requestFailed(new TimeoutException(ResourceBatches.REQUEST_TYPE + " for " + missing.size() + " resources timed out after " + timeout + "ms"));
+		}
+	}
+
+	// called with the lock held
+	private void collectUnanswered(Map<JSONObject, JSONObject> missing) {
+		for (JSONObject requested : pending.values()) {
+			missing.put(requested, null);
+		}
+		pending.clear();
+	}
+
+	// called with the lock held
+	private void finish() {
+		done = true;
+		if (idleTimeout != null) {
+			idleTimeout.cancel();
+		}
+		messagingConnector.removeMessageHandler(responseHandler);
+	}
+
+	private void notifyMissing(Map<JSONObject, JSONObject> missing) {
+		for (Map.Entry<JSONObject, JSONObject> resource : missing.entrySet()) {
+			receiver.resourceMissing(resource.getKey(), resource.getValue());
+		}
+	}
+
+}
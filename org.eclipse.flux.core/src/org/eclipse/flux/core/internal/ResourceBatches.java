@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.flux.core.IMessagingConnector;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Transfer of the contents of many files with few messages: a <code>getResourcesRequest</code> names
+ * up to {@link #MAX_RESOURCES_PER_REQUEST} resources, the responder reads the files in parallel and
+ * answers with <code>getResourcesResponse</code> messages that carry the contents of as many files as
+ * fit into <code>flux.batch.size</code> characters, in the requested order. The last batch is marked
+ * with <code>last</code>, it is sent even if it is empty.
+ * <p>
+ * Files too large for a batch are answered with <code>tooLarge</code> instead of their content, files
+ * that can't be read with an <code>error</code>. The requester fetches them with a <code>getResourceRequest</code>
+ * of their own (see {@link ResourceTransfers} and {@link ResourceBatchRequest}). A requested resource with a
+ * <code>baseHash</code> is answered with a delta if the base content is cached (see {@link ContentDelta}).
+ *
+ * @author Martin Lippert
+ */
+public class ResourceBatches {
+
+	public static final String REQUEST_TYPE = "getResourcesRequest";
+	public static final String RESPONSE_TYPE = "getResourcesResponse";
+	public static final String LAST_BATCH = "last";
+
+	public static final int MAX_RESOURCES_PER_REQUEST = 100;
+	public static final int DEFAULT_BATCH_SIZE = 256 * 1024;
+
+	private static ExecutorService readers;
+	private static int readerCount;
+
+	private static synchronized ExecutorService getReaders() {
+		if (readers == null) {
+			readerCount = Math.max(1, Configuration.getInt("flux.read.threads", "FLUX_READ_THREADS", Runtime.getRuntime().availableProcessors()));
+			readers = Executors.newFixedThreadPool(readerCount, new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "Flux resource reader " + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return readers;
+	}
+
+	/**
+	 * Splits the requested resources into requests of at most {@link #MAX_RESOURCES_PER_REQUEST} resources.
+	 */
+	public static List<JSONArray> partition(List<JSONObject> resources) {
+		List<JSONArray> requests = new ArrayList<JSONArray>();
+		JSONArray request = null;
+		for (JSONObject resource : resources) {
+			if (request == null || request.length() == MAX_RESOURCES_PER_REQUEST) {
+				request = new JSONArray();
+				requests.add(request);
+			}
+			request.put(resource);
+		}
+		return requests;
+	}
+
+	/**
+	 * Reads the files in parallel, adds their contents to the entries and sends the entries in batches,
+	 * each batch is a copy of the response with the entries in its <code>resources</code>. Entries without
+	 * a file (<code>null</code>) are sent as they are. Only a few files more than there are reader threads
+	 * are read ahead of the batch that is being filled, so the memory needed is bounded by the batch size.
+	 * <p>
+	 * The text contents read are added to the given cache, entries with a <code>baseHash</code> whose base
+	 * content is in the cache get a delta instead of the content.
+	 */
+	public static void send(IMessagingConnector messagingConnector, JSONObject response, List<JSONObject> entries, List<IFile> files,
+			final boolean acceptBinary, final ContentCache contentCache) throws JSONException {
+		int batchSize = Configuration.getInt("flux.batch.size", "FLUX_BATCH_SIZE", DEFAULT_BATCH_SIZE);
+		ExecutorService executor = getReaders();
+		int readAhead = readerCount * 2;
+
+		List<Future<JSONObject>> contents = new ArrayList<Future<JSONObject>>(files.size());
+		JSONArray batch = new JSONArray();
+		long size = 0;
+
+		for (int i = 0; i < entries.size(); i++) {
+			while (contents.size() < files.size() && contents.size() <= i + readAhead) {
+				final IFile file = files.get(contents.size());
+				final JSONObject fileEntry = entries.get(contents.size());
+				contents.add(file == null ? null : executor.submit(new Callable<JSONObject>() {
+					@Override
+					public JSONObject call() throws Exception {
+						byte[] bytes = ResourceContents.read(file);
+						String content = ResourceContents.putContent(fileEntry, bytes, file.getCharset(), acceptBinary);
+						String baseHash = (String) fileEntry.remove("baseHash");
+						// binary contents are neither cached nor sent as delta
+						if (content != null && contentCache.isCacheable(bytes.length)) {
+							String baseContent = contentCache.get(baseHash);
+							contentCache.put(DigestUtils.shaHex(bytes), content);
+							JSONObject delta = baseContent != null ? ContentDelta.create(baseContent, content) : null;
+							if (delta != null) {
+								fileEntry.remove("content");
+								fileEntry.put("baseHash", baseHash);
+								fileEntry.put("delta", delta);
+								fileEntry.put("charset", file.getCharset());
+							}
+						}
+						return fileEntry;
+					}
+				}));
+			}
+
+			JSONObject entry = entries.get(i);
+			Future<JSONObject> content = contents.get(i);
+			contents.set(i, null);
+			if (content != null) {
+				try {
+					JSONObject read = content.get();
+					size += read.has("content") ? read.getString("content").length() : read.getJSONObject("delta").toString().length();
+				} catch (ExecutionException e) {
+					e.getCause().printStackTrace();
+					entry.put("error", String.valueOf(e.getCause()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			batch.put(entry);
+			if (size >= batchSize && i < entries.size() - 1) {
+				sendBatch(messagingConnector, response, batch, false);
+				batch = new JSONArray();
+				size = 0;
+			}
+		}
+
+		sendBatch(messagingConnector, response, batch, true);
+	}
+
+	private static void sendBatch(IMessagingConnector messagingConnector, JSONObject response, JSONArray batch, boolean last) throws JSONException {
+		JSONObject message = new JSONObject(response, JSONObject.getNames(response));
+		message.put("resources", batch);
+		if (last) {
+			message.put(LAST_BATCH, true);
+		}
+		messagingConnector.send(RESPONSE_TYPE, message);
+	}
+
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Encoding of file contents in messages. Text is sent as string together with its <code>charset</code>, so the
+ * receiver writes exactly the bytes the sender has. Binary contents (contents with a zero byte or bytes that are
+ * not valid in the charset of the file) are sent as base64 with <code>encoding</code> set to <code>base64</code>,
+ * but only to requesters that set <code>acceptBinary</code>, other requesters get them as text like before.
+ *
+ * @author Martin Lippert
+ */
+public class ResourceContents {
+
+	public static final String ACCEPT_BINARY = "acceptBinary";
+	public static final String BASE64 = "base64";
+
+	// like git, look for a zero byte at the start of large files
+	private static final int BINARY_SNIFF_LENGTH = 8000;
+
+	public static byte[] read(IFile file) throws IOException, CoreException {
+		InputStream contents = file.getContents();
+		try {
+			return IOUtils.toByteArray(contents);
+		} finally {
+			IOUtils.closeQuietly(contents);
+		}
+	}
+
+	/**
+	 * Returns the content decoded with the given charset, <code>null</code> if it is binary.
+	 */
+	public static String toText(byte[] bytes, String charset) {
+		int sniffLength = Math.min(bytes.length, BINARY_SNIFF_LENGTH);
+		for (int i = 0; i < sniffLength; i++) {
+			if (bytes[i] == 0) {
+				return null;
+			}
+		}
+		try {
+			return Charset.forName(charset).newDecoder()
+					.onMalformedInput(CodingErrorAction.REPORT)
+					.onUnmappableCharacter(CodingErrorAction.REPORT)
+					.decode(ByteBuffer.wrap(bytes)).toString();
+		} catch (CharacterCodingException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns whether the start of the file contains a zero byte, for files that are too large to be checked completely.
+	 */
+	public static boolean isBinary(IFile file) throws IOException, CoreException {
+		InputStream contents = file.getContents();
+		try {
+			byte[] start = new byte[BINARY_SNIFF_LENGTH];
+			int length = IOUtils.read(contents, start);
+			for (int i = 0; i < length; i++) {
+				if (start[i] == 0) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			IOUtils.closeQuietly(contents);
+		}
+	}
+
+	/**
+	 * Adds the content to the message, returns the content as text or <code>null</code> if it was added as base64.
+	 */
+	public static String putContent(JSONObject message, byte[] bytes, String charset, boolean acceptBinary) throws JSONException, UnsupportedEncodingException {
+		if (!acceptBinary) {
+			String content = new String(bytes, charset);
+			message.put("content", content);
+			return content;
+		}
+
+		String content = toText(bytes, charset);
+		if (content != null) {
+			message.put("content", content);
+			message.put("charset", charset);
+		}
+		else {
+			message.put("content", new String(Base64.encodeBase64(bytes), "US-ASCII"));
+			message.put("encoding", BASE64);
+		}
+		return content;
+	}
+
+	/**
+	 * Returns the bytes of the content of the message, text without a <code>charset</code> is encoded with the given one.
+	 */
+	public static byte[] getBytes(JSONObject message, String defaultCharset) throws JSONException, UnsupportedEncodingException {
+		String content = message.getString("content");
+		if (BASE64.equals(message.optString("encoding"))) {
+			return Base64.decodeBase64(content);
+		}
+		return content.getBytes(message.optString("charset", defaultCharset));
+	}
+
+}
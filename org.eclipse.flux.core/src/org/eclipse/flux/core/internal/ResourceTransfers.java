@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.flux.core.Activator;
+import org.eclipse.flux.core.IMessagingConnector;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Chunked transfer of large file contents for <code>getResourceResponse</code>.
+ * <p>
+ * If the requester sets <code>acceptChunks</code> and the file is large, the content is read through
+ * a buffer and sent as a sequence of <code>getResourceChunk</code> messages (routed like the response,
+ * via <code>requestSenderID</code>), followed by the response itself, which carries the
+ * <code>transferID</code>, the number of <code>chunks</code> and a <code>checksum</code> (the SHA-1 of
+ * the UTF-8 encoded chunk data) instead of the <code>content</code>. The receiver writes the chunks
+ * into a temporary file as they arrive and streams it into the target file once the response
+ * confirms that all chunks arrived intact, so neither side holds the complete content in memory.
+ *
+ * @author Martin Lippert
+ */
+public class ResourceTransfers {
+
+	public static final String CHUNK_MESSAGE_TYPE = "getResourceChunk";
+	public static final String ACCEPT_CHUNKS = "acceptChunks";
+
+	public static final long DEFAULT_CHUNK_THRESHOLD = 256 * 1024;
+	public static final int DEFAULT_CHUNK_SIZE = 32 * 1024;
+
+	private static final long INCOMPLETE_TRANSFER_EXPIRY = TimeUnit.MINUTES.toMillis(5);
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final Map<String, IncomingTransfer> incomingTransfers;
+
+	public ResourceTransfers() {
+		this.incomingTransfers = new HashMap<String, IncomingTransfer>();
+	}
+
+	/**
+	 * Returns whether the content of the file is sent in chunks in response to the given request,
+	 * that is if the requester accepts chunks and the file is larger than <code>flux.chunk.threshold</code> bytes.
+	 */
+	public static boolean isChunked(JSONObject request, IFile file) {
+		return request.optBoolean(ACCEPT_CHUNKS) && isLarge(file);
+	}
+
+	/**
+	 * Returns whether the file is larger than <code>flux.chunk.threshold</code> bytes.
+	 */
+	public static boolean isLarge(IFile file) {
+		if (file.getLocation() == null) {
+			return false;
+		}
+		long threshold = Configuration.getLong("flux.chunk.threshold", "FLUX_CHUNK_THRESHOLD", DEFAULT_CHUNK_THRESHOLD);
+		return file.getLocation().toFile().length() > threshold;
+	}
+
+	/**
+	 * Sends the content of the file as <code>getResourceChunk</code> messages and adds the transfer
+	 * details to the response, which has to be sent afterwards. Binary contents are sent as base64
+	 * to requesters that accept them (see {@link ResourceContents}).
+	 */
+	public static void sendChunks(IMessagingConnector messagingConnector, IFile file, JSONObject response, boolean acceptBinary) throws IOException, CoreException, JSONException {
+		String transferID = UUID.randomUUID().toString();
+		MessageDigest checksum = createDigest();
+		int index = acceptBinary && ResourceContents.isBinary(file)
+				? sendBinaryChunks(messagingConnector, file, response, transferID, checksum)
+				: sendTextChunks(messagingConnector, file, response, transferID, checksum);
+
+		response.put("transferID", transferID);
+		response.put("chunks", index);
+		response.put("checksum", Hex.encodeHexString(checksum.digest()));
+	}
+
+	private static int sendTextChunks(IMessagingConnector messagingConnector, IFile file, JSONObject response, String transferID,
+			MessageDigest checksum) throws IOException, CoreException, JSONException {
+		String charset = file.getCharset();
+		char[] buffer = new char[DEFAULT_CHUNK_SIZE];
+		int index = 0;
+
+		Reader reader = new InputStreamReader(file.getContents(), charset);
+		try {
+			int length = 0;
+			int read;
+			while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+				if (length < buffer.length) {
+					continue;
+				}
+				// a surrogate pair is never split across chunks
+				int carry = Character.isHighSurrogate(buffer[length - 1]) ? 1 : 0;
+				sendChunk(messagingConnector, response, transferID, charset, index++, new String(buffer, 0, length - carry), checksum);
+				buffer[0] = buffer[length - 1];
+				length = carry;
+			}
+			if (length > 0 || index == 0) {
+				sendChunk(messagingConnector, response, transferID, charset, index++, new String(buffer, 0, length), checksum);
+			}
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+		return index;
+	}
+
+	private static int sendBinaryChunks(IMessagingConnector messagingConnector, IFile file, JSONObject response, String transferID,
+			MessageDigest checksum) throws IOException, CoreException, JSONException {
+		// base64 turns three bytes into four characters
+		byte[] buffer = new byte[DEFAULT_CHUNK_SIZE / 4 * 3];
+		int index = 0;
+
+		InputStream input = file.getContents();
+		try {
+			int length;
+			while ((length = IOUtils.read(input, buffer)) > 0 || index == 0) {
+				String data = new String(Base64.encodeBase64(Arrays.copyOf(buffer, length)), "US-ASCII");
+				sendChunk(messagingConnector, response, transferID, null, index++, data, checksum);
+				if (length < buffer.length) {
+					break;
+				}
+			}
+		} finally {
+			IOUtils.closeQuietly(input);
+		}
+		response.put("encoding", ResourceContents.BASE64);
+		return index;
+	}
+
+	/**
+	 * Sends a chunk of text in the given charset, or of base64 encoded bytes if the charset is <code>null</code>.
+	 */
+	private static void sendChunk(IMessagingConnector messagingConnector, JSONObject response, String transferID, String charset,
+			int index, String data, MessageDigest checksum) throws JSONException {
+		checksum.update(data.getBytes(UTF_8));
+
+		JSONObject chunk = new JSONObject();
+		chunk.put("username", response.get("username"));
+		chunk.put("requestSenderID", response.get("requestSenderID"));
+		chunk.put("project", response.get("project"));
+		chunk.put("resource", response.get("resource"));
+		chunk.put("transferID", transferID);
+		chunk.put("index", index);
+		if (charset != null) {
+			chunk.put("charset", charset);
+		}
+		else {
+			chunk.put("encoding", ResourceContents.BASE64);
+		}
+		chunk.put("data", data);
+		messagingConnector.send(CHUNK_MESSAGE_TYPE, chunk);
+	}
+
+	/**
+	 * Writes a received chunk into the temporary file of its transfer. Chunks have to arrive in order,
+	 * a transfer with a missing chunk is discarded.
+	 */
+	public void addChunk(JSONObject chunk) {
+		try {
+			String transferID = chunk.getString("transferID");
+			int index = chunk.getInt("index");
+
+			IncomingTransfer transfer;
+			synchronized (incomingTransfers) {
+				transfer = incomingTransfers.get(transferID);
+				if (transfer == null) {
+					if (index != 0) {
+						return;
+					}
+					expireIncomingTransfers();
+					transfer = new IncomingTransfer(ResourceContents.BASE64.equals(chunk.optString("encoding")) ? null : chunk.getString("charset"));
+					incomingTransfers.put(transferID, transfer);
+				}
+			}
+
+			synchronized (transfer) {
+				if (transfer.failed) {
+					return;
+				}
+				if (index != transfer.received) {
+					Activator.log("Flux resource transfer " + transferID + " is missing chunk " + transfer.received + ", discarded");
+					transfer.fail();
+					return;
+				}
+				String data = chunk.getString("data");
+				transfer.checksum.update(data.getBytes(UTF_8));
+				transfer.write(data);
+				transfer.received++;
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the content of a chunked response, or <code>null</code> if not all of its chunks were
+	 * received intact. The temporary file is deleted when the returned stream is closed.
+	 */
+	public InputStream getContents(JSONObject response) throws JSONException {
+		String transferID = response.getString("transferID");
+		IncomingTransfer transfer;
+		synchronized (incomingTransfers) {
+			transfer = incomingTransfers.remove(transferID);
+		}
+		if (transfer == null) {
+			Activator.log("Flux resource transfer " + transferID + " has no chunks, discarded");
+			return null;
+		}
+
+		synchronized (transfer) {
+			try {
+				transfer.close();
+				String checksum = Hex.encodeHexString(transfer.checksum.digest());
+				if (!transfer.failed && transfer.received == response.getInt("chunks") && checksum.equals(response.getString("checksum"))) {
+					final File file = transfer.file;
+					return new FilterInputStream(new FileInputStream(file)) {
+						@Override
+						public void close() throws IOException {
+							super.close();
+							file.delete();
+						}
+					};
+				}
+				Activator.log("Flux resource transfer " + transferID + " is incomplete or corrupt, discarded");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			transfer.fail();
+			return null;
+		}
+	}
+
+	/**
+	 * Discards the received chunks of a transfer whose content is not needed.
+	 */
+	public void discard(String transferID) {
+		IncomingTransfer transfer;
+		synchronized (incomingTransfers) {
+			transfer = incomingTransfers.remove(transferID);
+		}
+		if (transfer != null) {
+			synchronized (transfer) {
+				transfer.fail();
+			}
+		}
+	}
+
+	/**
+	 * Discards all incomplete transfers.
+	 */
+	public void dispose() {
+		synchronized (incomingTransfers) {
+			for (IncomingTransfer transfer : incomingTransfers.values()) {
+				synchronized (transfer) {
+					transfer.fail();
+				}
+			}
+			incomingTransfers.clear();
+		}
+	}
+
+	// called with the incomingTransfers lock held
+	private void expireIncomingTransfers() {
+		long now = System.currentTimeMillis();
+		Iterator<IncomingTransfer> transfers = incomingTransfers.values().iterator();
+		while (transfers.hasNext()) {
+			IncomingTransfer transfer = transfers.next();
+			if (now - transfer.created > INCOMPLETE_TRANSFER_EXPIRY) {
+				synchronized (transfer) {
+					transfer.fail();
+				}
+				transfers.remove();
+			}
+		}
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class IncomingTransfer {
+
+		private final File file;
+		private final OutputStream output;
+		private final Writer writer;
+		private final MessageDigest checksum;
+		private final long created;
+		private int received;
+		private boolean failed;
+
+		/**
+		 * Creates a transfer of text in the given charset, or of base64 encoded bytes if the charset is <code>null</code>.
+		 */
+		public IncomingTransfer(String charset) throws IOException {
+			this.file = File.createTempFile("flux", ".transfer");
+			FileOutputStream fileOutput = null;
+			try {
+				fileOutput = new FileOutputStream(file);
+				this.output = new BufferedOutputStream(fileOutput);
+				this.writer = charset != null ? new OutputStreamWriter(output, charset) : null;
+			} catch (IOException e) {
+				IOUtils.closeQuietly(fileOutput);
+				file.delete();
+				throw e;
+			}
+			this.checksum = createDigest();
+			this.created = System.currentTimeMillis();
+		}
+
+		public void write(String data) throws IOException {
+			if (writer != null) {
+				writer.write(data);
+			}
+			else {
+				output.write(Base64.decodeBase64(data));
+			}
+		}
+
+		public void close() throws IOException {
+			if (writer != null) {
+				writer.close();
+			}
+			else {
+				output.close();
+			}
+		}
+
+		public void fail() {
+			failed = true;
+			IOUtils.closeQuietly(writer);
+			IOUtils.closeQuietly(output);
+			file.delete();
+		}
+
+	}
+
+}
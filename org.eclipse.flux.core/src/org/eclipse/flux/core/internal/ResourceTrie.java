@@ -0,0 +1,495 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The resources of a connected project as a tree of path segments, with the timestamp and hash of each
+ * resource. Paths are project relative and separated by <code>/</code>, the project itself is the empty path.
+ * <p>
+ * The tree keeps each (interned) segment once instead of full path strings, and keeps the timestamps in a
+ * <code>long</code> array and the hashes as 20 bytes in a <code>byte</code> array, both indexed by the number
+ * of the node. Hashes that are not SHA-1 hex strings are kept as they are. The hash of a folder is the cached
+ * digest of its content, it is cleared whenever a resource below the folder changes.
+ * <p>
+ * A resource can be known (as child of its folder) without being contained, until its timestamp is set.
+ * Reads can run concurrently, changes are exclusive.
+ *
+ * @author Martin Lippert
+ */
+public class ResourceTrie {
+
+	private static final int HASH_LENGTH = 20;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final Node[] NO_CHILDREN = new Node[0];
+
+	private static final byte CONTAINED = 1;
+	private static final byte FOLDER = 2;
+	private static final byte HASHED = 4;
+
+	private final ReadWriteLock lock;
+	private final Node root;
+
+	// indexed by the number of a node
+	private long[] timestamps;
+	private byte[] hashes;
+	private byte[] flags;
+	private final Map<Integer, String> otherHashes;
+
+	private int nodeCount;
+	private int[] freeNodes;
+	private int freeCount;
+
+	public ResourceTrie() {
+		this.lock = new ReentrantReadWriteLock();
+		this.timestamps = new long[64];
+		this.hashes = new byte[64 * HASH_LENGTH];
+		this.flags = new byte[64];
+		this.otherHashes = new HashMap<Integer, String>();
+		this.freeNodes = new int[16];
+		this.root = new Node("", null, newIndex());
+		this.flags[root.index] = FOLDER;
+	}
+
+	public boolean contains(String path) {
+		lock.readLock().lock();
+		try {
+			Node node = find(path);
+			return node != null && (flags[node.index] & CONTAINED) != 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean isFolder(String path) {
+		lock.readLock().lock();
+		try {
+			Node node = find(path);
+			return node != null && (flags[node.index] & FOLDER) != 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the timestamp of the resource, <code>0</code> if it is not contained.
+	 */
+	public long getTimestamp(String path) {
+		lock.readLock().lock();
+		try {
+			Node node = find(path);
+			return node != null && (flags[node.index] & CONTAINED) != 0 ? timestamps[node.index] : 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the timestamp of the resource, adding it as file if it isn't known yet.
+	 */
+	public void setTimestamp(String path, long timestamp) {
+		lock.writeLock().lock();
+		try {
+			Node node = create(path, false);
+			timestamps[node.index] = timestamp;
+			flags[node.index] |= CONTAINED;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the hash of a file or the cached digest of a folder, <code>null</code> if there is none.
+	 */
+	public String getHash(String path) {
+		lock.readLock().lock();
+		try {
+			Node node = find(path);
+			if (node == null || (flags[node.index] & HASHED) == 0) {
+				return null;
+			}
+			String otherHash = otherHashes.isEmpty() ? null : otherHashes.get(node.index);
+			return otherHash != null ? otherHash : toHex(node.index);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sets the hash of a file or the digest of a folder, the digests of the folders above are cleared.
+	 * A resource that isn't known yet is added as file.
+	 */
+	public void setHash(String path, String hash) {
+		lock.writeLock().lock();
+		try {
+			Node node = create(path, false);
+			otherHashes.remove(node.index);
+			if (hash == null) {
+				flags[node.index] &= ~HASHED;
+			}
+			else {
+				if (!fromHex(hash, node.index)) {
+					otherHashes.put(node.index, hash);
+				}
+				flags[node.index] |= HASHED;
+			}
+			invalidate(node.parent);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Clears the digests of the given folder and the folders above.
+	 */
+	public void invalidate(String path) {
+		lock.writeLock().lock();
+		try {
+			Node node = find(path);
+			if (node != null) {
+				if ((flags[node.index] & FOLDER) != 0) {
+					clearHash(node);
+				}
+				invalidate(node.parent);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a file, the folders above are added as well.
+	 */
+	public void addFile(String path) {
+		lock.writeLock().lock();
+		try {
+			create(path, false);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a folder, the folders above are added as well. A file at the path becomes a folder.
+	 */
+	public void addFolder(String path) {
+		lock.writeLock().lock();
+		try {
+			Node node = create(path, true);
+			if ((flags[node.index] & FOLDER) == 0) {
+				flags[node.index] |= FOLDER;
+				clearHash(node);
+				invalidate(node.parent);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes the resource and everything below it.
+	 */
+	public void remove(String path) {
+		lock.writeLock().lock();
+		try {
+			Node node = find(path);
+			if (node == null) {
+				return;
+			}
+			for (int i = 0; i < node.childCount; i++) {
+				release(node.children[i]);
+			}
+			node.children = NO_CHILDREN;
+			node.childCount = 0;
+
+			if (node == root) {
+				flags[root.index] = FOLDER;
+				otherHashes.remove(root.index);
+			}
+			else {
+				node.parent.removeChild(node);
+				release(node);
+				invalidate(node.parent);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the paths of the direct children of the folder, sorted by name.
+	 */
+	public List<String> getChildren(String path) {
+		lock.readLock().lock();
+		try {
+			Node node = find(path);
+			if (node == null || node.childCount == 0) {
+				return new ArrayList<String>(0);
+			}
+			List<String> children = new ArrayList<String>(node.childCount);
+			String prefix = node == root ? "" : path + "/";
+			for (int i = 0; i < node.childCount; i++) {
+				children.add(prefix + node.children[i].name);
+			}
+			return children;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the paths of the contained resources below the folder (including the folder itself), each folder
+	 * followed by its children sorted by name.
+	 */
+	public List<String> getPaths(String folderPath) {
+		return collect(folderPath, true, false);
+	}
+
+	/**
+	 * Returns the paths of the contained files below the folder that don't have a hash yet, in the order of
+	 * {@link #getPaths(String)}.
+	 */
+	public List<String> getUnhashedFiles(String folderPath) {
+		return collect(folderPath, false, true);
+	}
+
+	private List<String> collect(String folderPath, boolean includeFolders, boolean unhashedOnly) {
+		lock.readLock().lock();
+		try {
+			List<String> paths = new ArrayList<String>();
+			Node node = find(folderPath);
+			if (node != null) {
+				StringBuilder path = new StringBuilder(folderPath);
+				collect(node, path, paths, includeFolders, unhashedOnly);
+			}
+			return paths;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// called with the read lock held
+	private void collect(Node node, StringBuilder path, List<String> paths, boolean includeFolders, boolean unhashedOnly) {
+		byte nodeFlags = flags[node.index];
+		if ((nodeFlags & CONTAINED) != 0) {
+			boolean folder = (nodeFlags & FOLDER) != 0;
+			if (folder ? includeFolders : !unhashedOnly || (nodeFlags & HASHED) == 0) {
+				paths.add(path.toString());
+			}
+		}
+
+		int length = path.length();
+		for (int i = 0; i < node.childCount; i++) {
+			Node child = node.children[i];
+			if (length > 0) {
+				path.append('/');
+			}
+			path.append(child.name);
+			collect(child, path, paths, includeFolders, unhashedOnly);
+			path.setLength(length);
+		}
+	}
+
+	// called with a lock held, looks up the segments of the path without creating substrings
+	private Node find(String path) {
+		Node node = root;
+		int start = 0;
+		int length = path.length();
+		while (node != null && start < length) {
+			int end = path.indexOf('/', start);
+			if (end < 0) {
+				end = length;
+			}
+			node = node.findChild(path, start, end);
+			start = end + 1;
+		}
+		return node;
+	}
+
+	// called with the write lock held, the folders above the resource are added as well
+	private Node create(String path, boolean folder) {
+		Node node = root;
+		int start = 0;
+		int length = path.length();
+		while (start < length) {
+			int end = path.indexOf('/', start);
+			if (end < 0) {
+				end = length;
+			}
+			boolean last = end == length;
+			Node child = node.findChild(path, start, end);
+			if (child == null) {
+				child = new Node(path.substring(start, end).intern(), node, newIndex());
+				flags[child.index] = last && !folder ? 0 : FOLDER;
+				node.addChild(child);
+				invalidate(node);
+			}
+			else if (!last && (flags[child.index] & FOLDER) == 0) {
+				flags[child.index] |= FOLDER;
+				clearHash(child);
+				invalidate(node);
+			}
+			node = child;
+			start = end + 1;
+		}
+		return node;
+	}
+
+	// called with the write lock held, stops at the first folder without digest since the folders above have none either
+	private void invalidate(Node folder) {
+		while (folder != null && (flags[folder.index] & HASHED) != 0) {
+			clearHash(folder);
+			folder = folder.parent;
+		}
+	}
+
+	private void clearHash(Node node) {
+		flags[node.index] &= ~HASHED;
+		otherHashes.remove(node.index);
+	}
+
+	// called with the write lock held
+	private void release(Node node) {
+		for (int i = 0; i < node.childCount; i++) {
+			release(node.children[i]);
+		}
+		flags[node.index] = 0;
+		otherHashes.remove(node.index);
+		if (freeCount == freeNodes.length) {
+			freeNodes = Arrays.copyOf(freeNodes, freeCount * 2);
+		}
+		freeNodes[freeCount++] = node.index;
+	}
+
+	private int newIndex() {
+		if (freeCount > 0) {
+			return freeNodes[--freeCount];
+		}
+		if (nodeCount == timestamps.length) {
+			int capacity = nodeCount * 2;
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			hashes = Arrays.copyOf(hashes, capacity * HASH_LENGTH);
+			flags = Arrays.copyOf(flags, capacity);
+		}
+		return nodeCount++;
+	}
+
+	private String toHex(int index) {
+		char[] hex = new char[HASH_LENGTH * 2];
+		int offset = index * HASH_LENGTH;
+		for (int i = 0; i < HASH_LENGTH; i++) {
+			int b = hashes[offset + i] & 0xff;
+			hex[i * 2] = HEX[b >> 4];
+			hex[i * 2 + 1] = HEX[b & 0xf];
+		}
+		return new String(hex);
+	}
+
+	// stores a lower case SHA-1 hex string as bytes, returns false for other hashes
+	private boolean fromHex(String hash, int index) {
+		if (hash.length() != HASH_LENGTH * 2) {
+			return false;
+		}
+		for (int i = 0; i < hash.length(); i++) {
+			if (Character.digit(hash.charAt(i), 16) < 0 || Character.isUpperCase(hash.charAt(i))) {
+				return false;
+			}
+		}
+		int offset = index * HASH_LENGTH;
+		for (int i = 0; i < HASH_LENGTH; i++) {
+			hashes[offset + i] = (byte) (Character.digit(hash.charAt(i * 2), 16) << 4 | Character.digit(hash.charAt(i * 2 + 1), 16));
+		}
+		return true;
+	}
+
+	private static class Node {
+
+		private final String name;
+		private final Node parent;
+		private final int index;
+
+		// sorted by name
+		private Node[] children;
+		private int childCount;
+
+		public Node(String name, Node parent, int index) {
+			this.name = name;
+			this.parent = parent;
+			this.index = index;
+			this.children = NO_CHILDREN;
+		}
+
+		public Node findChild(String path, int start, int end) {
+			int position = search(path, start, end);
+			return position >= 0 ? children[position] : null;
+		}
+
+		public void addChild(Node child) {
+			int position = -search(child.name, 0, child.name.length()) - 1;
+			if (childCount == children.length) {
+				children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+			}
+			System.arraycopy(children, position, children, position + 1, childCount - position);
+			children[position] = child;
+			childCount++;
+		}
+
+		public void removeChild(Node child) {
+			int position = search(child.name, 0, child.name.length());
+			if (position >= 0) {
+				System.arraycopy(children, position + 1, children, position, childCount - position - 1);
+				children[--childCount] = null;
+			}
+		}
+
+		// binary search for the segment between start and end of the path, like Arrays.binarySearch
+		private int search(String path, int start, int end) {
+			int low = 0;
+			int high = childCount - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int comparison = compare(children[middle].name, path, start, end);
+				if (comparison < 0) {
+					low = middle + 1;
+				}
+				else if (comparison > 0) {
+					high = middle - 1;
+				}
+				else {
+					return middle;
+				}
+			}
+			return -(low + 1);
+		}
+
+		// compares like String.compareTo(), without creating the substring
+		private static int compare(String name, String path, int start, int end) {
+			int length = Math.min(name.length(), end - start);
+			for (int i = 0; i < length; i++) {
+				char c1 = name.charAt(i);
+				char c2 = path.charAt(start + i);
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+			}
+			return name.length() - (end - start);
+		}
+
+	}
+
+}
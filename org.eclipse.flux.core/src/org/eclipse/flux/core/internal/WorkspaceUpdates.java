@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IWorkspaceRunnable;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+/**
+ * Applies changes received from other participants to the workspace in batches. The changes of a
+ * project are queued and applied together by a workspace job that holds the project as scheduling
+ * rule, so a burst of remote changes results in a single resource delta (and a single auto-build)
+ * instead of one per file.
+ * <p>
+ * Changes are applied in the order in which they were queued, a change that fails doesn't keep
+ * the following ones from being applied. At most <code>flux.apply.batchSize</code> changes are
+ * applied in one workspace operation, the job waits <code>flux.apply.delay</code> milliseconds
+ * after the first change of a batch for further changes to arrive.
+ * <p>
+ * Once disposed, queued changes are dropped and new changes are ignored.
+ *
+ * @author Martin Lippert
+ */
+public class WorkspaceUpdates {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final long DEFAULT_DELAY = 50;
+
+	private final int batchSize;
+	private final long delay;
+	private final ConcurrentMap<String, UpdateJob> jobs;
+	private volatile boolean disposed;
+
+	public WorkspaceUpdates(int batchSize, long delay) {
+		this.batchSize = batchSize;
+		this.delay = delay;
+		this.jobs = new ConcurrentHashMap<String, UpdateJob>();
+	}
+
+	/**
+	 * Creates the updates with the limits from the <code>flux.apply.batchSize</code> and
+	 * <code>flux.apply.delay</code> (in milliseconds) system properties.
+	 */
+	public static WorkspaceUpdates createDefault() {
+		int batchSize = Configuration.getInt("flux.apply.batchSize", "FLUX_APPLY_BATCH_SIZE", DEFAULT_BATCH_SIZE);
+		long delay = Configuration.getLong("flux.apply.delay", "FLUX_APPLY_DELAY", DEFAULT_DELAY);
+		return new WorkspaceUpdates(Math.max(1, batchSize), Math.max(0, delay));
+	}
+
+	/**
+	 * Queues a change of the given project, it is applied with the project as scheduling rule.
+	 * The change should check the state of the resources it changes, since earlier changes may
+	 * still be queued when it is created.
+	 */
+	public void apply(IProject project, IWorkspaceRunnable update) {
+		if (disposed) {
+			return;
+		}
+		UpdateJob job = jobs.get(project.getName());
+		if (job == null) {
+			UpdateJob newJob = new UpdateJob(project);
+			job = jobs.putIfAbsent(project.getName(), newJob);
+			if (job == null) {
+				job = newJob;
+			}
+		}
+		job.add(update);
+	}
+
+	/**
+	 * Drops the queued changes, cancels the jobs and waits for the changes that are being applied.
+	 */
+	public void dispose() {
+		disposed = true;
+		Job current = Job.getJobManager().currentJob();
+		for (UpdateJob job : jobs.values()) {
+			job.updates.clear();
+			job.cancel();
+			if (job == current) {
+				continue;
+			}
+			try {
+				job.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		jobs.clear();
+	}
+
+	private class UpdateJob extends WorkspaceJob {
+
+		private final Queue<IWorkspaceRunnable> updates;
+		private final AtomicBoolean scheduled;
+
+		public UpdateJob(IProject project) {
+			super("Apply remote changes to " + project.getName());
+			this.updates = new ConcurrentLinkedQueue<IWorkspaceRunnable>();
+			this.scheduled = new AtomicBoolean(false);
+			setRule(project);
+			setSystem(true);
+		}
+
+		public void add(IWorkspaceRunnable update) {
+			updates.add(update);
+			if (scheduled.compareAndSet(false, true)) {
+				schedule(delay);
+			}
+		}
+
+		@Override
+		public IStatus runInWorkspace(IProgressMonitor monitor) throws CoreException {
+			scheduled.set(false);
+
+			IWorkspaceRunnable update;
+			int applied = 0;
+			while (applied < batchSize && !monitor.isCanceled() && (update = updates.poll()) != null) {
+				try {
+					update.run(monitor);
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				applied++;
+			}
+
+			if (!updates.isEmpty() && !disposed && scheduled.compareAndSet(false, true)) {
+				schedule();
+			}
+			return Status.OK_STATUS;
+		}
+
+	}
+
+}
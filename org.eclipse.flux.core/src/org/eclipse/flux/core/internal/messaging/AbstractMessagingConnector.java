@@ -10,15 +10,23 @@
 *******************************************************************************/
 package org.eclipse.flux.core.internal.messaging;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentMap;
 
 import org.eclipse.flux.core.IChannelListener;
 import org.eclipse.flux.core.IConnectionListener;
+import org.eclipse.flux.core.IMessageCodec;
 import org.eclipse.flux.core.IMessageHandler;
 import org.eclipse.flux.core.IMessagingConnector;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
@@ -26,14 +34,55 @@ import org.json.JSONObject;
  */
 public abstract class AbstractMessagingConnector implements IMessagingConnector {
 	
+	public static final String ACCEPT_COMPRESSION = CompressionCodec.ACCEPT_COMPRESSION;
+	public static final int DEFAULT_COMPRESSION_THRESHOLD = CompressionCodec.DEFAULT_THRESHOLD;
+	
+	private static final int PEER_LIMIT = 1024;
+	
 	private Collection<IChannelListener> channelListeners;
 	private Collection<IConnectionListener> connectionListeners;
-	private ConcurrentMap<String, Collection<IMessageHandler>> messageHandlers;
+	private ConcurrentMap<String, MessageHandlerIndex> messageHandlers;
+	private MessageDispatcher dispatcher;
+	private MessageMetrics metrics;
+	private MessageFragments fragments;
+	private ConcurrentMap<String, IMessageCodec> messageCodecs;
+	private CompressionCodec compressionCodec;
+	private int compressionThreshold;
+	private Map<String, String> compressionPeers;
 	
 	public AbstractMessagingConnector() {
+		this(MessageDispatcher.createDefault());
+	}
+	
+	public AbstractMessagingConnector(MessageDispatcher dispatcher) {
 		this.connectionListeners = new ConcurrentLinkedDeque<IConnectionListener>();
 		this.channelListeners = new ConcurrentLinkedDeque<IChannelListener>();
 		this.messageHandlers = new ConcurrentHashMap<>();
+		this.dispatcher = dispatcher;
+		this.metrics = MessageMetrics.getDefault();
+		this.fragments = new MessageFragments();
+		this.messageCodecs = new ConcurrentHashMap<>();
+		
+		for (String compression : CompressionCodec.SUPPORTED.split(",")) {
+			this.messageCodecs.put(compression, CompressionCodec.create(compression));
+		}
+		this.compressionCodec = CompressionCodec.createDefault();
+		this.compressionThreshold = CompressionCodec.getDefaultThreshold();
+		this.compressionPeers = createPeerMap();
+	}
+	
+	/**
+	 * Announcements of peers, remembered per requestSenderID for the most recently seen peers
+	 */
+	private static Map<String, String> createPeerMap() {
+		return new LinkedHashMap<String, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+				return size() > PEER_LIMIT;
+			}
+		};
 	}
 	
 	@Override
@@ -48,15 +97,126 @@ public abstract class AbstractMessagingConnector implements IMessagingConnector
 	
 	@Override
 	public void addMessageHandler(IMessageHandler messageHandler) {
-		this.messageHandlers.putIfAbsent(messageHandler.getMessageType(), new ConcurrentLinkedDeque<IMessageHandler>());
+		this.messageHandlers.putIfAbsent(messageHandler.getMessageType(), new MessageHandlerIndex());
 		this.messageHandlers.get(messageHandler.getMessageType()).add(messageHandler);
 	}
 
 	@Override
 	public void removeMessageHandler(IMessageHandler messageHandler) {
-		this.messageHandlers.get(messageHandler.getMessageType()).remove(messageHandler);
+		MessageHandlerIndex handlers = this.messageHandlers.get(messageHandler.getMessageType());
+		if (handlers != null) {
+			handlers.remove(messageHandler);
+		}
+	}
+	
+	protected boolean hasMessageHandler(String messageType) {
+		MessageHandlerIndex handlers = this.messageHandlers.get(messageType);
+		return handlers != null && !handlers.isEmpty();
+	}
+	
+	protected MessageDispatcher getDispatcher() {
+		return this.dispatcher;
+	}
+	
+	protected MessageMetrics getMetrics() {
+		return this.metrics;
 	}
 	
+	/**
+	 * Registers a codec for decoding incoming frames.
+	 */
+	public void addMessageCodec(IMessageCodec codec) {
+		this.messageCodecs.put(codec.getName(), codec);
+	}
+
+	public void removeMessageCodec(IMessageCodec codec) {
+		this.messageCodecs.remove(codec.getName(), codec);
+	}
+
+	/**
+	 * Compresses a large response if the requester announced that it accepts the compression of this
+	 * connection (<code>flux.compression</code>, <code>deflate-fast</code> by default or <code>deflate</code>,
+	 * <code>none</code> switches compression off). Requests announce the accepted compressions
+	 * in a copy of the request, the announcement is remembered per requester, so it applies to all responses
+	 * to this requester. Messages below <code>flux.compression.threshold</code> characters are sent as they are,
+	 * their size is estimated without building their JSON text.
+	 */
+	protected JSONObject compressOutgoingMessage(String messageType, JSONObject message) {
+		try {
+			String peer = message.optString("requestSenderID", null);
+			if (peer == null) {
+				return message.has("callback_id") ? announce(message) : message;
+			}
+			if (compressionCodec == null || CompressionCodec.estimateLength(message, compressionThreshold) < compressionThreshold) {
+				return message;
+			}
+
+			String accepted;
+			synchronized (compressionPeers) {
+				accepted = compressionPeers.get(peer);
+			}
+			if (accepted == null || !Arrays.asList(accepted.split(",")).contains(compressionCodec.getName())) {
+				return message;
+			}
+
+			String json = message.toString();
+			if (json.length() < compressionThreshold) {
+				return message;
+			}
+			long start = System.nanoTime();
+			JSONObject frame = compressionCodec.compress(message, json);
+			metrics.messageCompressed(messageType, json.length(), frame != null ? frame.getString("payload").length() : json.length(), System.nanoTime() - start);
+			return frame != null ? frame : message;
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return message;
+		}
+	}
+
+	/**
+	 * Returns a copy of the request with the accepted compressions, the request of the caller is not changed.
+	 */
+	private JSONObject announce(JSONObject request) throws JSONException {
+		if (compressionCodec == null) {
+			return request;
+		}
+		JSONObject announcement = new JSONObject(request, JSONObject.getNames(request));
+		announcement.put(ACCEPT_COMPRESSION, CompressionCodec.SUPPORTED);
+		return announcement;
+	}
+
+	protected JSONObject decodeIncomingMessage(String messageType, JSONObject message) throws JSONException {
+		String codecName = message.optString(IMessageCodec.CODEC_FIELD, null);
+		if (codecName == null) {
+			rememberAnnouncements(message);
+			return message;
+		}
+		IMessageCodec codec = this.messageCodecs.get(codecName);
+		if (codec == null) {
+			throw new JSONException("Unknown message codec: " + codecName);
+		}
+		if (codec instanceof CompressionCodec) {
+			long start = System.nanoTime();
+			JSONObject decoded = codec.decode(messageType, message);
+			metrics.messageDecompressed(messageType, System.nanoTime() - start);
+			return decoded;
+		}
+		return codec.decode(messageType, message);
+	}
+
+	private void rememberAnnouncements(JSONObject message) {
+		String peer = message.optString("requestSenderID", null);
+		if (peer == null) {
+			return;
+		}
+		String acceptedCompression = message.optString(ACCEPT_COMPRESSION, null);
+		if (acceptedCompression != null) {
+			synchronized (compressionPeers) {
+				compressionPeers.put(peer, acceptedCompression);
+			}
+		}
+	}
+
 	protected void notifyChannelConnected(String userChannel) {
 		for (IChannelListener channelListener : channelListeners) {
 			try {
@@ -107,15 +267,102 @@ public abstract class AbstractMessagingConnector implements IMessagingConnector
 		connectionListeners.remove(connectionListener);
 	}
 
-	protected void handleIncomingMessage(final String messageType, final JSONObject message) {
-		Collection<IMessageHandler> handlers = AbstractMessagingConnector.this.messageHandlers.get(messageType);
-		if (handlers != null) {
-			for (IMessageHandler handler : handlers) {
-				if (handler.canHandle(messageType, message)) {
-					handler.handleMessage(messageType, message);
+	/**
+	 * Hands an incoming message over to the dispatcher, the handlers are executed on
+	 * its worker threads and not on the thread that received the message.
+	 */
+	protected void handleIncomingMessage(final String messageType, JSONObject incomingMessage) {
+		if (MessageBatcher.BATCH_MESSAGE_TYPE.equals(messageType)) {
+			handleIncomingBatch(incomingMessage);
+			return;
+		}
+		metrics.messageReceived(messageType, incomingMessage);
+		if (MessageFragments.FRAGMENT_MESSAGE_TYPE.equals(messageType)) {
+			handleIncomingFragment(incomingMessage);
+			return;
+		}
+
+		final JSONObject message;
+		try {
+			message = decodeIncomingMessage(messageType, incomingMessage);
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return;
+		}
+
+		final MessageHandlerIndex handlers = AbstractMessagingConnector.this.messageHandlers.get(messageType);
+		if (handlers != null && !handlers.isEmpty()) {
+			dispatch(MessageDispatcher.getOrderingKey(messageType, message), MessagePriority.of(messageType), new Runnable() {
+				@Override
+				public void run() {
+					List<IMessageHandler> candidates = new ArrayList<IMessageHandler>();
+					handlers.collectCandidates(message, candidates);
+					for (IMessageHandler handler : candidates) {
+						try {
+							if (handler.canHandle(messageType, message)) {
+								long start = System.nanoTime();
+								handler.handleMessage(messageType, message);
+								metrics.handlerExecuted(messageType, System.nanoTime() - start);
+							}
+						} catch (Throwable t) {
+							t.printStackTrace();
+						}
+					}
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Queues the handling of an incoming message on the dispatcher, subclasses decide whether the
+	 * receiving thread may wait for room in the queue.
+	 */
+	protected void dispatch(String key, MessagePriority priority, Runnable task) {
+		dispatcher.dispatch(key, priority, task);
+	}
+	
+	/**
+	 * Unpacks a batch envelope and handles the contained messages in their original order.
+	 */
+	protected void handleIncomingBatch(JSONObject batch) {
+		JSONArray messages = batch.optJSONArray("messages");
+		if (messages == null) {
+			return;
+		}
+		String senderID = batch.optString("senderID", null);
+		for (int i = 0; i < messages.length(); i++) {
+			try {
+				JSONObject entry = messages.getJSONObject(i);
+				JSONObject message = entry.getJSONObject("message");
+				if (senderID != null && !message.has("senderID")) {
+					message.put("senderID", senderID);
+				}
+				handleIncomingMessage(entry.getString("type"), message);
+			} catch (JSONException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	/**
+	 * Collects the fragments of a large response and handles the response once it is complete.
+	 */
+	protected void handleIncomingFragment(JSONObject fragment) {
+		try {
+			JSONObject message = fragments.add(fragment);
+			if (message != null) {
+				if (fragment.has("responseSenderID") && !message.has("responseSenderID")) {
+					message.put("responseSenderID", fragment.get("responseSenderID"));
 				}
+				handleIncomingMessage(fragment.getString("type"), message);
 			}
+		} catch (JSONException e) {
+			e.printStackTrace();
 		}
 	}
 	
+	public void dispose() {
+		dispatcher.shutdown();
+	}
+	
 }
@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.flux.core.IChannelListener;
+import org.eclipse.flux.core.IConnectionListener;
+import org.eclipse.flux.core.IMessageCodec;
+import org.eclipse.flux.core.IMessageHandler;
+import org.eclipse.flux.core.IMessagingConnector;
+import org.json.JSONObject;
+
+/**
+ * Messaging endpoint of a single in-JVM participant, created by a {@link LoopbackMessagingHub}.
+ * <p>
+ * Message handlers are registered with the hub (for messages of the other local participants) and
+ * with the remote connector (for messages coming from the broker). Connection state, channels and
+ * listeners are those of the remote connector.
+ * <p>
+ * Messages from the other local participants are handed to the dispatcher without ever waiting
+ * for room, the sender is an application or dispatcher thread of this process.
+ *
+ * @author Martin Lippert
+ */
+public class LoopbackMessagingConnector extends AbstractMessagingConnector implements IMessagingConnector {
+
+	private final LoopbackMessagingHub hub;
+	private final String endpointID;
+	private final AbstractMessagingConnector remoteConnector;
+	private final Set<IMessageHandler> remoteHandlers;
+
+	protected LoopbackMessagingConnector(LoopbackMessagingHub hub, String endpointID, AbstractMessagingConnector remoteConnector) {
+		super(remoteConnector.getDispatcher());
+		this.hub = hub;
+		this.endpointID = endpointID;
+		this.remoteConnector = remoteConnector;
+		this.remoteHandlers = Collections.newSetFromMap(new ConcurrentHashMap<IMessageHandler, Boolean>());
+	}
+
+	public String getEndpointID() {
+		return endpointID;
+	}
+
+	@Override
+	public void send(String messageType, JSONObject message) {
+		hub.send(this, messageType, message);
+	}
+
+	@Override
+	public void addMessageHandler(IMessageHandler messageHandler) {
+		super.addMessageHandler(messageHandler);
+		remoteConnector.addMessageHandler(messageHandler);
+		remoteHandlers.add(messageHandler);
+	}
+
+	@Override
+	public void removeMessageHandler(IMessageHandler messageHandler) {
+		super.removeMessageHandler(messageHandler);
+		remoteConnector.removeMessageHandler(messageHandler);
+		remoteHandlers.remove(messageHandler);
+	}
+
+	@Override
+	public boolean isConnected() {
+		return remoteConnector.isConnected();
+	}
+
+	@Override
+	public String getChannel() {
+		return remoteConnector.getChannel();
+	}
+
+	@Override
+	public void connect() {
+		remoteConnector.connect();
+	}
+
+	@Override
+	public void disconnect() {
+		remoteConnector.disconnect();
+	}
+
+	@Override
+	public void connectChannel(String channel) {
+		remoteConnector.connectChannel(channel);
+	}
+
+	@Override
+	public void addConnectionListener(IConnectionListener connectionListener) {
+		remoteConnector.addConnectionListener(connectionListener);
+	}
+
+	@Override
+	public void removeConnectionListener(IConnectionListener connectionListener) {
+		remoteConnector.removeConnectionListener(connectionListener);
+	}
+
+	@Override
+	public void addChannelListener(IChannelListener channelListener) {
+		remoteConnector.addChannelListener(channelListener);
+	}
+
+	@Override
+	public void removeChannelListener(IChannelListener channelListener) {
+		remoteConnector.removeChannelListener(channelListener);
+	}
+
+	@Override
+	public void addMessageCodec(IMessageCodec codec) {
+		remoteConnector.addMessageCodec(codec);
+	}
+
+	@Override
+	public void removeMessageCodec(IMessageCodec codec) {
+		remoteConnector.removeMessageCodec(codec);
+	}
+
+	@Override
+	protected void dispatch(String key, MessagePriority priority, Runnable task) {
+		getDispatcher().offer(key, priority, task);
+	}
+
+	/**
+	 * Detaches this endpoint from the hub and its handlers from the remote connector, the dispatcher
+	 * is shared with the remote connector and keeps running.
+	 */
+	@Override
+	public void dispose() {
+		hub.remove(this);
+		for (IMessageHandler messageHandler : remoteHandlers) {
+			remoteConnector.removeMessageHandler(messageHandler);
+		}
+		remoteHandlers.clear();
+	}
+
+}
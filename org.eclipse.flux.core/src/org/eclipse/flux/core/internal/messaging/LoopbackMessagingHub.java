@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONString;
+import org.json.JSONTokener;
+
+/**
+ * Connects the participants that live in the same JVM (repository, live edit coordinator, services).
+ * <p>
+ * Each participant gets its own {@link LoopbackMessagingConnector} endpoint. A request sent by one endpoint
+ * is handed directly to the handlers of the other endpoints - without serialization and without the
+ * round trip to the broker - and is still forwarded to the broker for the remote participants. Responses
+ * are delivered only to the endpoint that sent the request. Broadcasts (messages without a callback ID)
+ * are only forwarded: the broker never delivers a message back to the connection that sent it, so the
+ * participants that share this connection don't receive each other's broadcasts either.
+ * <p>
+ * Local messages are queued on the dispatcher of the receiving endpoint, the sender never runs the
+ * handlers of other participants. Values written by a {@link org.eclipse.flux.core.JSONStreamWriter}
+ * are parsed for the local handlers, so they see the same message as remote participants.
+ *
+ * @author Martin Lippert
+ */
+public class LoopbackMessagingHub {
+
+	private static final String ENDPOINT_ID_PREFIX = "loopback-";
+
+	private final AbstractMessagingConnector remoteConnector;
+	private final ConcurrentMap<String, LoopbackMessagingConnector> endpoints;
+	private final AtomicInteger endpointCount;
+
+	public LoopbackMessagingHub(AbstractMessagingConnector remoteConnector) {
+		this.remoteConnector = remoteConnector;
+		this.endpoints = new ConcurrentHashMap<String, LoopbackMessagingConnector>();
+		this.endpointCount = new AtomicInteger(0);
+	}
+
+	public LoopbackMessagingConnector createEndpoint() {
+		String endpointID = ENDPOINT_ID_PREFIX + endpointCount.incrementAndGet();
+		LoopbackMessagingConnector endpoint = new LoopbackMessagingConnector(this, endpointID, remoteConnector);
+		endpoints.put(endpointID, endpoint);
+		return endpoint;
+	}
+
+	protected void send(LoopbackMessagingConnector sender, String messageType, JSONObject message) {
+		String requestSenderID = message.optString("requestSenderID", null);
+
+		if (requestSenderID != null) {
+			// response (or a message addressed to a single participant), deliver it only to the requester
+			LoopbackMessagingConnector requester = endpoints.get(requestSenderID);
+			if (requester != null) {
+				requester.handleIncomingMessage(messageType, parseWrittenValues(message));
+			}
+			else if (!requestSenderID.startsWith(ENDPOINT_ID_PREFIX)) {
+				remoteConnector.send(messageType, message);
+			}
+			return;
+		}
+
+		if (isRequest(message)) {
+			JSONObject localMessage = null;
+			for (LoopbackMessagingConnector endpoint : endpoints.values()) {
+				if (!sender.getEndpointID().equals(endpoint.getEndpointID()) && endpoint.hasMessageHandler(messageType)) {
+					if (localMessage == null) {
+						localMessage = copyWithSender(message, sender.getEndpointID());
+					}
+					endpoint.handleIncomingMessage(messageType, localMessage);
+				}
+			}
+		}
+
+		remoteConnector.send(messageType, message);
+	}
+
+	private static boolean isRequest(JSONObject message) {
+		return message.has("callback_id");
+	}
+
+	private JSONObject copyWithSender(JSONObject message, String senderID) {
+		try {
+			String[] names = JSONObject.getNames(message);
+			JSONObject copy = names != null ? new JSONObject(message, names) : new JSONObject();
+			copy.put("requestSenderID", senderID);
+			return parseWrittenValues(copy);
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return message;
+		}
+	}
+
+	private JSONObject parseWrittenValues(JSONObject message) {
+		String[] names = JSONObject.getNames(message);
+		if (names == null) {
+			return message;
+		}
+		try {
+			JSONObject parsed = message;
+			for (String name : names) {
+				Object value = message.opt(name);
+				if (value instanceof JSONString) {
+					if (parsed == message) {
+						parsed = new JSONObject(message, names);
+					}
+					parsed.put(name, new JSONTokener(((JSONString) value).toJSONString()).nextValue());
+				}
+			}
+			return parsed;
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return message;
+		}
+	}
+
+	protected void remove(LoopbackMessagingConnector endpoint) {
+		endpoints.remove(endpoint.getEndpointID(), endpoint);
+	}
+
+	/**
+	 * Disposes all endpoints, the remote connector is left alone.
+	 */
+	public void dispose() {
+		for (LoopbackMessagingConnector endpoint : endpoints.values()) {
+			endpoint.dispose();
+		}
+	}
+
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.flux.core.internal.Configuration;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Packs broadcast messages that are sent within a short time window into a single
+ * <code>messageBatch</code> envelope frame. Only broadcast messages of the same user are
+ * packed together, so that the broker can route the envelope like the messages it contains.
+ * <p>
+ * Sending a message that can't be batched flushes the pending batch first, so the order
+ * in which messages are sent is preserved.
+ *
+ * @author Martin Lippert
+ */
+public class MessageBatcher {
+
+	public static final String BATCH_MESSAGE_TYPE = "messageBatch";
+
+	public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+	public static final long DEFAULT_MAX_DELAY = 20;
+
+	private static final Set<String> BATCHABLE_TYPES = new HashSet<String>(Arrays.asList(
+			"resourceCreated",
+			"resourceChanged",
+			"resourceDeleted",
+			"resourceStored",
+			"metadataChanged",
+			"metadataDelta"
+	));
+
+	public interface IMessageSender {
+		void sendNow(String messageType, JSONObject message);
+	}
+
+	private final IMessageSender sender;
+	private final int maxBatchSize;
+	private final long maxDelay;
+	private final ScheduledExecutorService timer;
+
+	private JSONArray pendingMessages;
+	private String pendingUsername;
+	private long batchGeneration;
+
+	public MessageBatcher(IMessageSender sender, int maxBatchSize, long maxDelay) {
+		this.sender = sender;
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelay = maxDelay;
+		this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Flux message batcher");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Creates a batcher if batching is switched on via the <code>flux.batch.enabled</code> system property,
+	 * using <code>flux.batch.maxSize</code> and <code>flux.batch.maxDelay</code> (in milliseconds) as limits.
+	 * Returns <code>null</code> if batching is switched off (the default).
+	 */
+	public static MessageBatcher createDefault(IMessageSender sender) {
+		if (!Configuration.getBoolean("flux.batch.enabled", "FLUX_BATCH_ENABLED", false)) {
+			return null;
+		}
+		int maxBatchSize = Configuration.getInt("flux.batch.maxSize", "FLUX_BATCH_MAX_SIZE", DEFAULT_MAX_BATCH_SIZE);
+		long maxDelay = Configuration.getLong("flux.batch.maxDelay", "FLUX_BATCH_MAX_DELAY", DEFAULT_MAX_DELAY);
+		return new MessageBatcher(sender, Math.max(1, maxBatchSize), Math.max(0, maxDelay));
+	}
+
+	public static boolean isBatchable(String messageType, JSONObject message) {
+		return BATCHABLE_TYPES.contains(messageType) && message.has("username");
+	}
+
+	public synchronized void send(String messageType, JSONObject message) {
+		if (!isBatchable(messageType, message)) {
+			flush();
+			sender.sendNow(messageType, message);
+			return;
+		}
+
+		try {
+			String username = message.getString("username");
+			if (pendingMessages != null && !username.equals(pendingUsername)) {
+				flush();
+			}
+
+			JSONObject entry = new JSONObject();
+			entry.put("type", messageType);
+			entry.put("message", message);
+
+			if (pendingMessages == null) {
+				pendingMessages = new JSONArray();
+				pendingUsername = username;
+				scheduleFlush(batchGeneration);
+			}
+			pendingMessages.put(entry);
+
+			if (pendingMessages.length() >= maxBatchSize) {
+				flush();
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public synchronized void flush() {
+		if (pendingMessages == null) {
+			return;
+		}
+
+		JSONArray messages = pendingMessages;
+		String username = pendingUsername;
+		pendingMessages = null;
+		pendingUsername = null;
+		batchGeneration++;
+
+		try {
+			if (messages.length() == 1) {
+				JSONObject entry = messages.getJSONObject(0);
+				sender.sendNow(entry.getString("type"), entry.getJSONObject("message"));
+			} else {
+				JSONObject batch = new JSONObject();
+				batch.put("username", username);
+				batch.put("messages", messages);
+				sender.sendNow(BATCH_MESSAGE_TYPE, batch);
+			}
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void scheduleFlush(final long generation) {
+		timer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				synchronized (MessageBatcher.this) {
+					if (generation == batchGeneration) {
+						flush();
+					}
+				}
+			}
+		}, maxDelay, TimeUnit.MILLISECONDS);
+	}
+
+	public void dispose() {
+		flush();
+		timer.shutdown();
+	}
+
+}
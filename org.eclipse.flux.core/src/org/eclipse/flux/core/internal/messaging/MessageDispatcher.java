@@ -0,0 +1,346 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.flux.core.Activator;
+import org.eclipse.flux.core.internal.Configuration;
+import org.json.JSONObject;
+
+/**
+ * Runs incoming message handlers off the socket thread.
+ * <p>
+ * Messages are assigned a key (project and resource if present, the message type otherwise).
+ * Messages with the same key are executed one after the other in arrival order, messages with
+ * different keys are executed in parallel on a bounded worker pool. The total number of queued
+ * messages is limited, the {@link RejectionPolicy} decides what happens when that limit is reached.
+ * <p>
+ * Keys waiting for a worker are served by the {@link MessagePriority} of their next message, so
+ * interactive messages don't wait behind a burst of bulk messages for other resources. A key that
+ * is busy with bulk messages gives up its worker as soon as a more urgent key is waiting.
+ * <p>
+ * The dispatcher never waits for room on its own worker threads: a handler that sends a message
+ * which is dispatched in the same process (see {@link #offer(String, MessagePriority, Runnable)})
+ * would otherwise wait for itself while the queue is full.
+ *
+ * @author Martin Lippert
+ */
+public class MessageDispatcher {
+
+	public enum RejectionPolicy {
+		/** block the thread that delivers the message until there is room again, nothing is dropped */
+		BLOCK,
+		/** drop the message that does not fit anymore */
+		DISCARD,
+		/** reject the message with a {@link RejectedExecutionException} */
+		ABORT
+	}
+
+	public static final int DEFAULT_QUEUE_LIMIT = 10000;
+	public static final long DEFAULT_BLOCK_WARNING_INTERVAL = 1000;
+
+	private static final int FAIRNESS_BATCH_SIZE = 64;
+
+	private final ThreadPoolExecutor workers;
+	private final AtomicLong submissions;
+	private final Map<String, SerialExecutor> serialExecutors;
+	private final Semaphore queueCapacity;
+	private final RejectionPolicy rejectionPolicy;
+	private final long blockWarningInterval;
+
+	public MessageDispatcher(int threads, int queueLimit, RejectionPolicy rejectionPolicy) {
+		this(threads, queueLimit, rejectionPolicy, DEFAULT_BLOCK_WARNING_INTERVAL);
+	}
+
+	/**
+	 * Creates a dispatcher, with the {@link RejectionPolicy#BLOCK} policy a warning is logged every
+	 * <code>blockWarningInterval</code> milliseconds that a message waits for room.
+	 */
+	public MessageDispatcher(int threads, int queueLimit, RejectionPolicy rejectionPolicy, long blockWarningInterval) {
+		this.serialExecutors = new HashMap<String, SerialExecutor>();
+		this.queueCapacity = new Semaphore(queueLimit);
+		this.rejectionPolicy = rejectionPolicy;
+		this.blockWarningInterval = blockWarningInterval;
+		this.submissions = new AtomicLong();
+
+		// the work queue only ever holds one drain task per active key, the message limit is enforced by queueCapacity
+		this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new DispatcherThread(runnable, "Flux message dispatcher " + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.workers.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Creates a dispatcher configured by the <code>flux.dispatch.threads</code>, <code>flux.dispatch.queueLimit</code>,
+	 * <code>flux.dispatch.rejectionPolicy</code> and <code>flux.dispatch.blockWarningInterval</code> (in milliseconds)
+	 * system properties (or the corresponding environment variables).
+	 */
+	public static MessageDispatcher createDefault() {
+		int threads = Configuration.getInt("flux.dispatch.threads", "FLUX_DISPATCH_THREADS", Runtime.getRuntime().availableProcessors());
+		int queueLimit = Configuration.getInt("flux.dispatch.queueLimit", "FLUX_DISPATCH_QUEUE_LIMIT", DEFAULT_QUEUE_LIMIT);
+		String policy = Configuration.getString("flux.dispatch.rejectionPolicy", "FLUX_DISPATCH_REJECTION_POLICY", RejectionPolicy.BLOCK.name());
+		long blockWarningInterval = Configuration.getLong("flux.dispatch.blockWarningInterval", "FLUX_DISPATCH_BLOCK_WARNING_INTERVAL", DEFAULT_BLOCK_WARNING_INTERVAL);
+
+		RejectionPolicy rejectionPolicy = RejectionPolicy.BLOCK;
+		try {
+			rejectionPolicy = RejectionPolicy.valueOf(policy.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			Configuration.logMalformed("flux.dispatch.rejectionPolicy", policy, rejectionPolicy);
+		}
+
+		return new MessageDispatcher(Math.max(1, threads), Math.max(1, queueLimit), rejectionPolicy, Math.max(1, blockWarningInterval));
+	}
+
+	/**
+	 * Computes the ordering key of a message: all messages for the same resource of a project share a key.
+	 */
+	public static String getOrderingKey(String messageType, JSONObject message) {
+		String project = message.optString("project", null);
+		if (project == null) {
+			return messageType;
+		}
+		String resource = message.optString("resource", null);
+		return resource == null ? project : project + "/" + resource;
+	}
+
+	public void dispatch(String key, Runnable task) {
+		dispatch(key, MessagePriority.NORMAL, task);
+	}
+
+	public void dispatch(String key, MessagePriority priority, Runnable task) {
+		if (workers.isShutdown()) {
+			return;
+		}
+		if (Thread.currentThread() instanceof DispatcherThread) {
+			offer(key, priority, task);
+			return;
+		}
+		if (!acquire(key)) {
+			Activator.log("Flux message dispatcher queue full, dropped message for: " + key);
+			return;
+		}
+		enqueue(key, priority, task, true);
+	}
+
+	/**
+	 * Dispatches a message that is sent from within this process, never waiting for room: when the queue
+	 * is full the message is admitted beyond the limit. The sender is a handler or a thread of the
+	 * application, so its own progress limits how far the queue can grow.
+	 */
+	public void offer(String key, MessagePriority priority, Runnable task) {
+		if (workers.isShutdown()) {
+			return;
+		}
+		enqueue(key, priority, task, queueCapacity.tryAcquire());
+	}
+
+	private void enqueue(String key, MessagePriority priority, Runnable task, boolean permit) {
+		synchronized (serialExecutors) {
+			SerialExecutor executor = serialExecutors.get(key);
+			if (executor == null) {
+				executor = new SerialExecutor(key);
+				serialExecutors.put(key, executor);
+			}
+			executor.add(new Task(task, priority, permit));
+		}
+	}
+
+	private boolean acquire(String key) {
+		switch (rejectionPolicy) {
+		case BLOCK:
+			try {
+				while (!queueCapacity.tryAcquire(blockWarningInterval, TimeUnit.MILLISECONDS)) {
+					if (workers.isShutdown()) {
+						return false;
+					}
+					Activator.log("Flux message dispatcher queue full, still waiting for room for: " + key);
+				}
+				return true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		case DISCARD:
+			return queueCapacity.tryAcquire();
+		default:
+			if (!queueCapacity.tryAcquire()) {
+				throw new RejectedExecutionException("Flux message dispatcher queue full");
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the number of messages that can be queued before the limit is reached.
+	 */
+	public int getRemainingCapacity() {
+		return queueCapacity.availablePermits();
+	}
+
+	public void shutdown() {
+		workers.shutdown();
+	}
+
+	/**
+	 * Runs the tasks of one key in order, using at most one worker thread at a time.
+	 * Its state is guarded by the lock on the serialExecutors map, so that an executor is
+	 * never removed from the map while another message for the same key is added.
+	 */
+	private class SerialExecutor {
+
+		private final String key;
+		private final Queue<Task> tasks;
+		private boolean active;
+
+		public SerialExecutor(String key) {
+			this.key = key;
+			this.tasks = new ArrayDeque<Task>();
+		}
+
+		// called with the serialExecutors lock held
+		protected void add(Task task) {
+			tasks.add(task);
+			if (!active) {
+				active = true;
+				schedule();
+			}
+		}
+
+		// called with the serialExecutors lock held, discards the queued tasks if the workers are shut down
+		private boolean schedule() {
+			try {
+				workers.execute(new Drain(this, tasks.peek().priority, submissions.incrementAndGet()));
+				return true;
+			} catch (RejectedExecutionException e) {
+				for (Task task : tasks) {
+					task.release();
+				}
+				tasks.clear();
+				active = false;
+				serialExecutors.remove(key);
+				return false;
+			}
+		}
+
+		public void run() {
+			for (int executed = 0; ; executed++) {
+				Task next;
+				synchronized (serialExecutors) {
+					if (!tasks.isEmpty() && (executed == FAIRNESS_BATCH_SIZE || (executed > 0 && isPreempted())) && schedule()) {
+						// give the other keys waiting for a worker a chance, continue later
+						return;
+					}
+					next = tasks.poll();
+					if (next == null) {
+						active = false;
+						serialExecutors.remove(key);
+						return;
+					}
+				}
+
+				try {
+					next.task.run();
+				} catch (Throwable t) {
+					t.printStackTrace();
+				} finally {
+					next.release();
+				}
+			}
+		}
+
+		// called with the serialExecutors lock held
+		private boolean isPreempted() {
+			Runnable waiting = workers.getQueue().peek();
+			return waiting instanceof Drain && ((Drain) waiting).priority.compareTo(tasks.peek().priority) < 0;
+		}
+
+	}
+
+	private class Task {
+
+		private final Runnable task;
+		private final MessagePriority priority;
+		private final boolean permit;
+
+		public Task(Runnable task, MessagePriority priority, boolean permit) {
+			this.task = task;
+			this.priority = priority;
+			this.permit = permit;
+		}
+
+		// tasks admitted beyond the limit hold no permit
+		public void release() {
+			if (permit) {
+				queueCapacity.release();
+			}
+		}
+
+	}
+
+	private static class DispatcherThread extends Thread {
+
+		public DispatcherThread(Runnable runnable, String name) {
+			super(runnable, name);
+		}
+
+	}
+
+	/**
+	 * The work item of a key on the worker queue, ordered by priority and then by submission.
+	 */
+	private static class Drain implements Runnable, Comparable<Drain> {
+
+		private final SerialExecutor executor;
+		private final MessagePriority priority;
+		private final long sequence;
+
+		public Drain(SerialExecutor executor, MessagePriority priority, long sequence) {
+			this.executor = executor;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			executor.run();
+		}
+
+		@Override
+		public int compareTo(Drain other) {
+			int result = priority.compareTo(other.priority);
+			if (result == 0) {
+				result = sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+			}
+			return result;
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Splits large bulk responses into <code>responseFragment</code> messages and puts them back
+ * together on the receiving side, so that a single large response doesn't occupy the connection
+ * for long and more urgent messages can be sent in between the fragments.
+ * <p>
+ * Only responses to requests that carry the <code>acceptFragments</code> flag are split, since
+ * the requester has to be able to reassemble them. The fragments are routed like the response
+ * itself, via <code>requestSenderID</code>.
+ *
+ * @author Martin Lippert
+ */
+public class MessageFragments {
+
+	public static final String FRAGMENT_MESSAGE_TYPE = "responseFragment";
+	public static final String ACCEPT_FRAGMENTS = "acceptFragments";
+
+	public static final int DEFAULT_FRAGMENT_SIZE = 64 * 1024;
+
+	private static final long INCOMPLETE_MESSAGE_EXPIRY = TimeUnit.MINUTES.toMillis(5);
+
+	private final Map<String, PartialMessage> partialMessages;
+
+	public MessageFragments() {
+		this.partialMessages = new HashMap<String, PartialMessage>();
+	}
+
+	/**
+	 * Removes the <code>acceptFragments</code> flag from an outgoing bulk response and splits the
+	 * response into fragments of at most the given number of characters if the requester accepts
+	 * fragments and the response is large. Returns <code>null</code> if the message is sent as it is.
+	 */
+	public static List<JSONObject> split(String messageType, JSONObject message, int fragmentSize) throws JSONException {
+		if (MessagePriority.of(messageType) != MessagePriority.BULK || message.remove(ACCEPT_FRAGMENTS) == null) {
+			return null;
+		}
+		if (!message.has("requestSenderID")) {
+			return null;
+		}
+
+		String data = message.toString();
+		if (data.length() <= fragmentSize) {
+			return null;
+		}
+
+		List<String> parts = new ArrayList<String>();
+		for (int start = 0; start < data.length(); ) {
+			int end = Math.min(data.length(), start + fragmentSize);
+			if (end < data.length() && Character.isHighSurrogate(data.charAt(end - 1))) {
+				end--;
+			}
+			parts.add(data.substring(start, end));
+			start = end;
+		}
+
+		String fragmentID = UUID.randomUUID().toString();
+		List<JSONObject> fragments = new ArrayList<JSONObject>(parts.size());
+		for (int i = 0; i < parts.size(); i++) {
+			JSONObject fragment = new JSONObject();
+			fragment.put("username", message.opt("username"));
+			fragment.put("requestSenderID", message.get("requestSenderID"));
+			fragment.put("fragmentID", fragmentID);
+			fragment.put("index", i);
+			fragment.put("count", parts.size());
+			fragment.put("type", messageType);
+			fragment.put("data", parts.get(i));
+			fragments.add(fragment);
+		}
+		return fragments;
+	}
+
+	/**
+	 * Adds a received fragment, returns the original message once all of its fragments have been
+	 * received and <code>null</code> before. The type of the message is the <code>type</code> of the fragment.
+	 * The <code>responseSenderID</code> the broker adds to the fragments is kept.
+	 */
+	public JSONObject add(JSONObject fragment) throws JSONException {
+		String fragmentID = fragment.getString("fragmentID");
+		int index = fragment.getInt("index");
+		int count = fragment.getInt("count");
+		if (count == 1) {
+			return withSender(new JSONObject(fragment.getString("data")), fragment);
+		}
+
+		String data;
+		synchronized (partialMessages) {
+			PartialMessage partial = partialMessages.get(fragmentID);
+			if (partial == null) {
+				expirePartialMessages();
+				partial = new PartialMessage(count);
+				partialMessages.put(fragmentID, partial);
+			}
+			if (index < 0 || index >= partial.parts.length || partial.parts[index] != null) {
+				return null;
+			}
+			partial.parts[index] = fragment.getString("data");
+			if (++partial.received < partial.parts.length) {
+				return null;
+			}
+			partialMessages.remove(fragmentID);
+
+			StringBuilder joined = new StringBuilder();
+			for (String part : partial.parts) {
+				joined.append(part);
+			}
+			data = joined.toString();
+		}
+		return withSender(new JSONObject(data), fragment);
+	}
+
+	private static JSONObject withSender(JSONObject message, JSONObject fragment) throws JSONException {
+		if (fragment.has("responseSenderID") && !message.has("responseSenderID")) {
+			message.put("responseSenderID", fragment.get("responseSenderID"));
+		}
+		return message;
+	}
+
+	// called with the partialMessages lock held
+	private void expirePartialMessages() {
+		long now = System.currentTimeMillis();
+		Iterator<PartialMessage> partials = partialMessages.values().iterator();
+		while (partials.hasNext()) {
+			if (now - partials.next().created > INCOMPLETE_MESSAGE_EXPIRY) {
+				partials.remove();
+			}
+		}
+	}
+
+	private static class PartialMessage {
+
+		private final String[] parts;
+		private final long created;
+		private int received;
+
+		public PartialMessage(int count) {
+			this.parts = new String[count];
+			this.created = System.currentTimeMillis();
+		}
+
+	}
+
+}
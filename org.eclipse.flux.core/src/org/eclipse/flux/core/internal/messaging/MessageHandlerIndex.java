@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.flux.core.AbstractMessageHandler;
+import org.eclipse.flux.core.IMessageHandler;
+import org.json.JSONObject;
+
+/**
+ * The handlers of a single message type, indexed by their most selective filter: the callback ID,
+ * the username or the project (see {@link AbstractMessageHandler}). Looking up the candidates for a
+ * message costs a few hash lookups, independent of the number of filtered handlers, the candidates
+ * still decide via {@link IMessageHandler#canHandle(String, JSONObject)}.
+ *
+ * @author Martin Lippert
+ */
+public class MessageHandlerIndex {
+
+	private final Collection<IMessageHandler> unfiltered;
+	private final ConcurrentMap<Integer, Collection<IMessageHandler>> byCallbackID;
+	private final ConcurrentMap<String, Collection<IMessageHandler>> byUsername;
+	private final ConcurrentMap<String, Collection<IMessageHandler>> byProject;
+	private volatile int size;
+
+	public MessageHandlerIndex() {
+		this.unfiltered = new ConcurrentLinkedDeque<IMessageHandler>();
+		this.byCallbackID = new ConcurrentHashMap<Integer, Collection<IMessageHandler>>();
+		this.byUsername = new ConcurrentHashMap<String, Collection<IMessageHandler>>();
+		this.byProject = new ConcurrentHashMap<String, Collection<IMessageHandler>>();
+	}
+
+	public synchronized void add(IMessageHandler handler) {
+		if (handler instanceof AbstractMessageHandler) {
+			AbstractMessageHandler filtered = (AbstractMessageHandler) handler;
+			if (filtered.getCallbackID() != null) {
+				add(byCallbackID, filtered.getCallbackID(), handler);
+			}
+			else if (filtered.getUsernameFilter() != null) {
+				add(byUsername, filtered.getUsernameFilter(), handler);
+			}
+			else if (filtered.getProjectFilter() != null) {
+				add(byProject, filtered.getProjectFilter(), handler);
+			}
+			else {
+				unfiltered.add(handler);
+			}
+		}
+		else {
+			unfiltered.add(handler);
+		}
+		size++;
+	}
+
+	public synchronized void remove(IMessageHandler handler) {
+		boolean removed;
+		if (handler instanceof AbstractMessageHandler) {
+			AbstractMessageHandler filtered = (AbstractMessageHandler) handler;
+			if (filtered.getCallbackID() != null) {
+				removed = remove(byCallbackID, filtered.getCallbackID(), handler);
+			}
+			else if (filtered.getUsernameFilter() != null) {
+				removed = remove(byUsername, filtered.getUsernameFilter(), handler);
+			}
+			else if (filtered.getProjectFilter() != null) {
+				removed = remove(byProject, filtered.getProjectFilter(), handler);
+			}
+			else {
+				removed = unfiltered.remove(handler);
+			}
+		}
+		else {
+			removed = unfiltered.remove(handler);
+		}
+		if (removed) {
+			size--;
+		}
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Adds the handlers that might handle the given message to the result, handlers without filter first.
+	 */
+	public void collectCandidates(JSONObject message, List<IMessageHandler> result) {
+		result.addAll(unfiltered);
+		if (!byCallbackID.isEmpty() && message.has("callback_id")) {
+			addAll(byCallbackID.get(message.optInt("callback_id")), result);
+		}
+		if (!byUsername.isEmpty()) {
+			String username = message.optString("username", null);
+			if (username != null) {
+				addAll(byUsername.get(username), result);
+			}
+		}
+		if (!byProject.isEmpty()) {
+			String project = message.optString("project", null);
+			if (project != null) {
+				addAll(byProject.get(project), result);
+			}
+		}
+	}
+
+	private static void addAll(Collection<IMessageHandler> handlers, List<IMessageHandler> result) {
+		if (handlers != null) {
+			result.addAll(handlers);
+		}
+	}
+
+	private static <K> void add(ConcurrentMap<K, Collection<IMessageHandler>> index, K key, IMessageHandler handler) {
+		Collection<IMessageHandler> handlers = index.get(key);
+		if (handlers == null) {
+			handlers = new ConcurrentLinkedDeque<IMessageHandler>();
+			index.put(key, handlers);
+		}
+		handlers.add(handler);
+	}
+
+	private static <K> boolean remove(ConcurrentMap<K, Collection<IMessageHandler>> index, K key, IMessageHandler handler) {
+		Collection<IMessageHandler> handlers = index.get(key);
+		if (handlers == null || !handlers.remove(handler)) {
+			return false;
+		}
+		if (handlers.isEmpty()) {
+			index.remove(key);
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Priority classes of messages, in descending order. Interactive messages (live editing and the
+ * editor services) are sent and handled before anything else, bulk messages (whole resource and
+ * project contents during a sync) only when nothing more urgent is waiting.
+ *
+ * @author Martin Lippert
+ */
+public enum MessagePriority {
+
+	INTERACTIVE,
+	NORMAL,
+	BULK;
+
+	private static final Set<String> INTERACTIVE_TYPES = new HashSet<String>(Arrays.asList(
+			"liveResourceStarted",
+			"liveResourceStartedResponse",
+			"liveResourceChanged",
+			"liveMetadataChanged",
+			"contentassistrequest",
+			"contentassistresponse",
+			"navigationrequest",
+			"navigationresponse",
+			"javadocrequest",
+			"javadocresponse",
+			"renameinfilerequest",
+			"renameinfileresponse"
+	));
+
+	private static final Set<String> BULK_TYPES = new HashSet<String>(Arrays.asList(
+			"getResourceResponse",
+			"getResourceChunk",
+			"getResourcesResponse",
+			"getProjectResponse",
+			"getProjectTreeResponse",
+			MessageFragments.FRAGMENT_MESSAGE_TYPE
+	));
+
+	public static MessagePriority of(String messageType) {
+		if (INTERACTIVE_TYPES.contains(messageType)) {
+			return INTERACTIVE;
+		}
+		else if (BULK_TYPES.contains(messageType)) {
+			return BULK;
+		}
+		return NORMAL;
+	}
+
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.flux.core.Activator;
+import org.eclipse.flux.core.internal.Configuration;
+import org.json.JSONObject;
+
+/**
+ * Holds outgoing messages while the connector is not connected to its channel and replays them
+ * in their original order once the channel is connected again.
+ * <p>
+ * The queue is bounded and never blocks the sender: if it is full, the oldest message is dropped,
+ * the number of dropped messages is logged when the channel is connected again. A notification
+ * about the state of a resource (like <code>resourceChanged</code>) supersedes an older queued
+ * notification of the same type for the same resource, the older one is removed and the new one
+ * is appended.
+ *
+ * @author Martin Lippert
+ */
+public class OutboundMessageQueue {
+
+	public static final int DEFAULT_QUEUE_LIMIT = 10000;
+
+	private static final Set<String> COALESCING_TYPES = new HashSet<String>(Arrays.asList(
+			"resourceChanged",
+			"resourceStored",
+			"metadataChanged"
+	));
+
+	private final MessageBatcher.IMessageSender sender;
+	private final int queueLimit;
+
+	private final LinkedHashMap<Object, QueuedMessage> queue;
+	private boolean open;
+	private String channel;
+	private int dropped;
+
+	public OutboundMessageQueue(MessageBatcher.IMessageSender sender, int queueLimit) {
+		this.sender = sender;
+		this.queueLimit = queueLimit;
+		this.queue = new LinkedHashMap<Object, QueuedMessage>();
+	}
+
+	/**
+	 * Creates a queue with the limit from the <code>flux.outbound.queueLimit</code> system property.
+	 */
+	public static OutboundMessageQueue createDefault(MessageBatcher.IMessageSender sender) {
+		int queueLimit = Configuration.getInt("flux.outbound.queueLimit", "FLUX_OUTBOUND_QUEUE_LIMIT", DEFAULT_QUEUE_LIMIT);
+		return new OutboundMessageQueue(sender, Math.max(1, queueLimit));
+	}
+
+	/**
+	 * Sends the message right away if the channel is connected, queues it otherwise.
+	 * <p>
+	 * Messages are handed over to the sender outside of the queue lock, since the sender
+	 * might block (like for a full bulk lane), this must not hold up other senders.
+	 */
+	public void send(String messageType, JSONObject message) {
+		if (!enqueue(messageType, message)) {
+			sender.sendNow(messageType, message);
+		}
+	}
+
+	/**
+	 * Queues the message if the channel is not connected, returns <code>false</code> if the message
+	 * has to be sent right away. Since the queue is replayed before the channel is marked as open,
+	 * messages sent afterwards can't overtake queued ones.
+	 */
+	private synchronized boolean enqueue(String messageType, JSONObject message) {
+		if (open) {
+			return false;
+		}
+
+		Object key = getCoalescingKey(messageType, message);
+		if (key != null && queue.remove(key) != null) {
+			queue.put(key, new QueuedMessage(messageType, message));
+			return true;
+		}
+
+		if (queue.size() >= queueLimit) {
+			Iterator<QueuedMessage> oldest = queue.values().iterator();
+			QueuedMessage droppedMessage = oldest.next();
+			oldest.remove();
+			if (dropped++ == 0) {
+				Activator.log("Flux outbound queue full while disconnected, dropping the oldest messages, starting with: " + droppedMessage.messageType);
+			}
+		}
+		queue.put(key != null ? key : new Object(), new QueuedMessage(messageType, message));
+		return true;
+	}
+
+	/**
+	 * Replays the queued messages and sends further messages right away. Messages queued for a
+	 * different channel are discarded, since they belong to a different user.
+	 */
+	public synchronized void open(String channel) {
+		if (this.channel != null && !this.channel.equals(channel)) {
+			queue.clear();
+			dropped = 0;
+		}
+		this.channel = channel;
+
+		for (QueuedMessage queued : queue.values()) {
+			try {
+				sender.sendNow(queued.messageType, queued.message);
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+		queue.clear();
+		open = true;
+
+		if (dropped > 0) {
+			Activator.log("Flux outbound queue dropped " + dropped + " messages while disconnected");
+			dropped = 0;
+		}
+	}
+
+	/**
+	 * Starts queueing outgoing messages until the channel is opened again.
+	 */
+	public synchronized void close() {
+		open = false;
+	}
+
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	private static Object getCoalescingKey(String messageType, JSONObject message) {
+		if (!COALESCING_TYPES.contains(messageType) || message.has("callback_id")) {
+			return null;
+		}
+		String project = message.optString("project", null);
+		String resource = message.optString("resource", null);
+		if (project == null || resource == null) {
+			return null;
+		}
+		return messageType + "/" + message.optString("username") + "/" + project + "/" + resource;
+	}
+
+	private static class QueuedMessage {
+
+		private final String messageType;
+		private final JSONObject message;
+
+		public QueuedMessage(String messageType, JSONObject message) {
+			this.messageType = messageType;
+			this.message = message;
+		}
+
+	}
+
+}
@@ -0,0 +1,282 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.flux.core.internal.Configuration;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Sends outgoing messages from one lane per {@link MessagePriority} on a dedicated thread, always
+ * taking the next message from the most urgent non-empty lane. Messages of the same priority keep
+ * their order. Large bulk responses are split into fragments (see {@link MessageFragments}) before
+ * they are queued, so an interactive message waits for at most one fragment.
+ * <p>
+ * Messages about the same resource never overtake each other: while a message about a resource
+ * is waiting in a less urgent lane, later messages about that resource are queued behind it in
+ * that lane, whatever their own priority.
+ * <p>
+ * The bulk lane is bounded, senders of bulk messages are blocked while it is full. While the
+ * connector is disconnected, sending is paused and the waiting messages are kept for the next
+ * connection instead of being sent into the closed socket.
+ *
+ * @author Martin Lippert
+ */
+public class PriorityMessageSender {
+
+	public static final int DEFAULT_BULK_LANE_LIMIT = 256;
+
+	private final MessageBatcher.IMessageSender sender;
+	private final int fragmentSize;
+	private final int bulkLaneLimit;
+
+	private final List<ArrayDeque<QueuedMessage>> lanes;
+	private final Map<String, KeyLane> keyLanes;
+	private Thread thread;
+	private boolean sending;
+	private boolean paused;
+	private boolean disposed;
+
+	public PriorityMessageSender(MessageBatcher.IMessageSender sender, int fragmentSize, int bulkLaneLimit) {
+		this.sender = sender;
+		this.fragmentSize = fragmentSize;
+		this.bulkLaneLimit = bulkLaneLimit;
+		this.lanes = new ArrayList<ArrayDeque<QueuedMessage>>();
+		for (int i = 0; i < MessagePriority.values().length; i++) {
+			lanes.add(new ArrayDeque<QueuedMessage>());
+		}
+		this.keyLanes = new HashMap<String, KeyLane>();
+	}
+
+	/**
+	 * Creates a sender if priority lanes are switched on via the <code>flux.priority.enabled</code> system
+	 * property (default on), using <code>flux.fragment.size</code> (in characters) as the fragment size.
+	 * Returns <code>null</code> if messages should be sent in plain FIFO order.
+	 */
+	public static PriorityMessageSender createDefault(MessageBatcher.IMessageSender sender) {
+		if (!Configuration.getBoolean("flux.priority.enabled", "FLUX_PRIORITY_ENABLED", true)) {
+			return null;
+		}
+		int fragmentSize = Configuration.getInt("flux.fragment.size", "FLUX_FRAGMENT_SIZE", MessageFragments.DEFAULT_FRAGMENT_SIZE);
+		return new PriorityMessageSender(sender, Math.max(1024, fragmentSize), DEFAULT_BULK_LANE_LIMIT);
+	}
+
+	public void send(String messageType, JSONObject message) {
+		List<JSONObject> fragments = null;
+		try {
+			fragments = MessageFragments.split(messageType, message, fragmentSize);
+		} catch (JSONException e) {
+			e.printStackTrace();
+		}
+
+		String key = getOrderingKey(message);
+		if (fragments == null) {
+			enqueue(new QueuedMessage(messageType, message, key), MessagePriority.of(messageType));
+		}
+		else {
+			for (JSONObject fragment : fragments) {
+				enqueue(new QueuedMessage(MessageFragments.FRAGMENT_MESSAGE_TYPE, fragment, key), MessagePriority.BULK);
+			}
+		}
+	}
+
+	private static String getOrderingKey(JSONObject message) {
+		String project = message.optString("project", null);
+		if (project == null) {
+			return null;
+		}
+		return message.optString("username") + "/" + project + "/" + message.optString("resource");
+	}
+
+	private synchronized void enqueue(QueuedMessage message, MessagePriority priority) {
+		int laneIndex = priority.ordinal();
+		KeyLane keyLane = message.key != null ? keyLanes.get(message.key) : null;
+		if (keyLane != null && keyLane.lane > laneIndex) {
+			// behind an earlier message about the same resource
+			laneIndex = keyLane.lane;
+		}
+
+		ArrayDeque<QueuedMessage> lane = lanes.get(laneIndex);
+		while (priority == MessagePriority.BULK && lane.size() >= bulkLaneLimit && !disposed) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+		if (disposed) {
+			return;
+		}
+
+		lane.add(message);
+		if (message.key != null) {
+			keyLane = keyLanes.get(message.key);
+			if (keyLane == null) {
+				keyLane = new KeyLane();
+				keyLanes.put(message.key, keyLane);
+			}
+			keyLane.lane = Math.max(keyLane.lane, laneIndex);
+			keyLane.count++;
+		}
+		if (thread == null) {
+			thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					sendQueuedMessages();
+				}
+			}, "Flux message sender");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		notifyAll();
+	}
+
+	private void sendQueuedMessages() {
+		while (true) {
+			QueuedMessage next;
+			synchronized (this) {
+				sending = false;
+				notifyAll();
+				next = paused ? null : poll();
+				while (next == null) {
+					if (disposed) {
+						return;
+					}
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+					next = paused ? null : poll();
+				}
+				sending = true;
+			}
+
+			try {
+				sender.sendNow(next.messageType, next.message);
+			} catch (Throwable t) {
+				t.printStackTrace();
+			}
+		}
+	}
+
+	// called with the lock held
+	private QueuedMessage poll() {
+		for (ArrayDeque<QueuedMessage> lane : lanes) {
+			QueuedMessage message = lane.poll();
+			if (message != null) {
+				if (message.key != null) {
+					KeyLane keyLane = keyLanes.get(message.key);
+					if (keyLane != null && --keyLane.count == 0) {
+						keyLanes.remove(message.key);
+					}
+				}
+				return message;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Stops sending until {@link #resume(boolean)} is called, the waiting messages are kept.
+	 */
+	public synchronized void pause() {
+		paused = true;
+	}
+
+	/**
+	 * Continues sending the kept messages, or discards them first (like when the connector
+	 * connected to the channel of a different user).
+	 */
+	public synchronized void resume(boolean discard) {
+		if (discard) {
+			clear();
+		}
+		paused = false;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until all queued messages have been handed over, but at most the given time in milliseconds.
+	 */
+	public synchronized void flush(long timeout) {
+		long deadline = System.currentTimeMillis() + timeout;
+		while ((sending || !isEmpty()) && thread != null && !disposed && !paused) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				return;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	// called with the lock held
+	private boolean isEmpty() {
+		for (ArrayDeque<QueuedMessage> lane : lanes) {
+			if (!lane.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public synchronized void dispose() {
+		disposed = true;
+		clear();
+		notifyAll();
+	}
+
+	// called with the lock held
+	private void clear() {
+		for (ArrayDeque<QueuedMessage> lane : lanes) {
+			lane.clear();
+		}
+		keyLanes.clear();
+		notifyAll();
+	}
+
+	private static class QueuedMessage {
+
+		private final String messageType;
+		private final JSONObject message;
+		private final String key;
+
+		public QueuedMessage(String messageType, JSONObject message, String key) {
+			this.messageType = messageType;
+			this.message = message;
+			this.key = key;
+		}
+
+	}
+
+	/**
+	 * The least urgent lane with waiting messages about a resource, and the number of these messages
+	 */
+	private static class KeyLane {
+
+		private int lane;
+		private int count;
+
+	}
+
+}
@@ -34,7 +34,7 @@ import org.json.JSONObject;
  */
 public class SocketIOMessagingConnector extends AbstractMessagingConnector implements IMessagingConnector {
 
-	protected static final long INITIAL_DELAY = 0;
+	private static final long DISCONNECT_FLUSH_TIMEOUT = 5000;
 
 	static {
 		javax.net.ssl.HttpsURLConnection.setDefaultHostnameVerifier(new javax.net.ssl.HostnameVerifier() {
@@ -48,13 +48,41 @@ public class SocketIOMessagingConnector extends AbstractMessagingConnector imple
 	private String host;	
 	private AtomicBoolean connected = new AtomicBoolean(false);
 	private String userChannel;
+	private String lastUserChannel;
 	private String login;
 	private String token;
+	private MessageBatcher batcher;
+	private OutboundMessageQueue outboundQueue;
+	private PriorityMessageSender prioritySender;
+	private ReconnectBackoff reconnectBackoff;
 		
 	public SocketIOMessagingConnector(String host, final String login, final String token) {
 		this.host = host;
 		this.login = login;
 		this.token = token;
+		this.batcher = MessageBatcher.createDefault(new MessageBatcher.IMessageSender() {
+			@Override
+			public void sendNow(String messageType, JSONObject message) {
+				socket.emit(messageType, message);
+			}
+		});
+		this.reconnectBackoff = ReconnectBackoff.createDefault();
+		this.prioritySender = PriorityMessageSender.createDefault(new MessageBatcher.IMessageSender() {
+			@Override
+			public void sendNow(String messageType, JSONObject message) {
+				sendToSocket(messageType, message);
+			}
+		});
+		this.outboundQueue = OutboundMessageQueue.createDefault(new MessageBatcher.IMessageSender() {
+			@Override
+			public void sendNow(String messageType, JSONObject message) {
+				if (prioritySender != null) {
+					prioritySender.send(messageType, message);
+				} else {
+					sendToSocket(messageType, message);
+				}
+			}
+		});
 		try {
 			SocketIO.setDefaultSSLSocketFactory(SSLContext.getInstance("Default"));
 			socket = createSocket();
@@ -66,8 +94,6 @@ public class SocketIOMessagingConnector extends AbstractMessagingConnector imple
 	public void connect() {
 		socket.connect(new IOCallback() {
 			
-			private long delay = INITIAL_DELAY;
-
 			@Override
 			public void onMessage(JSONObject arg0, IOAcknowledge arg1) {
 			}
@@ -99,20 +125,14 @@ public class SocketIOMessagingConnector extends AbstractMessagingConnector imple
 						}
 						return Status.OK_STATUS;
 					}
-				}.schedule(reconnectDelay());
-			}
-
-			private long reconnectDelay() {
-				long r = this.delay;
-				this.delay = (long)((this.delay+1000)*1.1);
-				return r;
+				}.schedule(reconnectBackoff.nextDelay());
 			}
 
 			@Override
 			public void onConnect() {
 				try {
 					connected.compareAndSet(false, true);
-					delay = INITIAL_DELAY;
+					reconnectBackoff.reset();
 					notifyConnected();
 				}
 				catch (Exception e) {
@@ -154,12 +174,23 @@ public class SocketIOMessagingConnector extends AbstractMessagingConnector imple
 	
 	private synchronized void processConnectChannel(String userChannel) {
 		if (userChannel != null) {
+			// replay what was sent while disconnected before anything the channel listeners send,
+			// messages held for a different user are dropped
+			if (prioritySender != null) {
+				prioritySender.resume(!userChannel.equals(lastUserChannel));
+			}
+			outboundQueue.open(userChannel);
+			this.lastUserChannel = userChannel;
 			notifyChannelConnected(userChannel);
 			this.userChannel = userChannel;
 		}
 	}
 	
 	private synchronized void processDisconnectChannel() {
+		outboundQueue.close();
+		if (prioritySender != null) {
+			prioritySender.pause();
+		}
 		if (this.userChannel != null) {
 			notifyChannelDisconnected(this.userChannel);
 			this.userChannel = null;
@@ -194,9 +225,22 @@ public class SocketIOMessagingConnector extends AbstractMessagingConnector imple
 		return socket;
 	}
 
+	/**
+	 * Sends the message, or queues it for sending after reconnecting while the channel is not connected.
+	 * Interactive messages are sent before bulk messages that are still waiting, see {@link PriorityMessageSender}.
+	 */
 	@Override
 	public void send(String messageType, JSONObject message) {
-		socket.emit(messageType, message);
+		outboundQueue.send(messageType, compressOutgoingMessage(messageType, message));
+	}
+	
+	private void sendToSocket(String messageType, JSONObject message) {
+		getMetrics().messageSent(messageType, message);
+		if (batcher != null) {
+			batcher.send(messageType, message);
+		} else {
+			socket.emit(messageType, message);
+		}
 	}
 
 	@Override
@@ -222,9 +266,26 @@ public class SocketIOMessagingConnector extends AbstractMessagingConnector imple
 
 	@Override
 	public void disconnect() {
+		if (prioritySender != null) {
+			prioritySender.flush(DISCONNECT_FLUSH_TIMEOUT);
+		}
+		if (batcher != null) {
+			batcher.flush();
+		}
 		socket.disconnect();
 	}
 	
+	@Override
+	public void dispose() {
+		if (prioritySender != null) {
+			prioritySender.dispose();
+		}
+		if (batcher != null) {
+			batcher.dispose();
+		}
+		super.dispose();
+	}
+	
 	private void switchChannel(final String userChannel) {
 		try {
 			JSONObject message = new JSONObject();
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2014 Pivotal Software, Inc. and others.
+ * All rights reserved. This program and the accompanying materials are made
+ * available under the terms of the Eclipse Public License v1.0
+ * (http://www.eclipse.org/legal/epl-v10.html), and the Eclipse Distribution
+ * License v1.0 (http://www.eclipse.org/org/documents/edl-v10.html).
+ *
+ * Contributors:
+ *     Pivotal Software, Inc. - initial API and implementation
+*******************************************************************************/
+package org.eclipse.flux.core.internal.messaging;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hashed timer wheel for a large number of short timeouts that are usually cancelled before
+ * they expire (like request timeouts). Scheduling and cancelling are constant time, expiry
+ * has the precision of one tick. Expired tasks run on the single timer thread and should
+ * return quickly.
+ *
+ * @author Martin Lippert
+ */
+public class TimerWheel {
+
+	public interface Timeout {
+		boolean cancel();
+	}
+
+	private static TimerWheel requestTimeouts;
+
+	private final String name;
+	private final long tickDuration;
+	private final List<Set<Entry>> buckets;
+	private final long startTime;
+
+	private long currentTick;
+	private Thread worker;
+
+	public TimerWheel(String name, long tickDuration, int wheelSize) {
+		this.name = name;
+		this.tickDuration = tickDuration;
+		this.buckets = new ArrayList<Set<Entry>>(wheelSize);
+		for (int i = 0; i < wheelSize; i++) {
+			this.buckets.add(new HashSet<Entry>());
+		}
+		this.startTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the wheel shared by the request timeouts of this process.
+	 */
+	public static synchronized TimerWheel getRequestTimeouts() {
+		if (requestTimeouts == null) {
+			requestTimeouts = new TimerWheel("Flux request timeouts", 50, 512);
+		}
+		return requestTimeouts;
+	}
+
+	public synchronized Timeout schedule(Runnable task, long delay) {
+		if (worker == null) {
+			worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					runWheel();
+				}
+			}, name);
+			worker.setDaemon(true);
+			worker.start();
+		}
+
+		long deadlineTick = Math.max(currentTick + 1, (System.currentTimeMillis() - startTime + delay + tickDuration - 1) / tickDuration);
+		Entry entry = new Entry(task, deadlineTick);
+		buckets.get((int) (deadlineTick % buckets.size())).add(entry);
+		return entry;
+	}
+
+	private synchronized boolean remove(Entry entry) {
+		return buckets.get((int) (entry.deadlineTick % buckets.size())).remove(entry);
+	}
+
+	private void runWheel() {
+		while (true) {
+			long now = System.currentTimeMillis() - startTime;
+			long targetTick = now / tickDuration;
+
+			List<Entry> expired = new ArrayList<Entry>();
+			synchronized (this) {
+				while (currentTick < targetTick) {
+					currentTick++;
+					Iterator<Entry> entries = buckets.get((int) (currentTick % buckets.size())).iterator();
+					while (entries.hasNext()) {
+						Entry entry = entries.next();
+						if (entry.deadlineTick <= currentTick) {
+							entries.remove();
+							expired.add(entry);
+						}
+					}
+				}
+			}
+
+			for (Entry entry : expired) {
+				try {
+					entry.task.run();
+				}
+				catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+
+			try {
+				Thread.sleep(Math.max(1, (targetTick + 1) * tickDuration - (System.currentTimeMillis() - startTime)));
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private class Entry implements Timeout {
+
+		private final Runnable task;
+		private final long deadlineTick;
+
+		public Entry(Runnable task, long deadlineTick) {
+			this.task = task;
+			this.deadlineTick = deadlineTick;
+		}
+
+		@Override
+		public boolean cancel() {
+			return remove(this);
+		}
+
+	}
+
+}
@@ -12,6 +12,7 @@
 package org.eclipse.flux.jdt.services;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.flux.core.JSONStreamWriter;
 import org.eclipse.jdt.core.CompletionContext;
 import org.eclipse.jdt.core.CompletionProposal;
 import org.eclipse.jdt.core.Flags;
@@ -19,7 +20,7 @@ import org.eclipse.jdt.core.Signature;
 
 /**
  * Provides string labels for java content assist proposals. The functionality is essentially JDT UI org.eclipse.jdt.ui.text.java.CompletionProposalLabelProvider
- * adopted for Flux messages JSON serialization
+ * adopted for Flux messages JSON serialization, the labels are written with a {@link JSONStreamWriter}
  *
  */
 public class CompletionProposalDescriptionProvider {
@@ -29,6 +30,45 @@ public class CompletionProposalDescriptionProvider {
 	private static final String VAR_TYPE_SEPARATOR = RETURN_TYPE_SEPARATOR;
 
 
+	/**
+	 * The segments of a display label: the label itself and an optional qualifier that is shown
+	 * in grey. The segments are written as JSON when the proposals are sent.
+	 */
+	public static class Description {
+
+		private final StringBuilder label= new StringBuilder();
+		private StringBuilder qualifier;
+
+		StringBuilder qualifier() {
+			if (qualifier == null) {
+				qualifier= new StringBuilder();
+			}
+			return qualifier;
+		}
+
+		/**
+		 * Returns the text of all segments.
+		 */
+		public String getName() {
+			return qualifier == null ? label.toString() : label.toString() + qualifier;
+		}
+
+		/**
+		 * Writes the segments as array of <code>{"value": ..., "style": ...}</code> objects.
+		 */
+		public void write(JSONStreamWriter json) {
+			json.array();
+			json.object().key("value").value(label.toString()).endObject();
+			if (qualifier != null) {
+				json.object().key("value").value(qualifier.toString());
+				json.key("style").object().key("color").value("#AAAAAA").endObject();
+				json.endObject();
+			}
+			json.endArray();
+		}
+
+	}
+
 	/**
 	 * The completion context.
 	 */
@@ -237,12 +277,10 @@ public class CompletionProposalDescriptionProvider {
 	 * @param methodProposal the method proposal to display
 	 * @return the display label for the given method proposal
 	 */
-	StringBuilder createMethodProposalLabel(CompletionProposal methodProposal) {
-		StringBuilder description = new StringBuilder();
-		
-		description.append("[");
+	Description createMethodProposalLabel(CompletionProposal methodProposal) {
+		Description result = new Description();
+		StringBuilder description = result.label;
 
-		description.append("{\"value\":\"");
 		// method name
 		description.append(methodProposal.getName());
 
@@ -258,12 +296,9 @@ public class CompletionProposalDescriptionProvider {
 			description.append(RETURN_TYPE_SEPARATOR);
 			description.append(returnType);
 		}
-		
-		description.append("\"}");
 
-		description.append(",");
-		description.append("{\"value\":\"");
-		
+		description = result.qualifier();
+
 		// declaring type
 		description.append(QUALIFIER_SEPARATOR);
 		String declaringType= extractDeclaringTypeFQN(methodProposal);
@@ -278,15 +313,8 @@ public class CompletionProposalDescriptionProvider {
 
 		declaringType= Signature.getSimpleName(declaringType);
 		description.append(declaringType);
-		
-		description.append("\",\"style\":{");
-		description.append("\"color\":\"#AAAAAA\"");
-		description.append("}");
-		description.append("}");
 
-		description.append("]");
-		
-		return description;
+		return result;
 	}
 
 	/**
@@ -307,42 +335,27 @@ public class CompletionProposalDescriptionProvider {
 	 * @return the display label for the given method proposal
 	 * @since 3.2
 	 */
-	StringBuilder createJavadocMethodProposalLabel(CompletionProposal methodProposal) {
-		StringBuilder nameBuffer= new StringBuilder();
-		
-		nameBuffer.append("[");
-
-		nameBuffer.append("{\"value\":\"");
+	Description createJavadocMethodProposalLabel(CompletionProposal methodProposal) {
+		Description result= new Description();
+		StringBuilder nameBuffer= result.label;
 
 		// method name
 		nameBuffer.append(methodProposal.getCompletion());
 
-		nameBuffer.append("\"}");
-		nameBuffer.append(",");
-		nameBuffer.append("{\"value\":\"");
-		
+		nameBuffer= result.qualifier();
+
 		// declaring type
 		nameBuffer.append(QUALIFIER_SEPARATOR);
 		String declaringType= extractDeclaringTypeFQN(methodProposal);
 		declaringType= Signature.getSimpleName(declaringType);
 		nameBuffer.append(declaringType);
-		
-		nameBuffer.append("\",\"style\":{");
-		nameBuffer.append("\"color\":\"#AAAAAA\"");
-		nameBuffer.append("}");
-		nameBuffer.append("}");
-
-		nameBuffer.append("]");
 
-		return nameBuffer;
+		return result;
 	}
 
-	StringBuilder createOverrideMethodProposalLabel(CompletionProposal methodProposal) {
-		StringBuilder nameBuffer= new StringBuilder();
-		
-		nameBuffer.append("[");
-
-		nameBuffer.append("{\"value\":\"");
+	Description createOverrideMethodProposalLabel(CompletionProposal methodProposal) {
+		Description result= new Description();
+		StringBuilder nameBuffer= result.label;
 
 		// method name
 		nameBuffer.append(methodProposal.getName());
@@ -359,24 +372,15 @@ public class CompletionProposalDescriptionProvider {
 		char[] returnType= createTypeDisplayName(SignatureUtil.getUpperBound(Signature.getReturnType(SignatureUtil.fix83600(methodProposal.getSignature()))));
 		nameBuffer.append(returnType);
 
-		nameBuffer.append("\"}");
-		nameBuffer.append(",");
-		nameBuffer.append("{\"value\":\"");
-		
+		nameBuffer= result.qualifier();
+
 		// declaring type
 		nameBuffer.append(QUALIFIER_SEPARATOR);
 		String declaringType= extractDeclaringTypeFQN(methodProposal);
 		declaringType= Signature.getSimpleName(declaringType);
 		nameBuffer.append(String.format("Override method in '%s'", declaringType));
 
-		nameBuffer.append("\",\"style\":{");
-		nameBuffer.append("\"color\":\"#AAAAAA\"");
-		nameBuffer.append("}");
-		nameBuffer.append("}");
-
-		nameBuffer.append("]");
-
-		return nameBuffer;
+		return result;
 	}
 
 	/**
@@ -411,7 +415,7 @@ public class CompletionProposalDescriptionProvider {
 	 * @param typeProposal the method proposal to display
 	 * @return the display label for the given type proposal
 	 */
-	StringBuilder createTypeProposalLabel(CompletionProposal typeProposal) {
+	Description createTypeProposalLabel(CompletionProposal typeProposal) {
 		char[] signature;
 		if (fContext != null && fContext.isInJavadoc())
 			signature= Signature.getTypeErasure(typeProposal.getSignature());
@@ -421,74 +425,52 @@ public class CompletionProposalDescriptionProvider {
 		return createTypeProposalLabel(fullName);
 	}
 
-	StringBuilder createJavadocTypeProposalLabel(CompletionProposal typeProposal) {
+	Description createJavadocTypeProposalLabel(CompletionProposal typeProposal) {
 		char[] fullName= Signature.toCharArray(typeProposal.getSignature());
 		return createJavadocTypeProposalLabel(fullName);
 	}
 
-	StringBuilder createJavadocSimpleProposalLabel(CompletionProposal proposal) {
+	Description createJavadocSimpleProposalLabel(CompletionProposal proposal) {
 		// TODO get rid of this
 		return createSimpleLabel(proposal);
 	}
 
-	StringBuilder createTypeProposalLabel(char[] fullName) {
+	Description createTypeProposalLabel(char[] fullName) {
 		// only display innermost type name as type name, using any
 		// enclosing types as qualification
 		int qIndex= findSimpleNameStart(fullName);
 
-		StringBuilder nameBuffer= new StringBuilder();
-		
-		nameBuffer.append("[");
+		Description result= new Description();
+
+		result.label.append(new String(fullName, qIndex, fullName.length - qIndex));
 
-		nameBuffer.append("{\"value\":\"");
-		
-		nameBuffer.append(new String(fullName, qIndex, fullName.length - qIndex));
-		
-		nameBuffer.append("\"}");
-		
 		if (qIndex > 0) {
-			nameBuffer.append(",");
-			nameBuffer.append("{\"value\":\"");
-			nameBuffer.append(QUALIFIER_SEPARATOR);
-			nameBuffer.append(new String(fullName, 0, qIndex - 1));
-			nameBuffer.append("\",\"style\":{");
-			nameBuffer.append("\"color\":\"#AAAAAA\"");
-			nameBuffer.append("}");
-			nameBuffer.append("}");
+			StringBuilder qualifier= result.qualifier();
+			qualifier.append(QUALIFIER_SEPARATOR);
+			qualifier.append(new String(fullName, 0, qIndex - 1));
 		}
 
-		nameBuffer.append("]");
-		return nameBuffer;
+		return result;
 	}
 
-	StringBuilder createJavadocTypeProposalLabel(char[] fullName) {
+	Description createJavadocTypeProposalLabel(char[] fullName) {
 		// only display innermost type name as type name, using any
 		// enclosing types as qualification
 		int qIndex= findSimpleNameStart(fullName);
 		
-		StringBuilder nameBuffer= new StringBuilder();
-		
-		nameBuffer.append("[");
-
-		nameBuffer.append("{\"value\":\"");
+		Description result= new Description();
+		StringBuilder nameBuffer= result.label;
 
 		nameBuffer.append("{@link "); //$NON-NLS-1$
 		nameBuffer.append(new String(fullName, qIndex, fullName.length - qIndex));
 		nameBuffer.append('}');
-		nameBuffer.append("\"}");
-		
+
 		if (qIndex > 0) {
-			nameBuffer.append(",");
-			nameBuffer.append("{\"value\":\"");
-			nameBuffer.append(QUALIFIER_SEPARATOR);
-			nameBuffer.append(new String(fullName, 0, qIndex - 1));
-			nameBuffer.append("\",\"style\":{");
-			nameBuffer.append("\"color\":\"#AAAAAA\"");
-			nameBuffer.append("}");
-			nameBuffer.append("}");
+			StringBuilder qualifier= result.qualifier();
+			qualifier.append(QUALIFIER_SEPARATOR);
+			qualifier.append(new String(fullName, 0, qIndex - 1));
 		}
-		nameBuffer.append("]");
-		return nameBuffer;
+		return result;
 	}
 
 	private int findSimpleNameStart(char[] array) {
@@ -504,12 +486,9 @@ public class CompletionProposalDescriptionProvider {
 		return lastDot;
 	}
 
-	StringBuilder createSimpleLabelWithType(CompletionProposal proposal) {
-		StringBuilder nameBuffer= new StringBuilder();
-		
-		nameBuffer.append("[");
-
-		nameBuffer.append("{\"value\":\"");
+	Description createSimpleLabelWithType(CompletionProposal proposal) {
+		Description result= new Description();
+		StringBuilder nameBuffer= result.label;
 
 		nameBuffer.append(proposal.getCompletion());
 		
@@ -518,9 +497,7 @@ public class CompletionProposalDescriptionProvider {
 			nameBuffer.append(VAR_TYPE_SEPARATOR);
 			nameBuffer.append(typeName);
 		}
-		nameBuffer.append("\"}");
-		nameBuffer.append("]");
-		return nameBuffer;
+		return result;
 	}
 
 	/**
@@ -535,14 +512,12 @@ public class CompletionProposalDescriptionProvider {
 		return string[0] == 't' && string[1] == 'h' && string[2] == 'i' && string[3] == 's' && string[4] == '.';
 	}
 
-	StringBuilder createLabelWithTypeAndDeclaration(CompletionProposal proposal) {
+	Description createLabelWithTypeAndDeclaration(CompletionProposal proposal) {
 		char[] name= proposal.getCompletion();
 		if (!isThisPrefix(name))
 			name= proposal.getName();
-		StringBuilder buf= new StringBuilder();
-		buf.append("[");
-
-		buf.append("{\"value\":\"");
+		Description result= new Description();
+		StringBuilder buf= result.label;
 
 		buf.append(name);
 		char[] typeName= Signature.getSignatureSimpleName(proposal.getSignature());
@@ -550,14 +525,12 @@ public class CompletionProposalDescriptionProvider {
 			buf.append(VAR_TYPE_SEPARATOR);
 			buf.append(typeName);
 		}
-		buf.append("\"}");
-		
+
 		char[] declaration= proposal.getDeclarationSignature();
 		if (declaration != null) {
 			declaration= Signature.getSignatureSimpleName(declaration);
 			if (declaration.length > 0) {
-				buf.append(",");
-				buf.append("{\"value\":\"");
+				buf= result.qualifier();
 				buf.append(QUALIFIER_SEPARATOR);
 				if (proposal.getRequiredProposals() != null) {
 					String declaringType= extractDeclaringTypeFQN(proposal);
@@ -568,67 +541,46 @@ public class CompletionProposalDescriptionProvider {
 					}
 				}
 				buf.append(declaration);
-				buf.append("\",\"style\":{");
-				buf.append("\"color\":\"#AAAAAA\"");
-				buf.append("}");
-				buf.append("}");
 			}
 		}
-		buf.append("]");
-		return buf;
+		return result;
 	}
 
-	StringBuilder createPackageProposalLabel(CompletionProposal proposal) {
+	Description createPackageProposalLabel(CompletionProposal proposal) {
 		Assert.isTrue(proposal.getKind() == CompletionProposal.PACKAGE_REF);
-		StringBuilder buf= new StringBuilder();
-		buf.append("[");
-		buf.append("{\"value\":\"");
-		buf.append(String.valueOf(proposal.getDeclarationSignature()));
-		buf.append("\"}");
-		buf.append("]");
-		return buf;
+		Description result= new Description();
+		result.label.append(String.valueOf(proposal.getDeclarationSignature()));
+		return result;
 	}
 
-	StringBuilder createSimpleLabel(CompletionProposal proposal) {
-		StringBuilder buf= new StringBuilder();
-		buf.append("[");
-		buf.append("{\"value\":\"");
-		buf.append(String.valueOf(proposal.getCompletion()));
-		buf.append("\"}");
-		buf.append("]");
-		return buf;
+	Description createSimpleLabel(CompletionProposal proposal) {
+		Description result= new Description();
+		result.label.append(String.valueOf(proposal.getCompletion()));
+		return result;
 	}
 
-	StringBuilder createAnonymousTypeLabel(CompletionProposal proposal) {
+	Description createAnonymousTypeLabel(CompletionProposal proposal) {
 		char[] declaringTypeSignature= proposal.getDeclarationSignature();
 		declaringTypeSignature= Signature.getTypeErasure(declaringTypeSignature);
 
-		StringBuilder buf= new StringBuilder();
-		buf.append("[");
-		buf.append("{\"value\":\"");
-		
+		Description result= new Description();
+		StringBuilder buf= result.label;
+
 		buf.append(Signature.getSignatureSimpleName(declaringTypeSignature));
 		buf.append('(');
 		appendUnboundedParameterList(buf, proposal);
 		buf.append(')');
 		buf.append("  "); //$NON-NLS-1$
 		buf.append("Anonymous Inner Type"); //TODO: consider externalization
-		buf.append("\"}");
 		if (proposal.getRequiredProposals() != null) {
 			char[] signatureQualifier= Signature.getSignatureQualifier(declaringTypeSignature);
 			if (signatureQualifier.length > 0) {
-				buf.append(",");
-				buf.append("{\"value\":\"");
+				buf= result.qualifier();
 				buf.append(QUALIFIER_SEPARATOR);
 				buf.append(signatureQualifier);
-				buf.append("\",\"style\":{");
-				buf.append("\"color\":\"#AAAAAA\"");
-				buf.append("}");
-				buf.append("}");
 			}
 		}
-		buf.append("]");
-		return buf;
+		return result;
 	}
 
 	/**
@@ -639,7 +591,7 @@ public class CompletionProposalDescriptionProvider {
 	 *
 	 * @since 3.4
 	 */
-	public StringBuilder createDescription(CompletionProposal proposal) {
+	public Description createDescription(CompletionProposal proposal) {
 		switch (proposal.getKind()) {
 			case CompletionProposal.METHOD_NAME_REFERENCE:
 			case CompletionProposal.METHOD_REF:
@@ -684,16 +636,6 @@ public class CompletionProposalDescriptionProvider {
 		}
 	}
 	
-	public StringBuilder createMetadata(CompletionProposal proposal) {
-		StringBuilder buf = new StringBuilder();
-		buf.append("{ 'kind' : ");
-		buf.append(proposal.getKind());
-		buf.append(", 'flags' : ");
-		buf.append(proposal.getFlags());
-		buf.append("}");
-		return buf;
-	}
-
 	/**
 	 * Creates and returns a decorated image descriptor for a completion proposal.
 	 *
@@ -19,12 +19,12 @@ import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.flux.core.AbstractMessageHandler;
 import org.eclipse.flux.core.IMessageHandler;
 import org.eclipse.flux.core.IMessagingConnector;
+import org.eclipse.flux.core.JSONStreamWriter;
 import org.eclipse.jdt.core.CompletionContext;
 import org.eclipse.jdt.core.CompletionProposal;
 import org.eclipse.jdt.core.CompletionRequestor;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.JavaModelException;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -81,7 +81,7 @@ public class ContentAssistService {
 		}
 	}
 
-	protected JSONArray computeContentAssist(String username, String resourcePath, int offset, String prefix) throws JSONException {
+	protected JSONStreamWriter computeContentAssist(String username, String resourcePath, int offset, String prefix) throws JSONException {
 		final List<CompletionProposal> proposals = new ArrayList<CompletionProposal>();
 		final CompletionContext[] completionContextParam = new CompletionContext[] { null };
 
@@ -124,93 +124,97 @@ public class ContentAssistService {
 			e.printStackTrace();
 		}
 
-		List<JSONObject> jsonProposals = new ArrayList<JSONObject>(proposals.size());
+		// the sort key of each proposal is computed once, not in every comparison
+		List<SortedProposal> sortedProposals = new ArrayList<SortedProposal>(proposals.size());
 		CompletionContext completionContext = completionContextParam[0];
+		CompletionProposalDescriptionProvider descriptionProvider = new CompletionProposalDescriptionProvider(completionContext);
 		for (CompletionProposal proposal : proposals) {
-			JSONObject jsonDescription = getDescription(proposal, completionContext);
-			List<Integer> positionsList = new ArrayList<Integer>();
-			StringBuilder jsonCompletion = new CompletionProposalReplacementProvider(liveEditUnit, proposal, completionContext, offset, prefix).createReplacement(positionsList);
-			
-			JSONObject jsonProposal = new JSONObject();
-			jsonProposal.put("description", jsonDescription);
-			jsonProposal.put("proposal", jsonCompletion);
-			if (positionsList != null && !positionsList.isEmpty()) {
-				jsonProposal.put("positions", getPositions(positionsList));
-			}
-			jsonProposal.put("style", "attributedString");
-			jsonProposal.put("replace", true);
-			jsonProposal.put("relevance", proposal.getRelevance());
-			
-			jsonProposals.add(jsonProposal);
+			CompletionProposalDescriptionProvider.Description description = descriptionProvider.createDescription(proposal);
+			sortedProposals.add(new SortedProposal(proposal, description, description.getName()));
 		}
-		
-		Collections.sort(jsonProposals, new Comparator<JSONObject>() {
+
+		Collections.sort(sortedProposals, new Comparator<SortedProposal>() {
 			@Override
-			public int compare(JSONObject o1, JSONObject o2) {
-				try {
-					int diff = o2.getInt("relevance") - o1.getInt("relevance");
-					if (diff == 0) {
-						JSONArray nameDescription1 = o1.getJSONObject("description").getJSONArray("segments");
-						JSONArray nameDescription2 = o2.getJSONObject("description").getJSONArray("segments");
-						StringBuilder nameBuffer1 = new StringBuilder();
-						for (int i = 0; i < nameDescription1.length(); i++) {
-							nameBuffer1.append(nameDescription1.getJSONObject(i).getString("value"));
-						}
-						StringBuilder nameBuffer2 = new StringBuilder();
-						for (int i = 0; i < nameDescription2.length(); i++) {
-							nameBuffer2.append(nameDescription2.getJSONObject(i).getString("value"));
-						}
-						return nameBuffer1.toString().compareTo(nameBuffer2.toString());
-					} else {
-						return diff;
-					}
-				} catch (JSONException e) {
-					return -1;
+			public int compare(SortedProposal o1, SortedProposal o2) {
+				int diff = o2.proposal.getRelevance() - o1.proposal.getRelevance();
+				if (diff == 0) {
+					return o1.name.compareTo(o2.name);
+				} else {
+					return diff;
 				}
 			}
 		});
 
-		return new JSONArray(jsonProposals);
+		JSONStreamWriter jsonProposals = new JSONStreamWriter(sortedProposals.size() * 512 + 2);
+		jsonProposals.array();
+		for (SortedProposal sortedProposal : sortedProposals) {
+			CompletionProposal proposal = sortedProposal.proposal;
+			List<Integer> positionsList = new ArrayList<Integer>();
+			StringBuilder jsonCompletion = new CompletionProposalReplacementProvider(liveEditUnit, proposal, completionContext, offset, prefix).createReplacement(positionsList);
+
+			jsonProposals.object();
+			jsonProposals.key("description");
+			writeDescription(jsonProposals, proposal, sortedProposal.description);
+			jsonProposals.key("proposal").value(jsonCompletion.toString());
+			if (positionsList != null && !positionsList.isEmpty() && positionsList.size() % 2 == 0) {
+				jsonProposals.key("positions");
+				writePositions(jsonProposals, positionsList);
+			}
+			jsonProposals.key("style").value("attributedString");
+			jsonProposals.key("replace").value(true);
+			jsonProposals.key("relevance").value(proposal.getRelevance());
+			jsonProposals.endObject();
+		}
+		jsonProposals.endArray();
+
+		return jsonProposals;
 	}
 	
-	private JSONArray getPositions(List<Integer> positionsList) throws JSONException {
-		if (positionsList != null && positionsList.size() % 2 == 0) {
-			JSONArray jsonPositions = new JSONArray();
-			for (int i = 0; i < positionsList.size(); i += 2) {
-				JSONObject position = new JSONObject();
-				position.put("offset", positionsList.get(i));
-				position.put("length", positionsList.get(i + 1));
-				jsonPositions.put(position);
-			}
-			return jsonPositions;
-		} else {
-			return null;
+	private void writePositions(JSONStreamWriter json, List<Integer> positionsList) {
+		json.array();
+		for (int i = 0; i < positionsList.size(); i += 2) {
+			json.object();
+			json.key("offset").value(positionsList.get(i));
+			json.key("length").value(positionsList.get(i + 1));
+			json.endObject();
 		}
+		json.endArray();
 	}
 	
-	protected JSONObject getDescription(CompletionProposal proposal, CompletionContext context) throws JSONException {
-		CompletionProposalDescriptionProvider provider = new CompletionProposalDescriptionProvider(context);
-		JSONObject description = new JSONObject();
+	protected void writeDescription(JSONStreamWriter json, CompletionProposal proposal, CompletionProposalDescriptionProvider.Description description) {
+		json.object();
 		/*
 		 * Add icon field for now. Possibly needs to be moved to a client side
 		 */
 		if (proposal.getKind() == CompletionProposal.METHOD_REF) {
-			JSONObject src = new JSONObject();
-			src.put("src", "../js/editor/textview/methpub_obj.gif");
-			description.put("icon", src);
+			json.key("icon").object().key("src").value("../js/editor/textview/methpub_obj.gif").endObject();
 		} else if (proposal.getKind() == CompletionProposal.FIELD_REF) {
-			JSONObject src = new JSONObject();
-			src.put("src", "../js/editor/textview/field_public_obj.gif");
-			description.put("icon", src);
+			json.key("icon").object().key("src").value("../js/editor/textview/field_public_obj.gif").endObject();
 		} else if (proposal.getKind() == CompletionProposal.TYPE_REF) {
-			JSONObject src = new JSONObject();
-			src.put("src", "../js/editor/textview/class_obj.gif");
-			description.put("icon", src);
+			json.key("icon").object().key("src").value("../js/editor/textview/class_obj.gif").endObject();
 		}
 		
-		description.put("segments", new JSONArray(provider.createDescription(proposal).toString()));
-		description.put("metadata", new JSONObject(provider.createMetadata(proposal)));
-		return description;
+		json.key("segments");
+		description.write(json);
+		json.key("metadata").object();
+		json.key("kind").value(proposal.getKind());
+		json.key("flags").value(proposal.getFlags());
+		json.endObject();
+		json.endObject();
+	}
+	
+	private static class SortedProposal {
+
+		private final CompletionProposal proposal;
+		private final CompletionProposalDescriptionProvider.Description description;
+		private final String name;
+
+		public SortedProposal(CompletionProposal proposal, CompletionProposalDescriptionProvider.Description description, String name) {
+			this.proposal = proposal;
+			this.description = description;
+			this.name = name;
+		}
+
 	}
 	
 	public void dispose() {
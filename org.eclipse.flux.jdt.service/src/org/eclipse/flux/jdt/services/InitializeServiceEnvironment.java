@@ -19,6 +19,7 @@ import org.eclipse.flux.core.DownloadProject;
 import org.eclipse.flux.core.DownloadProject.CompletionCallback;
 import org.eclipse.flux.core.IMessageHandler;
 import org.eclipse.flux.core.IMessagingConnector;
+import org.eclipse.flux.core.MessagingRequests;
 import org.eclipse.flux.core.Repository;
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -31,7 +32,7 @@ import org.json.JSONObject;
  */
 public class InitializeServiceEnvironment {
 
-	private static int GET_PROJECTS_CALLBACK = "InitializeServiceEnvironment - getProjectsCallback".hashCode();
+	private static final int GET_PROJECTS_CALLBACK = MessagingRequests.nextCallbackID();
 
 	private final IMessagingConnector messagingConnector;
 	final Repository repository;
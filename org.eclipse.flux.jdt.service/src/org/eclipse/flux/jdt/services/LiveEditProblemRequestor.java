@@ -13,9 +13,9 @@ package org.eclipse.flux.jdt.services;
 import java.util.ArrayList;
 import java.util.List;
 import org.eclipse.flux.core.IMessagingConnector;
+import org.eclipse.flux.core.JSONStreamWriter;
 import org.eclipse.jdt.core.IProblemRequestor;
 import org.eclipse.jdt.core.compiler.IProblem;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 /**
@@ -60,14 +60,12 @@ public class LiveEditProblemRequestor implements IProblemRequestor {
 	}
 
 	private void sendMarkers(IProblem[] problems) {
-		String problemsJSON = toJSON(problems);
 		try {
-			JSONArray array = new JSONArray(problemsJSON);
 			JSONObject message = new JSONObject();
 			message.put("username", this.username);
 			message.put("project", this.projectName);
 			message.put("resource", this.resourcePath);
-			message.put("problems", array);
+			message.put("problems", toJSON(problems));
 
 			messagingConnector.send("liveMetadataChanged", message);
 			System.out.println("livemetadata transmitted");
@@ -76,30 +74,23 @@ public class LiveEditProblemRequestor implements IProblemRequestor {
 		}
 	}
 
-	private String toJSON(IProblem[] problems) {
-		StringBuilder result = new StringBuilder();
-		boolean flag = false;
-		result.append("[");
+	private JSONStreamWriter toJSON(IProblem[] problems) {
+		JSONStreamWriter result = new JSONStreamWriter(problems.length * 128 + 2);
+		result.array();
 		for (IProblem problem : problems) {
-			if (flag) {
-				result.append(",");
-			}
-
-			result.append("{");
-			result.append("\"description\":" + JSONObject.quote(problem.getMessage()));
-			result.append(",\"line\":" + problem.getSourceLineNumber());
-			result.append(",\"severity\":\"" + (problem.isError() ? "error" : "warning") + "\"");
-			result.append(",\"start\":" + problem.getSourceStart());
+			result.object();
+			result.key("description").value(problem.getMessage());
+			result.key("line").value(problem.getSourceLineNumber());
+			result.key("severity").value(problem.isError() ? "error" : "warning");
+			result.key("start").value(problem.getSourceStart());
 
 			int end = problem.getSourceEnd() + 1;
 
-			result.append(",\"end\":" + end);
-			result.append("}");
-
-			flag = true;
+			result.key("end").value(end);
+			result.endObject();
 		}
-		result.append("]");
-		return result.toString();
+		result.endArray();
+		return result;
 	}
 
 }
@@ -31,6 +31,7 @@ import org.eclipse.flux.core.IMessageHandler;
 import org.eclipse.flux.core.IMessagingConnector;
 import org.eclipse.flux.core.IRepositoryListener;
 import org.eclipse.flux.core.LiveEditCoordinator;
+import org.eclipse.flux.core.MessagingRequests;
 import org.eclipse.flux.core.Repository;
 import org.eclipse.jdt.core.IBuffer;
 import org.eclipse.jdt.core.ICompilationUnit;
@@ -49,7 +50,7 @@ import org.json.JSONObject;
 public class LiveEditUnits {
 
 	private static final String LIVE_EDIT_CONNECTOR_ID = "JDT-Service-Live-Edit-Connector";
-	private static int GET_LIVE_RESOURCES_CALLBACK = "LiveEditUnits - getLiveResourcesCallback".hashCode();
+	private static final int GET_LIVE_RESOURCES_CALLBACK = MessagingRequests.nextCallbackID();
 
 	private ConcurrentMap<String, ICompilationUnit> liveEditUnits;
 	private Repository repository;
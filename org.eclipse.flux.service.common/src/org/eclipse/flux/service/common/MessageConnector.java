@@ -16,10 +16,15 @@ import io.socket.SocketIO;
 import io.socket.SocketIOException;
 
 import java.net.MalformedURLException;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -28,6 +33,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.net.ssl.SSLContext;
 
+import org.eclipse.flux.core.internal.messaging.CompressionCodec;
+import org.eclipse.flux.core.internal.messaging.MessageMetrics;
+import org.eclipse.flux.core.internal.messaging.ReconnectBackoff;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -47,6 +55,18 @@ public final class MessageConnector {
 	private String token;
 	private Set<String> channels = Collections.synchronizedSet(new HashSet<String>());
 	private AtomicBoolean connected = new AtomicBoolean(false);
+	private MessageMetrics metrics = MessageMetrics.getDefault();
+	private Timer reconnectTimer = new Timer("Flux reconnect", true);
+	private ReconnectBackoff reconnectBackoff = ReconnectBackoff.createDefault();
+	private CompressionCodec compression = CompressionCodec.createDefault();
+	private int compressionThreshold = CompressionCodec.getDefaultThreshold();
+	private Map<String, String> compressionPeers = Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > 1024;
+		}
+	});
 	
 	public MessageConnector(final String host, final String login, String token) {
 		this.host = host;
@@ -67,6 +87,7 @@ public final class MessageConnector {
 				@Override
 				public void onConnect() {
 					connected.compareAndSet(false, true);
+					reconnectBackoff.reset();
 					String[] channelsArray = channels.toArray(new String[channels.size()]);
 					channels.clear();
 					for (String channel : channelsArray) {
@@ -85,14 +106,20 @@ public final class MessageConnector {
 				@Override
 				public void onError(SocketIOException ex) {
 					ex.printStackTrace();					
-					try {
-						onDisconnect();						
-						connected.compareAndSet(true, false);
-						socket = createSocket(host);
-						socket.connect(this);
-					} catch (MalformedURLException e) {
-						e.printStackTrace();
-					}
+					onDisconnect();						
+					connected.compareAndSet(true, false);
+					final IOCallback self = this;
+					reconnectTimer.schedule(new TimerTask() {
+						@Override
+						public void run() {
+							try {
+								socket = createSocket(host);
+								socket.connect(self);
+							} catch (MalformedURLException e) {
+								e.printStackTrace();
+							}
+						}
+					}, reconnectBackoff.nextDelay());
 				}
 	
 				@Override
@@ -175,12 +202,27 @@ public final class MessageConnector {
 	}
 	
 	private void handleIncomingMessage(String messageType, JSONObject message) {
+		metrics.messageReceived(messageType, message);
+		if (CompressionCodec.isCompressed(message)) {
+			try {
+				long start = System.nanoTime();
+				message = CompressionCodec.create(message.getString(CompressionCodec.CODEC_FIELD)).decode(messageType, message);
+				metrics.messageDecompressed(messageType, System.nanoTime() - start);
+			} catch (JSONException e) {
+				e.printStackTrace();
+				return;
+			}
+		} else if (message.has(CompressionCodec.ACCEPT_COMPRESSION) && message.has("requestSenderID")) {
+			compressionPeers.put(message.optString("requestSenderID"), message.optString(CompressionCodec.ACCEPT_COMPRESSION));
+		}
 		Collection<IMessageHandler> handlers = this.messageHandlers.get(messageType);
 		if (handlers != null) {
 			for (IMessageHandler handler : handlers) {
 				try {
 					if (handler.canHandle(messageType, message)) {
+						long start = System.nanoTime();
 						handler.handle(messageType, message);
+						metrics.handlerExecuted(messageType, System.nanoTime() - start);
 					}
 				} catch (Throwable t) {
 					t.printStackTrace();
@@ -189,9 +231,49 @@ public final class MessageConnector {
 		}
 	}
 	
+	/**
+	 * Sends the message, large responses are compressed if the requester accepts the compression
+	 * (<code>flux.compression</code>, <code>none</code> switches compression off). Requests announce
+	 * the accepted compressions in a copy, the message of the caller is not changed.
+	 */
 	public void send(String messageType, JSONObject message) {
+		message = compress(messageType, message);
+		metrics.messageSent(messageType, message);
 		socket.emit(messageType, message);
 	}
+	
+	private JSONObject compress(String messageType, JSONObject message) {
+		if (compression == null) {
+			return message;
+		}
+		try {
+			String peer = message.optString("requestSenderID", null);
+			if (peer == null) {
+				if (message.has("callback_id")) {
+					JSONObject announcement = new JSONObject(message, JSONObject.getNames(message));
+					announcement.put(CompressionCodec.ACCEPT_COMPRESSION, CompressionCodec.SUPPORTED);
+					return announcement;
+				}
+				return message;
+			}
+			String accepted = compressionPeers.get(peer);
+			if (accepted == null || !Arrays.asList(accepted.split(",")).contains(compression.getName())
+					|| CompressionCodec.estimateLength(message, compressionThreshold) < compressionThreshold) {
+				return message;
+			}
+			String json = message.toString();
+			if (json.length() < compressionThreshold) {
+				return message;
+			}
+			long start = System.nanoTime();
+			JSONObject frame = compression.compress(message, json);
+			metrics.messageCompressed(messageType, json.length(), frame != null ? frame.getString("payload").length() : json.length(), System.nanoTime() - start);
+			return frame != null ? frame : message;
+		} catch (JSONException e) {
+			e.printStackTrace();
+			return message;
+		}
+	}
 
 	public boolean isConnected(String channel) {
 		return isConnected() && channels.contains(channel);
@@ -13,8 +13,10 @@ package org.eclipse.flux.ui.integration.handlers;
 import java.util.ArrayList;
 import java.util.List;
 
-import org.eclipse.flux.core.CallbackIDAwareMessageHandler;
+import org.eclipse.flux.core.Constants;
 import org.eclipse.flux.core.IMessagingConnector;
+import org.eclipse.flux.core.MessagingRequests;
+import org.eclipse.flux.core.ResponseFuture;
 import org.eclipse.jface.viewers.ILabelProvider;
 import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.dialogs.ElementListSelectionDialog;
@@ -43,11 +45,11 @@ public class SyncDownloadSelectionDialog extends ElementListSelectionDialog {
 	@Override
 	public int open() {
 		try {
-			int callbackID = this.hashCode();
-			
-			CallbackIDAwareMessageHandler responseHandler = new CallbackIDAwareMessageHandler("getProjectsResponse", callbackID) {
+			JSONObject message = new JSONObject();
+			message.put("username", username);
+			MessagingRequests.request(this.messagingConnector, "getProjectsRequest", message, Constants.REQUEST_TIMEOUT).addCallback(new ResponseFuture.Callback() {
 				@Override
-				public void handleMessage(String messageType, JSONObject response) {
+				public void responseReceived(JSONObject response) {
 					try {
 						List<String> projectsNames = new ArrayList<String>();
 						JSONArray projects = response.getJSONArray("projects");
@@ -62,17 +64,13 @@ public class SyncDownloadSelectionDialog extends ElementListSelectionDialog {
 					catch (Exception e) {
 						e.printStackTrace();
 					}
-					
-					messagingConnector.removeMessageHandler(this);
 				}
-			};
-			
-			this.messagingConnector.addMessageHandler(responseHandler);
-			
-			JSONObject message = new JSONObject();
-			message.put("callback_id", callbackID);
-			message.put("username", username);
-			this.messagingConnector.send("getProjectsRequest", message);
+
+				@Override
+				public void requestFailed(Throwable error) {
+					error.printStackTrace();
+				}
+			});
 		} catch (JSONException e1) {
 			e1.printStackTrace();
 		}		